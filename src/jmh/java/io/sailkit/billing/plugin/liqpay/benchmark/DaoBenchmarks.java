@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
+import io.sailkit.billing.plugin.liqpay.dao.model.PendingTransactionRecord;
+
+/**
+ * {@link LiqPayDao} inserts and lookups against an in-memory H2 database (PostgreSQL mode)
+ * pre-filled with {@link #ROWS} responses and pending transactions, with raw_response stored
+ * plain and compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DaoBenchmarks {
+
+    private static final int ROWS = 10_000;
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    @Param({"false", "true"})
+    public boolean compressPayloads;
+
+    private LiqPayDao dao;
+    private LiqPayResponse response;
+    private String rawJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dao = new LiqPayDao(TestDatabase.create());
+        dao.setCompressPayloads(compressPayloads);
+        response = LiqPayResponse.fromMap(Payloads.callback());
+        rawJson = LiqPayJson.toJson(Payloads.callback());
+
+        for (int i = 0; i < ROWS; i++) {
+            response.setOrderId(orderId(i));
+            dao.saveResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response, rawJson);
+            dao.createPendingTransaction(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, tenantId,
+                    orderId(i), "PURCHASE", new BigDecimal("249.99"), "UAH");
+        }
+    }
+
+    @Benchmark
+    public void saveResponse() throws SQLException {
+        dao.saveResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response, rawJson);
+    }
+
+    @Benchmark
+    public LiqPayResponseRecord getResponseByOrderId() throws SQLException {
+        return dao.getResponseByOrderId(orderId(ThreadLocalRandom.current().nextInt(ROWS)), tenantId);
+    }
+
+    /**
+     * Lookup plus raw_response, which records decompress when it is first read.
+     */
+    @Benchmark
+    public String getRawResponseByOrderId() throws SQLException {
+        return dao.getResponseByOrderId(orderId(ThreadLocalRandom.current().nextInt(ROWS)), tenantId).getRawResponse();
+    }
+
+    @Benchmark
+    public PendingTransactionRecord getPendingTransaction() throws SQLException {
+        return dao.getPendingTransaction(orderId(ThreadLocalRandom.current().nextInt(ROWS)));
+    }
+
+    private static String orderId(int i) {
+        return "bench-order-" + i;
+    }
+}
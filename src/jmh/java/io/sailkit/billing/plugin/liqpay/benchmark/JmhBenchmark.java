@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH suites of this package and writes the results as JSON, for diffing between releases.
+ *
+ * Run with {@code mvn test -Pbenchmark -Dtest=JmhBenchmark}. System properties:
+ * <ul>
+ *   <li>{@code jmh.include} - regex of benchmarks to run (default: all suites in this package)</li>
+ *   <li>{@code jmh.result} - result file (default: {@code target/jmh-result.json})</li>
+ *   <li>{@code jmh.forks}, {@code jmh.warmupIterations}, {@code jmh.measurementIterations} -
+ *       override the suites' defaults, e.g. for a quick smoke run</li>
+ * </ul>
+ * Allocation per operation is recorded by the GC profiler ({@code gc.alloc.rate.norm}).
+ */
+@Tag("benchmark")
+class JmhBenchmark {
+
+    @Test
+    void runBenchmarks() throws Exception {
+        File result = new File(System.getProperty("jmh.result", "target/jmh-result.json"));
+        File directory = result.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + directory);
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", JmhBenchmark.class.getPackage().getName() + "\\..*Benchmarks"))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .shouldFailOnError(true);
+        if (System.getProperty("jmh.forks") != null) {
+            options.forks(Integer.getInteger("jmh.forks"));
+        }
+        if (System.getProperty("jmh.warmupIterations") != null) {
+            options.warmupIterations(Integer.getInteger("jmh.warmupIterations"));
+        }
+        if (System.getProperty("jmh.measurementIterations") != null) {
+            options.measurementIterations(Integer.getInteger("jmh.measurementIterations"));
+        }
+
+        new Runner(options.build()).run();
+        System.out.println("JMH results written to " + result.getAbsolutePath());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+
+/**
+ * The shared {@link LiqPayJson} readers and writers against a bare {@code new ObjectMapper()},
+ * for parsing API responses and serializing request maps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmarks {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final ObjectMapper bareMapper = new ObjectMapper();
+
+    private Map<String, Object> request;
+    private String responseJson;
+
+    @Setup
+    public void setUp() {
+        request = Payloads.request();
+        responseJson = LiqPayJson.toJson(Payloads.callback());
+    }
+
+    @Benchmark
+    public LiqPayResponse sharedReadResponse() throws IOException {
+        return LiqPayJson.responseReader().readValue(responseJson);
+    }
+
+    @Benchmark
+    public LiqPayResponse bareReadResponse() throws IOException {
+        return bareMapper.readValue(responseJson, LiqPayResponse.class);
+    }
+
+    @Benchmark
+    public String sharedWriteRequest() throws IOException {
+        return LiqPayJson.mapWriter().writeValueAsString(request);
+    }
+
+    @Benchmark
+    public String bareWriteRequest() throws IOException {
+        return bareMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public Map<String, Object> sharedReadMap() throws IOException {
+        return LiqPayJson.mapReader().readValue(responseJson);
+    }
+
+    @Benchmark
+    public Map<String, Object> bareReadMap() throws IOException {
+        return bareMapper.readValue(responseJson, MAP_TYPE);
+    }
+}
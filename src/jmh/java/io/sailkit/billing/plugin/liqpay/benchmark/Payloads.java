@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Representative LiqPay payloads shared by the JMH suites.
+ */
+final class Payloads {
+
+    static final String PUBLIC_KEY = "sandbox_i00000000000";
+    static final String PRIVATE_KEY = "sandbox_a1b2c3d4e5f6g7h8i9j0k1l2m3n4o5p6q7r8s9";
+    static final String ORDER_ID = "kb-7c9e6679-7425-40de-944b-e07fc1f90ae7";
+    static final String CARD_TOKEN = "B5BB5A5D5C06A1F7E9D4E6A4D1C3B2A1F0E9D8C7";
+    static final String DESCRIPTION = "Subscription payment for account 7c9e6679-7425-40de-944b-e07fc1f90ae7";
+    static final String SERVER_URL = "https://billing.example.com/plugins/liqpay-plugin/callback";
+
+    private Payloads() {
+    }
+
+    /**
+     * Token payment request parameters (~400 bytes of JSON).
+     */
+    static Map<String, Object> request() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("version", 3);
+        params.put("public_key", PUBLIC_KEY);
+        params.put("action", "paytoken");
+        params.put("amount", 249.99);
+        params.put("currency", "UAH");
+        params.put("description", DESCRIPTION);
+        params.put("order_id", ORDER_ID);
+        params.put("card_token", CARD_TOKEN);
+        params.put("server_url", SERVER_URL);
+        params.put("language", "uk");
+        return params;
+    }
+
+    /**
+     * Successful payment callback (~1 KB of JSON).
+     */
+    static Map<String, Object> callback() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("payment_id", 2468013579L);
+        data.put("action", "pay");
+        data.put("status", "success");
+        data.put("version", 3);
+        data.put("type", "buy");
+        data.put("paytype", "card");
+        data.put("public_key", PUBLIC_KEY);
+        data.put("acq_id", 414963);
+        data.put("order_id", ORDER_ID);
+        data.put("liqpay_order_id", "NYMK3AE61501685438251925");
+        data.put("description", DESCRIPTION);
+        data.put("sender_phone", "380950000001");
+        data.put("sender_card_mask2", "424242*42");
+        data.put("sender_card_bank", "JSC CB PRIVATBANK");
+        data.put("sender_card_type", "visa");
+        data.put("sender_card_country", 804);
+        data.put("ip", "203.0.113.10");
+        data.put("amount", 249.99);
+        data.put("currency", "UAH");
+        data.put("sender_commission", 0.0);
+        data.put("receiver_commission", 3.75);
+        data.put("agent_commission", 0.0);
+        data.put("amount_debit", 249.99);
+        data.put("amount_credit", 249.99);
+        data.put("commission_debit", 0.0);
+        data.put("commission_credit", 3.75);
+        data.put("currency_debit", "UAH");
+        data.put("currency_credit", "UAH");
+        data.put("mpi_eci", "7");
+        data.put("is_3ds", false);
+        data.put("language", "uk");
+        data.put("create_date", 1700000000000L);
+        data.put("end_date", 1700000005000L);
+        data.put("transaction_id", 1357924680L);
+        data.put("card_token", CARD_TOKEN);
+        return data;
+    }
+}
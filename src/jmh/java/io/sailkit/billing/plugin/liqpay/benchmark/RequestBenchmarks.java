@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayRequest;
+
+/**
+ * Request building.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmarks {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("249.99");
+
+    @Benchmark
+    public LiqPayRequest buildPayToken() {
+        return LiqPayRequest.payToken(Payloads.PUBLIC_KEY, Payloads.ORDER_ID, Payloads.CARD_TOKEN,
+                        AMOUNT, "UAH", Payloads.DESCRIPTION)
+                .serverUrl(Payloads.SERVER_URL)
+                .language("uk")
+                .build();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
+
+/**
+ * Finding the authorization hold of a payment with {@link LiqPayDao#getOriginalHold} against
+ * scanning all of its responses (the former capture/void path), for growing response histories.
+ * The hold is the payment's last response, so the scan reads the whole history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseLookupBenchmarks {
+
+    private static final int PAYMENTS = 20;
+
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID[] payments = new UUID[PAYMENTS];
+
+    @Param({"10", "100", "1000"})
+    public int history;
+
+    private LiqPayDao dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dao = new LiqPayDao(TestDatabase.create());
+        String rawJson = LiqPayJson.toJson(Payloads.callback());
+
+        for (int p = 0; p < PAYMENTS; p++) {
+            payments[p] = UUID.randomUUID();
+            for (int i = 0; i < history - 1; i++) {
+                save(payments[p], "CAPTURE", "error", rawJson);
+            }
+            save(payments[p], "AUTHORIZE", "hold_wait", rawJson);
+        }
+    }
+
+    @Benchmark
+    public LiqPayResponseRecord getOriginalHold() throws SQLException {
+        return dao.getOriginalHold(payment(), tenantId);
+    }
+
+    @Benchmark
+    public LiqPayResponseRecord scanResponsesForHold() throws SQLException {
+        for (LiqPayResponseRecord response : dao.getResponsesForPayment(payment(), tenantId)) {
+            if ("AUTHORIZE".equals(response.getTransactionType()) && "hold_wait".equals(response.getStatus())) {
+                return response;
+            }
+        }
+        throw new IllegalStateException("Hold not found");
+    }
+
+    private UUID payment() {
+        return payments[ThreadLocalRandom.current().nextInt(PAYMENTS)];
+    }
+
+    private void save(UUID paymentId, String transactionType, String status, String rawJson) throws SQLException {
+        LiqPayResponse response = LiqPayResponse.fromMap(Payloads.callback());
+        response.setOrderId("bench-order-" + UUID.randomUUID());
+        response.setStatus(status);
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, transactionType, response, rawJson);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.client.LiqPaySignature;
+
+/**
+ * Parsing of API responses and callback payloads into {@link LiqPayResponse}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmarks {
+
+    private String json;
+    private String data;
+    private Map<String, Object> map;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> callback = Payloads.callback();
+        json = LiqPayJson.toJson(callback);
+        data = LiqPaySignature.encodeData(callback);
+        map = LiqPaySignature.decodeData(data);
+    }
+
+    @Benchmark
+    public LiqPayResponse fromJson() {
+        return LiqPayResponse.fromJson(json);
+    }
+
+    @Benchmark
+    public LiqPayResponse fromMap() {
+        return LiqPayResponse.fromMap(map);
+    }
+
+    @Benchmark
+    public LiqPayResponse fromData() {
+        return LiqPayResponse.fromData(data);
+    }
+
+    @Benchmark
+    public LiqPayResponse decodeDataAndFromMap() {
+        return LiqPayResponse.fromMap(LiqPaySignature.decodeData(data));
+    }
+
+    /**
+     * What the callback servlet and inbox worker need: the parsed response plus the raw JSON
+     * stored with it, from one base64 decode.
+     */
+    @Benchmark
+    public void callbackFromData(Blackhole blackhole) {
+        LiqPayResponse response = LiqPayResponse.fromData(data);
+        blackhole.consume(response);
+        blackhole.consume(response.getRawJson());
+    }
+
+    /**
+     * The same with the raw JSON decoded separately, as callbacks were handled before.
+     */
+    @Benchmark
+    public void callbackFromDataAndDecodeToJson(Blackhole blackhole) {
+        blackhole.consume(LiqPayResponse.fromData(data));
+        blackhole.consume(LiqPaySignature.decodeToJson(data));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayResponseWriter;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+
+/**
+ * liqpay_responses inserts from {@link #THREADS} concurrent callers on a file-backed H2 database,
+ * directly (one connection and commit per row) and through the group-commit {@link LiqPayResponseWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(ResponseWriterBenchmarks.THREADS)
+public class ResponseWriterBenchmarks {
+
+    static final int THREADS = 16;
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    private LiqPayDao dao;
+    private LiqPayResponseWriter writer;
+    private LiqPayResponse response;
+    private String rawJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DataSource dataSource = TestDatabase.createOnDisk(Files.createTempDirectory("liqpay-bench"));
+        dao = new LiqPayDao(dataSource);
+        if (batched) {
+            writer = new LiqPayResponseWriter(dataSource, 100, 0);
+            dao.setResponseWriter(writer);
+        }
+        response = LiqPayResponse.fromMap(Payloads.callback());
+        rawJson = LiqPayJson.toJson(Payloads.callback());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Benchmark
+    public void saveResponse() throws SQLException {
+        dao.saveResponse(null, UUID.randomUUID(), UUID.randomUUID(), null, tenantId, "PURCHASE", response, rawJson);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPaySignature;
+import io.sailkit.billing.plugin.liqpay.client.LiqPaySigner;
+
+/**
+ * Request encoding, callback decoding and signature computation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmarks {
+
+    private Map<String, Object> params;
+    private String data;
+    private String signature;
+    private LiqPaySigner signer;
+
+    @Setup
+    public void setUp() {
+        params = Payloads.request();
+        data = LiqPaySignature.encodeData(Payloads.callback());
+        signer = new LiqPaySigner(Payloads.PRIVATE_KEY);
+        signature = signer.sign(data);
+    }
+
+    @Benchmark
+    public String encodeData() {
+        return LiqPaySignature.encodeData(params);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeData() {
+        return LiqPaySignature.decodeData(data);
+    }
+
+    @Benchmark
+    public String createSignature() {
+        return LiqPaySignature.createSignature(Payloads.PRIVATE_KEY, data);
+    }
+
+    @Benchmark
+    public String signerSign() {
+        return signer.sign(data);
+    }
+
+    @Benchmark
+    public boolean signerVerify() {
+        return signer.verify(data, signature);
+    }
+
+    /**
+     * Baseline for {@link #signerVerify()}: verification before {@link LiqPaySigner}, with a fresh
+     * {@code MessageDigest} over a concatenated {@code key + data + key} string.
+     */
+    @Benchmark
+    public boolean legacyVerify() throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        byte[] hash = sha1.digest((Payloads.PRIVATE_KEY + data + Payloads.PRIVATE_KEY).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash).equals(signature);
+    }
+}
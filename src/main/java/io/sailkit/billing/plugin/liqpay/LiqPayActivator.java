@@ -29,11 +29,22 @@ import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
 import org.killbill.billing.plugin.core.resources.jooby.PluginApp;
 import org.killbill.billing.plugin.core.resources.jooby.PluginAppBuilder;
+import org.killbill.commons.metrics.api.MetricRegistry;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackDeduplicator;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackInboxWorker;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackProcessor;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayPayloadLog;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayCardTokenCache;
 import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayResponseWriter;
+import io.sailkit.billing.plugin.liqpay.maintenance.LiqPayExpirySweeper;
+import io.sailkit.billing.plugin.liqpay.maintenance.LiqPayResponseArchiver;
+import io.sailkit.billing.plugin.liqpay.maintenance.LiqPayStatusReconciler;
 import io.sailkit.billing.plugin.liqpay.servlet.LiqPayCallbackServlet;
 
 /**
@@ -47,6 +58,15 @@ public class LiqPayActivator extends KillbillActivatorBase {
     public static final String PLUGIN_NAME = "killbill-liqpay";
 
     private LiqPayConfigurationHandler liqPayConfigurationHandler;
+    private LiqPayClientRegistry liqPayClientRegistry;
+    private LiqPayExecutionService liqPayExecutionService;
+    private LiqPayCallbackInboxWorker liqPayCallbackInboxWorker;
+    private LiqPayExpirySweeper liqPayExpirySweeper;
+    private LiqPayStatusReconciler liqPayStatusReconciler;
+    private LiqPayResponseArchiver liqPayResponseArchiver;
+    private LiqPayDao liqPayDao;
+    private LiqPayResponseWriter liqPayResponseWriter;
+    private LiqPayMetrics liqPayMetrics;
 
     @Override
     public void start(final BundleContext context) throws Exception {
@@ -59,13 +79,101 @@ public class LiqPayActivator extends KillbillActivatorBase {
         final String region = props.getProperty("org.killbill.billing.plugin.liqpay.region", "");
 
         // Initialize DAO
-        final LiqPayDao liqPayDao = new LiqPayDao(dataSource.getDataSource());
+        liqPayDao = new LiqPayDao(dataSource.getDataSource(), clock.getClock());
 
         // Initialize configuration handler
         liqPayConfigurationHandler = new LiqPayConfigurationHandler(region, PLUGIN_NAME, killbillAPI);
         final LiqPayConfig globalConfiguration = liqPayConfigurationHandler.createConfigurable(props);
         liqPayConfigurationHandler.setDefaultConfigurable(globalConfiguration);
 
+        // API, connection pool and callback metrics in the Kill Bill metrics registry
+        liqPayMetrics = new LiqPayMetrics(lookupMetricRegistry());
+
+        // Shared HTTP connection pool and per-tenant client cache
+        final LiqPayConnectionPool connectionPool = new LiqPayConnectionPool(
+                globalConfiguration.getMaxConnectionsTotal(),
+                globalConfiguration.getMaxConnectionsPerRoute(),
+                globalConfiguration.getKeepAlive());
+        liqPayMetrics.registerConnectionPool(connectionPool);
+        liqPayClientRegistry = new LiqPayClientRegistry(connectionPool, liqPayMetrics);
+        liqPayConfigurationHandler.setClientRegistry(liqPayClientRegistry);
+
+        // Group-commit writer for liqpay_responses
+        if (globalConfiguration.isResponseBatching()) {
+            liqPayResponseWriter = new LiqPayResponseWriter(
+                    dataSource.getDataSource(),
+                    globalConfiguration.getResponseBatchSize(),
+                    globalConfiguration.getResponseBatchDelay());
+            liqPayDao.setResponseWriter(liqPayResponseWriter);
+        }
+
+        // Opt-in compressed storage of raw responses and HPP additional data
+        liqPayDao.setCompressPayloads(globalConfiguration.isCompressPayloads());
+
+        // Summary log line per call; full masked payloads only for sampled or failed calls
+        LiqPayPayloadLog.configure(globalConfiguration.getPayloadLogSampleRate(),
+                globalConfiguration.isPayloadLogOnError());
+
+        // Card token cache for recurring charges
+        if (globalConfiguration.getCardTokenCacheSize() > 0) {
+            liqPayDao.setCardTokenCache(new LiqPayCardTokenCache(
+                    globalConfiguration.getCardTokenCacheSize(),
+                    globalConfiguration.getCardTokenCacheTtl(),
+                    clock.getClock()));
+        }
+
+        // Executor for blocking LiqPay work (optionally on virtual threads)
+        liqPayExecutionService = new LiqPayExecutionService(
+                globalConfiguration.isVirtualThreads(),
+                globalConfiguration.getWorkerThreads(),
+                globalConfiguration.getMaxConcurrentCallsPerTenant());
+
+        // Callback processing and the durable callback inbox
+        final LiqPayCallbackDeduplicator callbackDeduplicator = new LiqPayCallbackDeduplicator(
+                liqPayDao, globalConfiguration.getCallbackDedupCacheSize());
+        final LiqPayCallbackProcessor callbackProcessor = new LiqPayCallbackProcessor(
+                liqPayConfigurationHandler, liqPayDao, callbackDeduplicator);
+        liqPayCallbackInboxWorker = new LiqPayCallbackInboxWorker(
+                liqPayDao,
+                callbackProcessor,
+                liqPayExecutionService,
+                clock.getClock(),
+                globalConfiguration.isCallbackInbox(),
+                globalConfiguration.getCallbackInboxPollInterval(),
+                globalConfiguration.getCallbackInboxBatchSize(),
+                globalConfiguration.getCallbackInboxMaxAttempts());
+
+        // Expires abandoned hosted-flow transactions and HPP sessions (one node at a time)
+        liqPayExpirySweeper = new LiqPayExpirySweeper(
+                liqPayDao,
+                liqPayConfigurationHandler,
+                clock.getClock(),
+                globalConfiguration.isExpirySweeper(),
+                globalConfiguration.getExpirySweepInterval(),
+                globalConfiguration.getExpirySweepBatchSize());
+
+        // Polls the LiqPay status API for transactions whose callback never arrived (one node at a time)
+        liqPayStatusReconciler = new LiqPayStatusReconciler(
+                liqPayDao,
+                liqPayConfigurationHandler,
+                liqPayExecutionService,
+                callbackProcessor,
+                clock.getClock(),
+                globalConfiguration.isStatusReconciler(),
+                globalConfiguration.getStatusReconcileInterval(),
+                globalConfiguration.getStatusReconcileBatchSize());
+
+        // Moves old raw responses to the compressed archive table and purges processed inbox
+        // entries (one node at a time)
+        liqPayResponseArchiver = new LiqPayResponseArchiver(
+                liqPayDao,
+                clock.getClock(),
+                globalConfiguration.isResponseArchiver(),
+                globalConfiguration.getResponseArchiveAge(),
+                globalConfiguration.getCallbackInboxRetention(),
+                globalConfiguration.getResponseArchiveInterval(),
+                globalConfiguration.getResponseArchiveBatchSize());
+
         // Create and register healthcheck
         final LiqPayHealthcheck liqPayHealthcheck = new LiqPayHealthcheck(liqPayConfigurationHandler);
         registerHealthcheck(context, liqPayHealthcheck);
@@ -75,7 +183,7 @@ public class LiqPayActivator extends KillbillActivatorBase {
                 killbillAPI,
                 liqPayConfigurationHandler,
                 clock.getClock(),
-                dataSource.getDataSource()
+                liqPayDao
         );
         registerPaymentPluginApi(context, paymentPluginApi);
 
@@ -91,7 +199,10 @@ public class LiqPayActivator extends KillbillActivatorBase {
                 .withService(paymentPluginApi)
                 .withService(liqPayConfigurationHandler)
                 .withService(liqPayDao)
-                .withService(killbillAPI)  // Needed for callback servlet to notify KillBill
+                .withService(liqPayExecutionService)
+                .withService(callbackProcessor)
+                .withService(liqPayCallbackInboxWorker)
+                .withService(liqPayMetrics)
                 .withService(clock)
                 .build();
 
@@ -101,15 +212,54 @@ public class LiqPayActivator extends KillbillActivatorBase {
         // Register configuration event handler for tenant config updates
         registerHandlers();
 
+        liqPayCallbackInboxWorker.start();
+        liqPayExpirySweeper.start();
+        liqPayStatusReconciler.start();
+        liqPayResponseArchiver.start();
+
         logger.info("LiqPay Payment Plugin started successfully. Callback URL: /plugins/{}/callback", PLUGIN_NAME);
     }
 
     @Override
     public void stop(final BundleContext context) throws Exception {
         logger.info("Stopping LiqPay Payment Plugin");
+        if (liqPayResponseArchiver != null) {
+            liqPayResponseArchiver.stop();
+        }
+        if (liqPayStatusReconciler != null) {
+            liqPayStatusReconciler.stop();
+        }
+        if (liqPayExpirySweeper != null) {
+            liqPayExpirySweeper.stop();
+        }
+        if (liqPayCallbackInboxWorker != null) {
+            liqPayCallbackInboxWorker.stop();
+        }
+        if (liqPayExecutionService != null) {
+            liqPayExecutionService.close();
+        }
+        if (liqPayResponseWriter != null) {
+            liqPayDao.setResponseWriter(null);
+            liqPayResponseWriter.close();
+        }
+        if (liqPayClientRegistry != null) {
+            liqPayClientRegistry.close();
+        }
+        if (liqPayMetrics != null) {
+            liqPayMetrics.close();
+        }
         super.stop(context);
     }
 
+    private MetricRegistry lookupMetricRegistry() {
+        try {
+            return metricRegistry.getMetricRegistry();
+        } catch (RuntimeException e) {
+            logger.warn("Kill Bill metrics registry unavailable, LiqPay metrics disabled: {}", e.toString());
+            return null;
+        }
+    }
+
     private void registerHandlers() {
         final PluginConfigurationEventHandler handler = new PluginConfigurationEventHandler(liqPayConfigurationHandler);
         dispatcher.registerEventHandlers(handler);
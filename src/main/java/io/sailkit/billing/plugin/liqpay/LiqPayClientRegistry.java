@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayAsyncClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayCircuitBreaker;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+
+/**
+ * Per-tenant cache of LiqPay clients.
+ *
+ * Clients are created lazily on first use and reused until the tenant's configuration
+ * changes. Each tenant gets its own circuit breaker, shared by its blocking and async clients,
+ * and each blocking client its own bulkhead, so one tenant's LiqPay trouble does not fail or
+ * block calls of other tenants. All blocking clients share
+ * one {@link LiqPayConnectionPool}, all async clients share one JDK {@link HttpClient}.
+ */
+public class LiqPayClientRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayClientRegistry.class);
+
+    // ConcurrentHashMap does not accept null keys, the default (null) tenant is stored under this one
+    private static final UUID DEFAULT_TENANT_KEY = new UUID(0L, 0L);
+
+    private final LiqPayConnectionPool connectionPool;
+    private final LiqPayMetrics metrics;
+    private final Map<UUID, Entry> clients = new ConcurrentHashMap<>();
+    private final Map<UUID, AsyncEntry> asyncClients = new ConcurrentHashMap<>();
+
+    private volatile HttpClient asyncHttpClient;
+
+    public LiqPayClientRegistry(LiqPayConnectionPool connectionPool) {
+        this(connectionPool, new LiqPayMetrics(null));
+    }
+
+    /**
+     * @param metrics Metrics every created client reports its API calls to
+     */
+    public LiqPayClientRegistry(LiqPayConnectionPool connectionPool, LiqPayMetrics metrics) {
+        this.connectionPool = connectionPool;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the cached client for a tenant, creating it if missing or if the
+     * configuration instance it was built from has been replaced.
+     *
+     * @param tenantId Tenant UUID (may be null for the default configuration)
+     * @param config Current configuration for the tenant
+     * @return LiqPay client for the tenant
+     */
+    public LiqPayClient getClient(UUID tenantId, LiqPayConfig config) {
+        UUID key = tenantId != null ? tenantId : DEFAULT_TENANT_KEY;
+
+        Entry entry = clients.get(key);
+        if (entry != null && entry.config == config) {
+            return entry.client;
+        }
+
+        Entry created = clients.compute(key, (k, existing) -> {
+            if (existing != null && existing.config == config) {
+                return existing;
+            }
+            if (existing != null) {
+                existing.client.close();
+            }
+            logger.info("Creating LiqPay client for tenant {}", tenantId);
+            return new Entry(config, createClient(tenantId, config));
+        });
+        return created.client;
+    }
+
+    /**
+     * Returns the cached async client for a tenant. Each tenant gets its own in-flight limit; the
+     * circuit breaker is the one of the tenant's blocking client, so both see LiqPay's health.
+     *
+     * @param tenantId Tenant UUID (may be null for the default configuration)
+     * @param config Current configuration for the tenant
+     * @return Async LiqPay client for the tenant
+     */
+    public LiqPayAsyncClient getAsyncClient(UUID tenantId, LiqPayConfig config) {
+        UUID key = tenantId != null ? tenantId : DEFAULT_TENANT_KEY;
+
+        AsyncEntry entry = asyncClients.get(key);
+        if (entry != null && entry.config == config) {
+            return entry.client;
+        }
+
+        LiqPayCircuitBreaker breaker = getClient(tenantId, config).getCircuitBreaker();
+        AsyncEntry created = asyncClients.compute(key, (k, existing) -> {
+            if (existing != null && existing.config == config) {
+                return existing;
+            }
+            logger.info("Creating LiqPay async client for tenant {}", tenantId);
+            return new AsyncEntry(config, createAsyncClient(tenantId, config, breaker));
+        });
+        return created.client;
+    }
+
+    /**
+     * Drops the cached client for a tenant. Called when the tenant's configuration is reloaded.
+     */
+    public void invalidate(UUID tenantId) {
+        UUID key = tenantId != null ? tenantId : DEFAULT_TENANT_KEY;
+        Entry removed = clients.remove(key);
+        if (removed != null) {
+            logger.info("Invalidated LiqPay client for tenant {}", tenantId);
+            removed.client.close();
+        }
+        // In-flight async requests keep their own reference and complete normally
+        asyncClients.remove(key);
+    }
+
+    /**
+     * Closes all cached clients and the shared connection pool.
+     */
+    public void close() {
+        for (Entry entry : clients.values()) {
+            entry.client.close();
+        }
+        clients.clear();
+        asyncClients.clear();
+        asyncHttpClient = null;
+        connectionPool.close();
+    }
+
+    public LiqPayConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    private LiqPayClient createClient(UUID tenantId, LiqPayConfig config) {
+        LiqPayClient client = new LiqPayClient(
+                config.getPublicKey(),
+                config.getPrivateKey(),
+                config.isSandbox(),
+                config.getServerUrl(),
+                config.getLanguage(),
+                config.getConnectionTimeout(),
+                config.getReadTimeout(),
+                connectionPool.createHttpClient(config.getConnectionTimeout(), config.getReadTimeout()),
+                config.getApiUrl()
+        );
+        client.setRequestListener(metrics.apiListener(tenantId));
+        if (config.isCircuitBreaker()) {
+            client.setCircuitBreaker(new LiqPayCircuitBreaker(
+                    config.getCircuitBreakerFailureRate(),
+                    config.getCircuitBreakerSlowCallRate(),
+                    config.getCircuitBreakerSlowCallDuration(),
+                    config.getCircuitBreakerWindowSize(),
+                    config.getCircuitBreakerMinimumCalls(),
+                    config.getCircuitBreakerOpenDuration(),
+                    config.getCircuitBreakerHalfOpenCalls()));
+        }
+        client.setBulkhead(config.getBulkheadMaxInFlight(), config.getBulkheadMaxWait());
+        return client;
+    }
+
+    private LiqPayAsyncClient createAsyncClient(UUID tenantId, LiqPayConfig config, LiqPayCircuitBreaker breaker) {
+        HttpClient httpClient = asyncHttpClient;
+        if (httpClient == null) {
+            synchronized (this) {
+                httpClient = asyncHttpClient;
+                if (httpClient == null) {
+                    httpClient = LiqPayAsyncClient.createHttpClient(config.getConnectionTimeout());
+                    asyncHttpClient = httpClient;
+                }
+            }
+        }
+
+        LiqPayAsyncClient client = new LiqPayAsyncClient(
+                config.getPublicKey(),
+                config.getPrivateKey(),
+                config.isSandbox(),
+                config.getServerUrl(),
+                config.getLanguage(),
+                config.getReadTimeout(),
+                config.getAsyncMaxInFlight(),
+                httpClient,
+                config.getApiUrl()
+        );
+        client.setRequestListener(metrics.apiListener(tenantId));
+        client.setCircuitBreaker(breaker);
+        return client;
+    }
+
+    private static final class Entry {
+        private final LiqPayConfig config;
+        private final LiqPayClient client;
+
+        private Entry(LiqPayConfig config, LiqPayClient client) {
+            this.config = config;
+            this.client = client;
+        }
+    }
+
+    private static final class AsyncEntry {
+        private final LiqPayConfig config;
+        private final LiqPayAsyncClient client;
+
+        private AsyncEntry(LiqPayConfig config, LiqPayAsyncClient client) {
+            this.config = config;
+            this.client = client;
+        }
+    }
+}
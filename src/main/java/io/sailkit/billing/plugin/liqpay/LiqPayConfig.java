@@ -21,6 +21,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+
 /**
  * LiqPay plugin configuration.
  * Parses configuration from Properties.
@@ -31,28 +33,182 @@ public class LiqPayConfig {
 
     // Default values
     private static final boolean DEFAULT_SANDBOX = true;
+    private static final String DEFAULT_API_URL = LiqPayClient.API_URL;
     private static final String DEFAULT_LANGUAGE = "en";
     private static final String DEFAULT_CURRENCIES = "UAH,USD,EUR";
     private static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
     private static final int DEFAULT_READ_TIMEOUT = 60000;
+    private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+    private static final int DEFAULT_KEEP_ALIVE = 30000;
+    private static final int DEFAULT_ASYNC_MAX_IN_FLIGHT = 32;
+    private static final boolean DEFAULT_VIRTUAL_THREADS = false;
+    private static final int DEFAULT_WORKER_THREADS = 64;
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS_PER_TENANT = 16;
+    private static final boolean DEFAULT_CALLBACK_INBOX = true;
+    private static final int DEFAULT_CALLBACK_INBOX_POLL_INTERVAL = 1000;
+    private static final int DEFAULT_CALLBACK_INBOX_BATCH_SIZE = 100;
+    private static final int DEFAULT_CALLBACK_INBOX_MAX_ATTEMPTS = 10;
+    private static final long DEFAULT_CALLBACK_INBOX_RETENTION = 2592000000L;
+    private static final int DEFAULT_CALLBACK_DEDUP_CACHE_SIZE = 10000;
+    private static final boolean DEFAULT_RESPONSE_BATCHING = true;
+    private static final int DEFAULT_RESPONSE_BATCH_SIZE = 100;
+    private static final int DEFAULT_RESPONSE_BATCH_DELAY = 0;
+    private static final int DEFAULT_CARD_TOKEN_CACHE_SIZE = 10000;
+    private static final int DEFAULT_CARD_TOKEN_CACHE_TTL = 300000;
+    private static final long DEFAULT_PENDING_EXPIRY_AGE = 86400000L;
+    private static final boolean DEFAULT_EXPIRY_SWEEPER = true;
+    private static final int DEFAULT_EXPIRY_SWEEP_INTERVAL = 300000;
+    private static final int DEFAULT_EXPIRY_SWEEP_BATCH_SIZE = 500;
+    private static final boolean DEFAULT_STATUS_RECONCILER = true;
+    private static final int DEFAULT_STATUS_RECONCILE_INTERVAL = 60000;
+    private static final int DEFAULT_STATUS_RECONCILE_BATCH_SIZE = 100;
+    private static final long DEFAULT_STATUS_RECONCILE_AGE = 900000L;
+    private static final int DEFAULT_STATUS_RECONCILE_RATE_LIMIT = 5;
+    private static final boolean DEFAULT_RESPONSE_ARCHIVER = true;
+    private static final long DEFAULT_RESPONSE_ARCHIVE_AGE = 7776000000L;
+    private static final int DEFAULT_RESPONSE_ARCHIVE_INTERVAL = 3600000;
+    private static final int DEFAULT_RESPONSE_ARCHIVE_BATCH_SIZE = 500;
+    private static final boolean DEFAULT_COMPRESS_PAYLOADS = false;
+    private static final double DEFAULT_PAYLOAD_LOG_SAMPLE_RATE = 0.0;
+    private static final boolean DEFAULT_PAYLOAD_LOG_ON_ERROR = true;
+    private static final boolean DEFAULT_CIRCUIT_BREAKER = true;
+    private static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE = 50;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE = 80;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION = 10000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = 50;
+    private static final int DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS = 20;
+    private static final int DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = 30000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_HALF_OPEN_CALLS = 3;
+    private static final int DEFAULT_BULKHEAD_MAX_IN_FLIGHT = 50;
+    private static final int DEFAULT_BULKHEAD_MAX_WAIT = 1000;
 
     private final String publicKey;
     private final String privateKey;
     private final boolean sandbox;
     private final String serverUrl;
+    private final String apiUrl;
     private final List<String> currencies;
     private final String language;
     private final int connectionTimeout;
     private final int readTimeout;
+    private final int maxConnectionsTotal;
+    private final int maxConnectionsPerRoute;
+    private final int keepAlive;
+    private final int asyncMaxInFlight;
+    private final boolean virtualThreads;
+    private final int workerThreads;
+    private final int maxConcurrentCallsPerTenant;
+    private final boolean callbackInbox;
+    private final int callbackInboxPollInterval;
+    private final int callbackInboxBatchSize;
+    private final int callbackInboxMaxAttempts;
+    private final long callbackInboxRetention;
+    private final int callbackDedupCacheSize;
+    private final boolean responseBatching;
+    private final int responseBatchSize;
+    private final int responseBatchDelay;
+    private final int cardTokenCacheSize;
+    private final int cardTokenCacheTtl;
+    private final long pendingExpiryAge;
+    private final boolean expirySweeper;
+    private final int expirySweepInterval;
+    private final int expirySweepBatchSize;
+    private final boolean statusReconciler;
+    private final int statusReconcileInterval;
+    private final int statusReconcileBatchSize;
+    private final long statusReconcileAge;
+    private final int statusReconcileRateLimit;
+    private final boolean responseArchiver;
+    private final long responseArchiveAge;
+    private final int responseArchiveInterval;
+    private final int responseArchiveBatchSize;
+    private final boolean compressPayloads;
+    private final double payloadLogSampleRate;
+    private final boolean payloadLogOnError;
+    private final boolean circuitBreaker;
+    private final int circuitBreakerFailureRate;
+    private final int circuitBreakerSlowCallRate;
+    private final int circuitBreakerSlowCallDuration;
+    private final int circuitBreakerWindowSize;
+    private final int circuitBreakerMinimumCalls;
+    private final int circuitBreakerOpenDuration;
+    private final int circuitBreakerHalfOpenCalls;
+    private final int bulkheadMaxInFlight;
+    private final int bulkheadMaxWait;
 
     public LiqPayConfig(Properties properties) {
         this.publicKey = getProperty(properties, "publicKey", null);
         this.privateKey = getProperty(properties, "privateKey", null);
         this.sandbox = getBooleanProperty(properties, "sandbox", DEFAULT_SANDBOX);
         this.serverUrl = getProperty(properties, "serverUrl", null);
+        this.apiUrl = getProperty(properties, "apiUrl", DEFAULT_API_URL);
         this.language = getProperty(properties, "language", DEFAULT_LANGUAGE);
         this.connectionTimeout = getIntProperty(properties, "connectionTimeout", DEFAULT_CONNECTION_TIMEOUT);
         this.readTimeout = getIntProperty(properties, "readTimeout", DEFAULT_READ_TIMEOUT);
+        this.maxConnectionsTotal = getIntProperty(properties, "maxConnectionsTotal", DEFAULT_MAX_CONNECTIONS_TOTAL);
+        this.maxConnectionsPerRoute = getIntProperty(properties, "maxConnectionsPerRoute", DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        this.keepAlive = getIntProperty(properties, "keepAlive", DEFAULT_KEEP_ALIVE);
+        this.asyncMaxInFlight = getIntProperty(properties, "asyncMaxInFlight", DEFAULT_ASYNC_MAX_IN_FLIGHT);
+        this.virtualThreads = getBooleanProperty(properties, "virtualThreads", DEFAULT_VIRTUAL_THREADS);
+        this.workerThreads = getIntProperty(properties, "workerThreads", DEFAULT_WORKER_THREADS);
+        this.maxConcurrentCallsPerTenant = getIntProperty(properties, "maxConcurrentCallsPerTenant",
+                DEFAULT_MAX_CONCURRENT_CALLS_PER_TENANT);
+        this.callbackInbox = getBooleanProperty(properties, "callbackInbox", DEFAULT_CALLBACK_INBOX);
+        this.callbackInboxPollInterval = getIntProperty(properties, "callbackInboxPollInterval",
+                DEFAULT_CALLBACK_INBOX_POLL_INTERVAL);
+        this.callbackInboxBatchSize = getIntProperty(properties, "callbackInboxBatchSize",
+                DEFAULT_CALLBACK_INBOX_BATCH_SIZE);
+        this.callbackInboxMaxAttempts = getIntProperty(properties, "callbackInboxMaxAttempts",
+                DEFAULT_CALLBACK_INBOX_MAX_ATTEMPTS);
+        this.callbackInboxRetention = getLongProperty(properties, "callbackInboxRetention",
+                DEFAULT_CALLBACK_INBOX_RETENTION);
+        this.callbackDedupCacheSize = getIntProperty(properties, "callbackDedupCacheSize",
+                DEFAULT_CALLBACK_DEDUP_CACHE_SIZE);
+        this.responseBatching = getBooleanProperty(properties, "responseBatching", DEFAULT_RESPONSE_BATCHING);
+        this.responseBatchSize = getIntProperty(properties, "responseBatchSize", DEFAULT_RESPONSE_BATCH_SIZE);
+        this.responseBatchDelay = getIntProperty(properties, "responseBatchDelay", DEFAULT_RESPONSE_BATCH_DELAY);
+        this.cardTokenCacheSize = getIntProperty(properties, "cardTokenCacheSize", DEFAULT_CARD_TOKEN_CACHE_SIZE);
+        this.cardTokenCacheTtl = getIntProperty(properties, "cardTokenCacheTtl", DEFAULT_CARD_TOKEN_CACHE_TTL);
+        this.pendingExpiryAge = getLongProperty(properties, "pendingExpiryAge", DEFAULT_PENDING_EXPIRY_AGE);
+        this.expirySweeper = getBooleanProperty(properties, "expirySweeper", DEFAULT_EXPIRY_SWEEPER);
+        this.expirySweepInterval = getIntProperty(properties, "expirySweepInterval", DEFAULT_EXPIRY_SWEEP_INTERVAL);
+        this.expirySweepBatchSize = getIntProperty(properties, "expirySweepBatchSize", DEFAULT_EXPIRY_SWEEP_BATCH_SIZE);
+        this.statusReconciler = getBooleanProperty(properties, "statusReconciler", DEFAULT_STATUS_RECONCILER);
+        this.statusReconcileInterval = getIntProperty(properties, "statusReconcileInterval",
+                DEFAULT_STATUS_RECONCILE_INTERVAL);
+        this.statusReconcileBatchSize = getIntProperty(properties, "statusReconcileBatchSize",
+                DEFAULT_STATUS_RECONCILE_BATCH_SIZE);
+        this.statusReconcileAge = getLongProperty(properties, "statusReconcileAge", DEFAULT_STATUS_RECONCILE_AGE);
+        this.statusReconcileRateLimit = getIntProperty(properties, "statusReconcileRateLimit",
+                DEFAULT_STATUS_RECONCILE_RATE_LIMIT);
+        this.responseArchiver = getBooleanProperty(properties, "responseArchiver", DEFAULT_RESPONSE_ARCHIVER);
+        this.responseArchiveAge = getLongProperty(properties, "responseArchiveAge", DEFAULT_RESPONSE_ARCHIVE_AGE);
+        this.responseArchiveInterval = getIntProperty(properties, "responseArchiveInterval",
+                DEFAULT_RESPONSE_ARCHIVE_INTERVAL);
+        this.responseArchiveBatchSize = getIntProperty(properties, "responseArchiveBatchSize",
+                DEFAULT_RESPONSE_ARCHIVE_BATCH_SIZE);
+        this.compressPayloads = getBooleanProperty(properties, "compressPayloads", DEFAULT_COMPRESS_PAYLOADS);
+        this.payloadLogSampleRate = getDoubleProperty(properties, "payloadLogSampleRate",
+                DEFAULT_PAYLOAD_LOG_SAMPLE_RATE);
+        this.payloadLogOnError = getBooleanProperty(properties, "payloadLogOnError", DEFAULT_PAYLOAD_LOG_ON_ERROR);
+        this.circuitBreaker = getBooleanProperty(properties, "circuitBreaker", DEFAULT_CIRCUIT_BREAKER);
+        this.circuitBreakerFailureRate = getIntProperty(properties, "circuitBreakerFailureRate",
+                DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE);
+        this.circuitBreakerSlowCallRate = getIntProperty(properties, "circuitBreakerSlowCallRate",
+                DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE);
+        this.circuitBreakerSlowCallDuration = getIntProperty(properties, "circuitBreakerSlowCallDuration",
+                DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION);
+        this.circuitBreakerWindowSize = getIntProperty(properties, "circuitBreakerWindowSize",
+                DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE);
+        this.circuitBreakerMinimumCalls = getIntProperty(properties, "circuitBreakerMinimumCalls",
+                DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS);
+        this.circuitBreakerOpenDuration = getIntProperty(properties, "circuitBreakerOpenDuration",
+                DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION);
+        this.circuitBreakerHalfOpenCalls = getIntProperty(properties, "circuitBreakerHalfOpenCalls",
+                DEFAULT_CIRCUIT_BREAKER_HALF_OPEN_CALLS);
+        this.bulkheadMaxInFlight = getIntProperty(properties, "bulkheadMaxInFlight", DEFAULT_BULKHEAD_MAX_IN_FLIGHT);
+        this.bulkheadMaxWait = getIntProperty(properties, "bulkheadMaxWait", DEFAULT_BULKHEAD_MAX_WAIT);
 
         String currenciesStr = getProperty(properties, "currencies", DEFAULT_CURRENCIES);
         this.currencies = currenciesStr != null
@@ -88,6 +244,30 @@ public class LiqPayConfig {
         }
     }
 
+    private long getLongProperty(Properties properties, String key, long defaultValue) {
+        String value = getProperty(properties, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private double getDoubleProperty(Properties properties, String key, double defaultValue) {
+        String value = getProperty(properties, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public boolean isConfigured() {
         return publicKey != null && !publicKey.isEmpty() &&
                privateKey != null && !privateKey.isEmpty();
@@ -109,6 +289,10 @@ public class LiqPayConfig {
         return serverUrl;
     }
 
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
     public List<String> getCurrencies() {
         return currencies;
     }
@@ -125,12 +309,189 @@ public class LiqPayConfig {
         return readTimeout;
     }
 
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getAsyncMaxInFlight() {
+        return asyncMaxInFlight;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getMaxConcurrentCallsPerTenant() {
+        return maxConcurrentCallsPerTenant;
+    }
+
+    public boolean isCallbackInbox() {
+        return callbackInbox;
+    }
+
+    public int getCallbackInboxPollInterval() {
+        return callbackInboxPollInterval;
+    }
+
+    public int getCallbackInboxBatchSize() {
+        return callbackInboxBatchSize;
+    }
+
+    public int getCallbackInboxMaxAttempts() {
+        return callbackInboxMaxAttempts;
+    }
+
+    public long getCallbackInboxRetention() {
+        return callbackInboxRetention;
+    }
+
+    public int getCallbackDedupCacheSize() {
+        return callbackDedupCacheSize;
+    }
+
+    public boolean isResponseBatching() {
+        return responseBatching;
+    }
+
+    public int getResponseBatchSize() {
+        return responseBatchSize;
+    }
+
+    public int getResponseBatchDelay() {
+        return responseBatchDelay;
+    }
+
+    public int getCardTokenCacheSize() {
+        return cardTokenCacheSize;
+    }
+
+    public int getCardTokenCacheTtl() {
+        return cardTokenCacheTtl;
+    }
+
+    public long getPendingExpiryAge() {
+        return pendingExpiryAge;
+    }
+
+    public boolean isExpirySweeper() {
+        return expirySweeper;
+    }
+
+    public int getExpirySweepInterval() {
+        return expirySweepInterval;
+    }
+
+    public int getExpirySweepBatchSize() {
+        return expirySweepBatchSize;
+    }
+
+    public boolean isStatusReconciler() {
+        return statusReconciler;
+    }
+
+    public int getStatusReconcileInterval() {
+        return statusReconcileInterval;
+    }
+
+    public int getStatusReconcileBatchSize() {
+        return statusReconcileBatchSize;
+    }
+
+    public long getStatusReconcileAge() {
+        return statusReconcileAge;
+    }
+
+    public int getStatusReconcileRateLimit() {
+        return statusReconcileRateLimit;
+    }
+
+    public boolean isResponseArchiver() {
+        return responseArchiver;
+    }
+
+    public long getResponseArchiveAge() {
+        return responseArchiveAge;
+    }
+
+    public int getResponseArchiveInterval() {
+        return responseArchiveInterval;
+    }
+
+    public int getResponseArchiveBatchSize() {
+        return responseArchiveBatchSize;
+    }
+
+    public boolean isCompressPayloads() {
+        return compressPayloads;
+    }
+
+    public double getPayloadLogSampleRate() {
+        return payloadLogSampleRate;
+    }
+
+    public boolean isPayloadLogOnError() {
+        return payloadLogOnError;
+    }
+
+    public boolean isCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getCircuitBreakerFailureRate() {
+        return circuitBreakerFailureRate;
+    }
+
+    public int getCircuitBreakerSlowCallRate() {
+        return circuitBreakerSlowCallRate;
+    }
+
+    public int getCircuitBreakerSlowCallDuration() {
+        return circuitBreakerSlowCallDuration;
+    }
+
+    public int getCircuitBreakerWindowSize() {
+        return circuitBreakerWindowSize;
+    }
+
+    public int getCircuitBreakerMinimumCalls() {
+        return circuitBreakerMinimumCalls;
+    }
+
+    public int getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration;
+    }
+
+    public int getCircuitBreakerHalfOpenCalls() {
+        return circuitBreakerHalfOpenCalls;
+    }
+
+    public int getBulkheadMaxInFlight() {
+        return bulkheadMaxInFlight;
+    }
+
+    public int getBulkheadMaxWait() {
+        return bulkheadMaxWait;
+    }
+
     @Override
     public String toString() {
         return "LiqPayConfig{" +
                 "publicKey='" + (publicKey != null ? publicKey.substring(0, Math.min(10, publicKey.length())) + "..." : "null") + '\'' +
                 ", sandbox=" + sandbox +
                 ", serverUrl='" + serverUrl + '\'' +
+                ", apiUrl='" + apiUrl + '\'' +
                 ", currencies=" + currencies +
                 ", language='" + language + '\'' +
                 '}';
@@ -16,14 +16,17 @@
 
 package io.sailkit.billing.plugin.liqpay;
 
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.sailkit.billing.plugin.liqpay.client.LiqPayAsyncClient;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
 
 /**
@@ -50,6 +53,10 @@ public class LiqPayConfigurationHandler extends PluginTenantConfigurableConfigur
     private static final Logger logger = LoggerFactory.getLogger(LiqPayConfigurationHandler.class);
 
     private final String region;
+    // Tenants by LiqPay public key, filled as tenant configurations are looked up
+    private final Map<String, UUID> tenantsByPublicKey = new ConcurrentHashMap<>();
+
+    private volatile LiqPayClientRegistry clientRegistry;
 
     public LiqPayConfigurationHandler(final String region,
                                        final String pluginName,
@@ -58,6 +65,14 @@ public class LiqPayConfigurationHandler extends PluginTenantConfigurableConfigur
         this.region = region;
     }
 
+    public void setClientRegistry(final LiqPayClientRegistry clientRegistry) {
+        this.clientRegistry = clientRegistry;
+    }
+
+    public LiqPayClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
     @Override
     protected LiqPayConfig createConfigurable(final Properties properties) {
         LiqPayConfig config = new LiqPayConfig(properties);
@@ -65,6 +80,22 @@ public class LiqPayConfigurationHandler extends PluginTenantConfigurableConfigur
         return config;
     }
 
+    /**
+     * Reloads the tenant configuration and drops the cached client so the next
+     * call picks up the new keys and timeouts.
+     */
+    @Override
+    protected void configure(final UUID kbTenantId) {
+        super.configure(kbTenantId);
+        if (kbTenantId != null) {
+            // The keys may have changed, the next lookup indexes the tenant again
+            tenantsByPublicKey.values().removeIf(kbTenantId::equals);
+        }
+        if (clientRegistry != null) {
+            clientRegistry.invalidate(kbTenantId);
+        }
+    }
+
     /**
      * Gets the LiqPay configuration for a specific tenant.
      *
@@ -77,29 +108,58 @@ public class LiqPayConfigurationHandler extends PluginTenantConfigurableConfigur
             logger.warn("No LiqPay configuration found for tenant {}, using default", tenantId);
             config = getConfigurable(null);
         }
+        if (tenantId != null && config != null && config.getPublicKey() != null
+                && !tenantId.equals(tenantsByPublicKey.get(config.getPublicKey()))) {
+            tenantsByPublicKey.put(config.getPublicKey(), tenantId);
+        }
         return config;
     }
 
     /**
-     * Creates a LiqPay client for a specific tenant.
+     * Finds a tenant using a LiqPay public key, without touching the database. Only tenants whose
+     * configuration has been looked up on this node are known.
+     *
+     * @param publicKey LiqPay public key, e.g. from a callback
+     * @return Tenant UUID, or null if no known tenant uses the key
+     */
+    public UUID getTenantForPublicKey(String publicKey) {
+        return publicKey != null ? tenantsByPublicKey.get(publicKey) : null;
+    }
+
+    /**
+     * Gets the LiqPay client for a specific tenant.
+     * Clients are cached per tenant and share one pooled HTTP connection manager.
      *
      * @param tenantId Tenant UUID
      * @return LiqPay client configured for the tenant
      */
-    public LiqPayClient createClientForTenant(UUID tenantId) {
+    public LiqPayClient getClientForTenant(UUID tenantId) {
         LiqPayConfig config = getConfigForTenant(tenantId);
         if (config == null || !config.isConfigured()) {
             throw new IllegalStateException("LiqPay is not configured for tenant " + tenantId);
         }
+        if (clientRegistry == null) {
+            throw new IllegalStateException("LiqPay client registry is not initialized");
+        }
+
+        return clientRegistry.getClient(tenantId, config);
+    }
+
+    /**
+     * Gets the non-blocking LiqPay client for a specific tenant.
+     *
+     * @param tenantId Tenant UUID
+     * @return Async LiqPay client configured for the tenant
+     */
+    public LiqPayAsyncClient getAsyncClientForTenant(UUID tenantId) {
+        LiqPayConfig config = getConfigForTenant(tenantId);
+        if (config == null || !config.isConfigured()) {
+            throw new IllegalStateException("LiqPay is not configured for tenant " + tenantId);
+        }
+        if (clientRegistry == null) {
+            throw new IllegalStateException("LiqPay client registry is not initialized");
+        }
 
-        return new LiqPayClient(
-                config.getPublicKey(),
-                config.getPrivateKey(),
-                config.isSandbox(),
-                config.getServerUrl(),
-                config.getLanguage(),
-                config.getConnectionTimeout(),
-                config.getReadTimeout()
-        );
+        return clientRegistry.getAsyncClient(tenantId, config);
     }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes blocking background LiqPay work (callback inbox drains, status checks) with a
+ * per-tenant concurrency cap.
+ *
+ * Work submitted through {@link #submit(UUID, Callable)} runs on a virtual-thread-per-task
+ * executor when {@code virtualThreads=true} and the JVM supports it (Java 21+), otherwise on
+ * a fixed pool of {@code workerThreads} platform threads shared by all tenants. The plugin
+ * targets Java 11, so virtual threads and the JFR pinning stream are looked up reflectively.
+ *
+ * A task is only handed to the executor once its tenant is under the cap; tasks over the cap
+ * wait in a per-tenant queue, not on a pool thread, so a busy tenant cannot take every worker
+ * and delay other tenants' work. Inline LiqPay calls made on Kill Bill's threads are capped by
+ * the client bulkhead ({@code bulkheadMaxInFlight}) instead.
+ */
+public class LiqPayExecutionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayExecutionService.class);
+
+    private static final UUID DEFAULT_TENANT_KEY = new UUID(0L, 0L);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final int maxConcurrentPerTenant;
+    private final Map<UUID, TenantQueue> tenants = new ConcurrentHashMap<>();
+
+    private final LongAdder submittedTasks = new LongAdder();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder failedTasks = new LongAdder();
+    private final LongAdder permitWaitNanos = new LongAdder();
+    private final LongAdder pinnedEvents = new LongAdder();
+
+    private final AutoCloseable pinningStream;
+
+    /**
+     * @param useVirtualThreads Run submitted tasks on virtual threads when the JVM supports them
+     * @param workerThreads Size of the platform thread pool shared by all tenants
+     * @param maxConcurrentPerTenant Maximum concurrent background tasks per tenant
+     */
+    public LiqPayExecutionService(boolean useVirtualThreads, int workerThreads, int maxConcurrentPerTenant) {
+        this.maxConcurrentPerTenant = maxConcurrentPerTenant;
+
+        ExecutorService virtualExecutor = useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtualThreads = true;
+            this.pinningStream = startPinningStream();
+            logger.info("LiqPay execution service using virtual threads, maxConcurrentPerTenant={}",
+                    maxConcurrentPerTenant);
+        } else {
+            if (useVirtualThreads) {
+                logger.warn("Virtual threads requested but not supported by this JVM, using platform threads");
+            }
+            this.executor = Executors.newFixedThreadPool(workerThreads, new WorkerThreadFactory());
+            this.virtualThreads = false;
+            this.pinningStream = null;
+            logger.info("LiqPay execution service using {} platform threads, maxConcurrentPerTenant={}",
+                    workerThreads, maxConcurrentPerTenant);
+        }
+    }
+
+    /**
+     * Runs a task in the background under the tenant's concurrency cap.
+     *
+     * @param tenantId Tenant UUID (may be null)
+     * @param task Task to run
+     * @return Future completed with the task result
+     * @throws RejectedExecutionException if the service is closed
+     */
+    public <T> CompletableFuture<T> submit(UUID tenantId, Callable<T> task) {
+        submittedTasks.increment();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        TenantQueue queue = tenants.computeIfAbsent(tenantId != null ? tenantId : DEFAULT_TENANT_KEY,
+                k -> new TenantQueue());
+        queue.submit(new QueuedTask<>(queue, task, future));
+        return future;
+    }
+
+    /**
+     * Stops accepting work and waits briefly for running tasks.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (pinningStream != null) {
+            try {
+                pinningStream.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close virtual thread pinning stream", e);
+            }
+        }
+    }
+
+    // Metrics
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrentPerTenant() {
+        return maxConcurrentPerTenant;
+    }
+
+    public int getActiveTasks(UUID tenantId) {
+        TenantQueue queue = tenants.get(tenantId != null ? tenantId : DEFAULT_TENANT_KEY);
+        return queue != null ? queue.getRunning() : 0;
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks.sum();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    public long getFailedTasks() {
+        return failedTasks.sum();
+    }
+
+    /**
+     * Total time tasks spent queued behind their tenant's cap.
+     */
+    public long getPermitWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(permitWaitNanos.sum());
+    }
+
+    /**
+     * Number of times a virtual thread pinned its carrier thread (JFR {@code jdk.VirtualThreadPinned}).
+     * Always 0 when running on platform threads.
+     */
+    public long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private AutoCloseable startPinningStream() {
+        try {
+            ClassLoader loader = ClassLoader.getPlatformClassLoader();
+            Class<?> streamClass = loader.loadClass("jdk.jfr.consumer.RecordingStream");
+            Class<?> settingsClass = loader.loadClass("jdk.jfr.EventSettings");
+
+            Object stream = streamClass.getConstructor().newInstance();
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, Duration.ofMillis(20));
+
+            Consumer<Object> onPinned = event -> pinnedEvents.increment();
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, onPinned);
+            streamClass.getMethod("startAsync").invoke(stream);
+
+            return (AutoCloseable) stream;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Virtual thread pinning metrics unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Tasks of one tenant: at most {@code maxConcurrentPerTenant} are on the executor,
+     * the rest wait here and are dispatched as running ones finish.
+     */
+    private final class TenantQueue {
+        private final Queue<QueuedTask<?>> waiting = new ArrayDeque<>();
+        private int running;
+
+        void submit(QueuedTask<?> task) {
+            synchronized (this) {
+                if (running >= maxConcurrentPerTenant) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Hands the finished task's slot to the next waiting task, if any.
+         */
+        void release() {
+            QueuedTask<?> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            permitWaitNanos.add(System.nanoTime() - next.queuedAt);
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                next.future.completeExceptionally(e);
+                release();
+            }
+        }
+
+        synchronized int getRunning() {
+            return running;
+        }
+    }
+
+    private final class QueuedTask<T> implements Runnable {
+        private final TenantQueue queue;
+        private final Callable<T> task;
+        private final CompletableFuture<T> future;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedTask(TenantQueue queue, Callable<T> task, CompletableFuture<T> future) {
+            this.queue = queue;
+            this.task = task;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            T result;
+            try {
+                result = task.call();
+            } catch (Throwable t) {
+                queue.release();
+                failedTasks.increment();
+                future.completeExceptionally(t);
+                return;
+            }
+            // Release and count before completing, so callers observe settled metrics
+            queue.release();
+            completedTasks.increment();
+            future.complete(result);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "liqpay-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
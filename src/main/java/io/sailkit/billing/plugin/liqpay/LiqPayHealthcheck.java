@@ -16,6 +16,7 @@
 
 package io.sailkit.billing.plugin.liqpay;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.killbill.billing.osgi.api.Healthcheck;
@@ -23,9 +24,13 @@ import org.killbill.billing.tenant.api.Tenant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.sailkit.billing.plugin.liqpay.client.LiqPayCircuitBreaker;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+
 /**
  * Health check for the LiqPay plugin.
- * Verifies that the plugin is properly configured.
+ * Verifies that the plugin is properly configured and reports the tenant's circuit breaker and
+ * bulkhead. The check is unhealthy while the circuit breaker is open.
  */
 public class LiqPayHealthcheck implements Healthcheck {
 
@@ -58,12 +63,31 @@ public class LiqPayHealthcheck implements Healthcheck {
                 return HealthStatus.unHealthy("LiqPay API keys not configured");
             }
 
-            // Check for sandbox mode warning
-            if (config.isSandbox()) {
-                return HealthStatus.healthy("LiqPay plugin configured (SANDBOX MODE)");
+            String message = config.isSandbox() ? "LiqPay plugin configured (SANDBOX MODE)" : "LiqPay plugin configured";
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("message", message);
+
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
+            LiqPayCircuitBreaker breaker = client.getCircuitBreaker();
+            boolean healthy = true;
+            if (breaker != null) {
+                LiqPayCircuitBreaker.State state = breaker.getState();
+                healthy = state != LiqPayCircuitBreaker.State.OPEN;
+                if (!healthy) {
+                    details.put("message", "LiqPay circuit breaker OPEN, calls are rejected");
+                }
+                details.put("circuitBreaker", state.name());
+                details.put("failureRate", breaker.getFailureRate());
+                details.put("slowCallRate", breaker.getSlowCallRate());
+                details.put("rejectedCalls", breaker.getRejectedCalls());
+            }
+            if (client.getMaxInFlight() > 0) {
+                details.put("inFlight", client.getInFlight());
+                details.put("maxInFlight", client.getMaxInFlight());
+                details.put("bulkheadRejections", client.getBulkheadRejections());
             }
 
-            return HealthStatus.healthy("LiqPay plugin configured");
+            return new HealthStatus(healthy, details);
 
         } catch (Exception e) {
             logger.error("Health check failed", e);
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.commons.metrics.api.Counter;
+import org.killbill.commons.metrics.api.Gauge;
+import org.killbill.commons.metrics.api.MetricRegistry;
+import org.killbill.commons.metrics.api.Timer;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayRequestListener;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+
+/**
+ * Publishes LiqPay metrics to the Kill Bill metrics registry.
+ *
+ * <ul>
+ *   <li>{@code liqpay.api.<action>} and {@code liqpay.api.<action>.tenant.<tenantId>} - API latency timers</li>
+ *   <li>{@code liqpay.api.<action>.status.<status>} and {@code liqpay.api.<action>.err_code.<errCode>} -
+ *       counters of LiqPay statuses and error codes ({@code status.transport_error} when no response was read)</li>
+ *   <li>{@code liqpay.http.pool.*} - HTTP connection pool gauges (leased, pending, available, max,
+ *       lease_wait_millis, lease_timeouts)</li>
+ *   <li>{@code liqpay.callback} and {@code liqpay.callback.http_status.<code>} - callback processing timers</li>
+ * </ul>
+ *
+ * Status and error codes come from LiqPay, so they are reduced to {@code [A-Za-z0-9_-]} before being
+ * used in a metric name. Without a registry (e.g. in tests) all calls are no-ops.
+ */
+public class LiqPayMetrics {
+
+    public static final String PREFIX = "liqpay.";
+
+    private static final String DEFAULT_TENANT = "default";
+    private static final String NONE = "none";
+    private static final String TRANSPORT_ERROR = "transport_error";
+    private static final int MAX_NAME_PART_LENGTH = 64;
+
+    private final MetricRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Set<String> gauges = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param registry Kill Bill metrics registry, or null to disable metrics
+     */
+    public LiqPayMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * Returns a listener recording API latency, status and error code metrics for a tenant's client.
+     *
+     * @param tenantId Tenant UUID (may be null for the default configuration)
+     */
+    public LiqPayRequestListener apiListener(UUID tenantId) {
+        if (registry == null) {
+            return LiqPayRequestListener.NONE;
+        }
+        String tenant = tenantId != null ? tenantId.toString() : DEFAULT_TENANT;
+        return (action, durationNanos, response, error) -> recordApiCall(tenant, action, durationNanos, response);
+    }
+
+    /**
+     * Registers gauges for the shared HTTP connection pool.
+     */
+    public void registerConnectionPool(LiqPayConnectionPool pool) {
+        registerGauge("http.pool.leased", () -> pool.getTotalStats().getLeased());
+        registerGauge("http.pool.pending", () -> pool.getTotalStats().getPending());
+        registerGauge("http.pool.available", () -> pool.getTotalStats().getAvailable());
+        registerGauge("http.pool.max", () -> pool.getTotalStats().getMax());
+        registerGauge("http.pool.lease_wait_millis", pool::getLeaseWaitMillis);
+        registerGauge("http.pool.lease_timeouts", pool::getLeaseTimeouts);
+    }
+
+    /**
+     * Records the processing time of one callback request.
+     *
+     * @param httpStatus HTTP status returned to LiqPay
+     * @param durationNanos Time spent handling the request
+     */
+    public void recordCallback(int httpStatus, long durationNanos) {
+        if (registry == null) {
+            return;
+        }
+        timer(PREFIX + "callback").update(durationNanos, TimeUnit.NANOSECONDS);
+        timer(PREFIX + "callback.http_status." + httpStatus).update(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Removes the gauges registered by this instance. The registry outlives the plugin, and gauges
+     * would otherwise keep the stopped connection pool reachable.
+     */
+    public void close() {
+        if (registry == null) {
+            return;
+        }
+        for (String name : gauges) {
+            registry.remove(name);
+        }
+        gauges.clear();
+    }
+
+    private void recordApiCall(String tenant, String action, long durationNanos, LiqPayResponse response) {
+        String prefix = PREFIX + "api." + namePart(action);
+        timer(prefix).update(durationNanos, TimeUnit.NANOSECONDS);
+        timer(prefix + ".tenant." + tenant).update(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (response == null) {
+            counter(prefix + ".status." + TRANSPORT_ERROR).inc(1);
+            return;
+        }
+        counter(prefix + ".status." + namePart(response.getStatus())).inc(1);
+        if (response.getErrCode() != null) {
+            counter(prefix + ".err_code." + namePart(response.getErrCode())).inc(1);
+        }
+    }
+
+    private <T> void registerGauge(String name, Gauge<T> gauge) {
+        if (registry == null) {
+            return;
+        }
+        String fullName = PREFIX + name;
+        registry.gauge(fullName, gauge);
+        gauges.add(fullName);
+    }
+
+    private Timer timer(String name) {
+        return timers.computeIfAbsent(name, registry::timer);
+    }
+
+    private Counter counter(String name) {
+        return counters.computeIfAbsent(name, registry::counter);
+    }
+
+    static String namePart(String value) {
+        if (value == null || value.isEmpty()) {
+            return NONE;
+        }
+        int length = Math.min(value.length(), MAX_NAME_PART_LENGTH);
+        StringBuilder sb = null;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-';
+            if (!allowed && sb == null) {
+                sb = new StringBuilder(length).append(value, 0, i);
+            }
+            if (sb != null) {
+                sb.append(allowed ? c : '_');
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return length == value.length() ? value : value.substring(0, length);
+    }
+}
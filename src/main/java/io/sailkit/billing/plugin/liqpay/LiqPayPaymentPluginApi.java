@@ -21,12 +21,13 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-
-import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.account.api.Account;
@@ -58,6 +59,8 @@ import io.sailkit.billing.plugin.liqpay.api.LiqPayStatusMapper;
 import io.sailkit.billing.plugin.liqpay.api.LiqPayTransactionInfoPlugin;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayPayloadLog;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayRequest;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
 import io.sailkit.billing.plugin.liqpay.client.LiqPaySignature;
@@ -72,6 +75,9 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
 
     private static final Logger logger = LoggerFactory.getLogger(LiqPayPaymentPluginApi.class);
 
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+    private static final long MAX_SEARCH_LIMIT = 1000L;
+
     private final OSGIKillbillAPI killbillAPI;
     private final LiqPayConfigurationHandler configurationHandler;
     private final Clock clock;
@@ -80,11 +86,11 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
     public LiqPayPaymentPluginApi(OSGIKillbillAPI killbillAPI,
                                    LiqPayConfigurationHandler configurationHandler,
                                    Clock clock,
-                                   DataSource dataSource) {
+                                   LiqPayDao dao) {
         this.killbillAPI = killbillAPI;
         this.configurationHandler = configurationHandler;
         this.clock = clock;
-        this.dao = new LiqPayDao(dataSource);
+        this.dao = dao;
     }
 
     @Override
@@ -111,25 +117,33 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                         TransactionType.AUTHORIZE, amount, currency, now);
             }
 
-            // Get card token
-            String cardToken = dao.getCardToken(kbPaymentMethodId, tenantId);
+            // Get card token, checking out a connection only on a cache miss. Without a token the
+            // pending transaction is created on the same connection.
+            String cardToken = dao.getCachedCardToken(kbPaymentMethodId, tenantId);
+            if (cardToken == null) {
+                cardToken = dao.inTransaction(uow -> {
+                    String token = dao.getCardToken(uow, kbPaymentMethodId, tenantId);
+                    if (token == null) {
+                        // Create pending transaction with transaction ID as order_id
+                        String orderId = kbTransactionId.toString();
+                        dao.createPendingTransaction(uow, kbAccountId, kbPaymentId, kbTransactionId,
+                                kbPaymentMethodId, tenantId, orderId,
+                                TransactionType.AUTHORIZE.name(), amount, currency.name());
+                    }
+                    return token;
+                });
+            }
 
             if (cardToken == null) {
                 // No token and not HPP flow - return PENDING, customer must use hosted page
                 logger.info("No card token for payment method {}, returning PENDING for hosted flow", kbPaymentMethodId);
 
-                // Create pending transaction with transaction ID as order_id
-                String orderId = kbTransactionId.toString();
-                dao.createPendingTransaction(kbAccountId, kbPaymentId, kbTransactionId,
-                        kbPaymentMethodId, tenantId, orderId,
-                        TransactionType.AUTHORIZE.name(), amount, currency.name());
-
                 return LiqPayTransactionInfoPlugin.pending(kbPaymentId, kbTransactionId,
                         TransactionType.AUTHORIZE, amount, currency, now);
             }
 
             // Perform hold with token
-            LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
             String description = getPropertyValue("description", properties, "Authorization");
 
             LiqPayResponse response = client.holdWithToken(
@@ -148,7 +162,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     TransactionType.AUTHORIZE, amount, currency, response, now);
 
         } catch (LiqPayException e) {
-            logger.error("LiqPay authorize failed", e);
+            logFailure("authorize", e);
             if (e.getResponse() != null) {
                 return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                         TransactionType.AUTHORIZE, amount, currency, e.getResponse(), now);
@@ -176,13 +190,10 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
             // Get the original authorize order ID (we need to find the original transaction)
             String originalOrderId = getPropertyValue("original_order_id", properties, null);
             if (originalOrderId == null) {
-                // Use the original payment's first transaction ID
-                List<LiqPayResponseRecord> responses = dao.getResponsesForPayment(kbPaymentId, tenantId);
-                for (LiqPayResponseRecord resp : responses) {
-                    if ("AUTHORIZE".equals(resp.getTransactionType()) && "hold_wait".equals(resp.getStatus())) {
-                        originalOrderId = resp.getLiqpayOrderId();
-                        break;
-                    }
+                // Use the original payment's authorization hold
+                LiqPayResponseRecord hold = dao.getOriginalHold(kbPaymentId, tenantId);
+                if (hold != null) {
+                    originalOrderId = hold.getLiqpayOrderId();
                 }
             }
 
@@ -190,7 +201,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                 throw new PaymentPluginApiException("", "No authorization found for capture");
             }
 
-            LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
             LiqPayResponse response = client.holdCompletion(originalOrderId, amount);
 
             dao.saveResponse(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, tenantId,
@@ -200,7 +211,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     TransactionType.CAPTURE, amount, currency, response, now);
 
         } catch (LiqPayException e) {
-            logger.error("LiqPay capture failed", e);
+            logFailure("capture", e);
             if (e.getResponse() != null) {
                 return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                         TransactionType.CAPTURE, amount, currency, e.getResponse(), now);
@@ -225,23 +236,31 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
         UUID tenantId = context.getTenantId();
 
         try {
-            // Get card token
-            String cardToken = dao.getCardToken(kbPaymentMethodId, tenantId);
+            // Get card token, checking out a connection only on a cache miss. Without a token the
+            // pending transaction is created on the same connection.
+            String cardToken = dao.getCachedCardToken(kbPaymentMethodId, tenantId);
+            if (cardToken == null) {
+                cardToken = dao.inTransaction(uow -> {
+                    String token = dao.getCardToken(uow, kbPaymentMethodId, tenantId);
+                    if (token == null) {
+                        dao.createPendingTransaction(uow, kbAccountId, kbPaymentId, kbTransactionId,
+                                kbPaymentMethodId, tenantId, kbTransactionId.toString(),
+                                TransactionType.PURCHASE.name(), amount, currency.name());
+                    }
+                    return token;
+                });
+            }
 
             if (cardToken == null) {
                 // No token - return PENDING, customer must use hosted page
                 logger.info("No card token for payment method {}, returning PENDING for hosted flow", kbPaymentMethodId);
 
-                dao.createPendingTransaction(kbAccountId, kbPaymentId, kbTransactionId,
-                        kbPaymentMethodId, tenantId, kbTransactionId.toString(),
-                        TransactionType.PURCHASE.name(), amount, currency.name());
-
                 return LiqPayTransactionInfoPlugin.pending(kbPaymentId, kbTransactionId,
                         TransactionType.PURCHASE, amount, currency, now);
             }
 
             // Perform token payment
-            LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
             String description = getPropertyValue("description", properties, "Payment");
 
             LiqPayResponse response = client.payToken(
@@ -252,23 +271,28 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     description
             );
 
-            // Save response
-            dao.saveResponse(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, tenantId,
-                    TransactionType.PURCHASE.name(), response, response.toString());
-
-            // Update token if new one received
             if (response.hasCardToken()) {
-                dao.updatePaymentMethodToken(kbPaymentMethodId, tenantId,
-                        response.getCardToken(), response.getSenderCardMask(),
-                        response.getSenderCardType(), response.getSenderCardBank(),
-                        response.getSenderCardCountry());
+                // Save response and update the token in one unit of work
+                dao.inTransaction(uow -> {
+                    dao.saveResponse(uow, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, tenantId,
+                            TransactionType.PURCHASE.name(), response, response.toString());
+                    dao.updatePaymentMethodToken(uow, kbPaymentMethodId, tenantId,
+                            response.getCardToken(), response.getSenderCardMask(),
+                            response.getSenderCardType(), response.getSenderCardBank(),
+                            response.getSenderCardCountry());
+                    return null;
+                });
+            } else {
+                // Save response
+                dao.saveResponse(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, tenantId,
+                        TransactionType.PURCHASE.name(), response, response.toString());
             }
 
             return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                     TransactionType.PURCHASE, amount, currency, response, now);
 
         } catch (LiqPayException e) {
-            logger.error("LiqPay purchase failed", e);
+            logFailure("purchase", e);
             if (e.getResponse() != null) {
                 return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                         TransactionType.PURCHASE, amount, currency, e.getResponse(), now);
@@ -297,16 +321,13 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
             BigDecimal holdAmount = null;
             String holdCurrency = null;
 
-            List<LiqPayResponseRecord> responses = dao.getResponsesForPayment(kbPaymentId, tenantId);
-            for (LiqPayResponseRecord resp : responses) {
-                if ("AUTHORIZE".equals(resp.getTransactionType()) && "hold_wait".equals(resp.getStatus())) {
-                    if (originalOrderId == null) {
-                        originalOrderId = resp.getLiqpayOrderId();
-                    }
-                    holdAmount = resp.getAmount();
-                    holdCurrency = resp.getCurrency();
-                    break;
+            LiqPayResponseRecord hold = dao.getOriginalHold(kbPaymentId, tenantId);
+            if (hold != null) {
+                if (originalOrderId == null) {
+                    originalOrderId = hold.getLiqpayOrderId();
                 }
+                holdAmount = hold.getAmount();
+                holdCurrency = hold.getCurrency();
             }
 
             if (originalOrderId == null) {
@@ -319,7 +340,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
 
             // Release hold by refunding the held amount
             // Note: LiqPay does not have an "unhold" action. Hold releases use the refund API.
-            LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
             LiqPayResponse response = client.releaseHold(originalOrderId, holdAmount);
 
             Currency currency = holdCurrency != null ? Currency.valueOf(holdCurrency) : null;
@@ -331,7 +352,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     TransactionType.VOID, holdAmount, currency, response, now);
 
         } catch (LiqPayException e) {
-            logger.error("LiqPay void failed", e);
+            logFailure("void", e);
             if (e.getResponse() != null) {
                 return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                         TransactionType.VOID, null, null, e.getResponse(), now);
@@ -372,13 +393,9 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
             // Find the original payment order ID
             String originalOrderId = getPropertyValue("original_order_id", properties, null);
             if (originalOrderId == null) {
-                List<LiqPayResponseRecord> responses = dao.getResponsesForPayment(kbPaymentId, tenantId);
-                for (LiqPayResponseRecord resp : responses) {
-                    if ("success".equals(resp.getStatus()) &&
-                            ("PURCHASE".equals(resp.getTransactionType()) || "CAPTURE".equals(resp.getTransactionType()))) {
-                        originalOrderId = resp.getLiqpayOrderId();
-                        break;
-                    }
+                LiqPayResponseRecord charge = dao.getRefundableCharge(kbPaymentId, tenantId);
+                if (charge != null) {
+                    originalOrderId = charge.getLiqpayOrderId();
                 }
             }
 
@@ -386,7 +403,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                 throw new PaymentPluginApiException("", "No completed payment found to refund");
             }
 
-            LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
+            LiqPayClient client = configurationHandler.getClientForTenant(tenantId);
             LiqPayResponse response = client.refund(originalOrderId, amount);
 
             dao.saveResponse(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, tenantId,
@@ -396,7 +413,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     TransactionType.REFUND, amount, currency, response, now);
 
         } catch (LiqPayException e) {
-            logger.error("LiqPay refund failed", e);
+            logFailure("refund", e);
             if (e.getResponse() != null) {
                 return LiqPayTransactionInfoPlugin.fromResponse(kbPaymentId, kbTransactionId,
                         TransactionType.REFUND, amount, currency, e.getResponse(), now);
@@ -417,36 +434,19 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
         logger.debug("getPaymentInfo: kbPaymentId={}", kbPaymentId);
 
         try {
-            List<LiqPayResponseRecord> responses = dao.getResponsesForPayment(kbPaymentId, context.getTenantId());
-            List<PaymentTransactionInfoPlugin> result = new ArrayList<>();
+            UUID tenantId = context.getTenantId();
+            List<LiqPayResponseRecord> responses = dao.getResponseSummariesForPayment(kbPaymentId, tenantId);
+
+            // raw_response is only loaded when the caller asks for it
+            boolean withRawResponse = Boolean.parseBoolean(getPropertyValue("with_raw_response", properties, "false"));
+            Map<Long, String> rawResponses = withRawResponse && !responses.isEmpty()
+                    ? dao.getRawResponsesForPayment(kbPaymentId, tenantId)
+                    : Collections.emptyMap();
 
+            List<PaymentTransactionInfoPlugin> result = new ArrayList<>(responses.size());
             for (LiqPayResponseRecord record : responses) {
-                LiqPayResponse response = new LiqPayResponse();
-                response.setStatus(record.getStatus());
-                response.setAction(record.getAction());
-                response.setOrderId(record.getLiqpayOrderId());
-                response.setLiqpayOrderId(record.getLiqpayOrderId());
-                response.setPaymentId(record.getLiqpayPaymentId() != null ? Long.parseLong(record.getLiqpayPaymentId()) : null);
-                response.setAmount(record.getAmount());
-                response.setCurrency(record.getCurrency());
-                response.setErrCode(record.getErrCode());
-                response.setErrDescription(record.getErrDescription());
-
-                TransactionType txType = TransactionType.valueOf(record.getTransactionType());
-                Currency currency = record.getCurrency() != null ? Currency.valueOf(record.getCurrency()) : null;
-                DateTime date = record.getApiCallDate() != null
-                        ? new DateTime(record.getApiCallDate().getTime())
-                        : new DateTime(record.getCreatedDate().getTime());
-
-                result.add(LiqPayTransactionInfoPlugin.fromResponse(
-                        kbPaymentId,
-                        record.getKbTransactionId(),
-                        txType,
-                        record.getAmount(),
-                        currency,
-                        response,
-                        date
-                ));
+                result.add(LiqPayTransactionInfoPlugin.fromRecord(kbPaymentId, record,
+                        rawResponses.get(record.getRecordId())));
             }
 
             return result;
@@ -460,21 +460,20 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
     public Pagination<PaymentTransactionInfoPlugin> searchPayments(String searchKey, Long offset, Long limit,
                                                                     Iterable<PluginProperty> properties, TenantContext context)
             throws PaymentPluginApiException {
-        // Search is not implemented - return empty pagination
-        return new Pagination<PaymentTransactionInfoPlugin>() {
-            @Override
-            public Long getCurrentOffset() { return 0L; }
-            @Override
-            public Long getNextOffset() { return null; }
-            @Override
-            public Long getMaxNbRecords() { return 0L; }
-            @Override
-            public Long getTotalNbRecords() { return 0L; }
-            @Override
-            public java.util.Iterator<PaymentTransactionInfoPlugin> iterator() { return List.<PaymentTransactionInfoPlugin>of().iterator(); }
-            @Override
-            public void close() { }
-        };
+        logger.debug("searchPayments: searchKey={}, offset={}, limit={}", searchKey, offset, limit);
+
+        // offset is a keyset cursor: the record_id the previous page ended with
+        long afterRecordId = offset != null ? offset : 0L;
+        int pageSize = limit != null ? (int) Math.min(Math.max(limit, 1L), MAX_SEARCH_LIMIT) : DEFAULT_SEARCH_LIMIT;
+
+        try {
+            return dao.searchResponses(context.getTenantId(), searchKey != null ? searchKey.trim() : "",
+                            afterRecordId, pageSize)
+                    .map(record -> LiqPayTransactionInfoPlugin.fromRecord(record.getKbPaymentId(), record, null));
+        } catch (SQLException e) {
+            logger.error("Database error in searchPayments", e);
+            throw new PaymentPluginApiException("Database error", e);
+        }
     }
 
     @Override
@@ -587,21 +586,20 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
     public Pagination<PaymentMethodPlugin> searchPaymentMethods(String searchKey, Long offset, Long limit,
                                                                  Iterable<PluginProperty> properties, TenantContext context)
             throws PaymentPluginApiException {
-        // Search is not implemented - return empty pagination
-        return new Pagination<PaymentMethodPlugin>() {
-            @Override
-            public Long getCurrentOffset() { return 0L; }
-            @Override
-            public Long getNextOffset() { return null; }
-            @Override
-            public Long getMaxNbRecords() { return 0L; }
-            @Override
-            public Long getTotalNbRecords() { return 0L; }
-            @Override
-            public java.util.Iterator<PaymentMethodPlugin> iterator() { return List.<PaymentMethodPlugin>of().iterator(); }
-            @Override
-            public void close() { }
-        };
+        logger.debug("searchPaymentMethods: searchKey={}, offset={}, limit={}", searchKey, offset, limit);
+
+        // offset is a keyset cursor: the record_id the previous page ended with
+        long afterRecordId = offset != null ? offset : 0L;
+        int pageSize = limit != null ? (int) Math.min(Math.max(limit, 1L), MAX_SEARCH_LIMIT) : DEFAULT_SEARCH_LIMIT;
+
+        try {
+            return dao.searchPaymentMethods(context.getTenantId(), searchKey != null ? searchKey.trim() : "",
+                            afterRecordId, pageSize)
+                    .map(LiqPayPaymentMethodPlugin::fromRecord);
+        } catch (SQLException e) {
+            logger.error("Database error in searchPaymentMethods", e);
+            throw new PaymentPluginApiException("Database error", e);
+        }
     }
 
     @Override
@@ -634,7 +632,8 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                                                                 Iterable<PluginProperty> properties, CallContext context)
             throws PaymentPluginApiException {
 
-        logger.info("buildFormDescriptor: kbAccountId={}", kbAccountId);
+        long start = System.nanoTime();
+        logger.debug("buildFormDescriptor: kbAccountId={}", kbAccountId);
 
         UUID tenantId = context.getTenantId();
         LiqPayConfig config = configurationHandler.getConfigForTenant(tenantId);
@@ -708,15 +707,15 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
             params.put("sandbox", 1);
         }
 
-        // Log the full hold request payload (helpful for LiqPay support)
-        logger.info("buildFormDescriptor - HOLD request params: {}", params);
+        // Full (masked) form payload only for sampled calls
+        if (LiqPayPayloadLog.sample()) {
+            logger.info("buildFormDescriptor request: action={} order_id={} params={}",
+                    action, orderId, LiqPayPayloadLog.params(params));
+        }
 
         // 6. Generate data and signature
         String data = LiqPaySignature.encodeData(params);
-        String signature = LiqPaySignature.createSignature(config.getPrivateKey(), data);
-
-        logger.info("buildFormDescriptor - HOLD request data (base64): {}", data);
-        logger.info("buildFormDescriptor - HOLD request signature: {}", signature);
+        String signature = configurationHandler.getClientForTenant(tenantId).getSigner().sign(data);
 
         // 7. Create KillBill payment with PENDING status and save HPP request
         UUID kbPaymentId = null;
@@ -741,7 +740,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
             String paymentExternalKey = "liqpay-" + orderId;
             String transactionExternalKey = "liqpay-tx-" + orderId;
 
-            logger.info("Creating KillBill authorization: accountId={}, paymentMethodId={}, amount={}, currency={}",
+            logger.debug("Creating KillBill authorization: accountId={}, paymentMethodId={}, amount={}, currency={}",
                     kbAccountId, paymentMethodId, amount, currency);
 
             Payment payment = killbillAPI.getPaymentApi().createAuthorization(
@@ -764,7 +763,7 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                 kbTransactionId = transactions.get(transactions.size() - 1).getId();
             }
 
-            logger.info("Created KillBill payment: paymentId={}, transactionId={}", kbPaymentId, kbTransactionId);
+            logger.debug("Created KillBill payment: paymentId={}, transactionId={}", kbPaymentId, kbTransactionId);
 
         } catch (PaymentApiException e) {
             logger.error("Failed to create KillBill payment", e);
@@ -777,14 +776,14 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
         // 8. Save HPP request and pending transaction to database
         try {
             // Build additional data JSON
-            String additionalDataJson = String.format(
-                    "{\"data\":\"%s\",\"signature\":\"%s\",\"result_url\":\"%s\",\"server_url\":\"%s\",\"kb_payment_id\":\"%s\",\"kb_transaction_id\":\"%s\"}",
-                    data, signature,
-                    resultUrl != null ? resultUrl : "",
-                    serverUrl != null ? serverUrl : "",
-                    kbPaymentId != null ? kbPaymentId.toString() : "",
-                    kbTransactionId != null ? kbTransactionId.toString() : ""
-            );
+            Map<String, String> additionalData = new LinkedHashMap<>();
+            additionalData.put("data", data);
+            additionalData.put("signature", signature);
+            additionalData.put("result_url", resultUrl != null ? resultUrl : "");
+            additionalData.put("server_url", serverUrl != null ? serverUrl : "");
+            additionalData.put("kb_payment_id", kbPaymentId != null ? kbPaymentId.toString() : "");
+            additionalData.put("kb_transaction_id", kbTransactionId != null ? kbTransactionId.toString() : "");
+            String additionalDataJson = LiqPayJson.toJson(additionalData);
 
             dao.addHppRequest(kbAccountId, kbPaymentMethodId, tenantId,
                     sessionId, orderId, mode, isVerification, amount, currency, additionalDataJson);
@@ -795,8 +794,9 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
                     "hold".equals(action) ? "AUTHORIZE" : "PURCHASE",
                     amount, currency);
 
-            logger.info("Created HPP session: sessionId={}, orderId={}, mode={}, verification={}, kbPaymentId={}, kbTransactionId={}",
-                    sessionId, orderId, mode, isVerification, kbPaymentId, kbTransactionId);
+            logger.info("buildFormDescriptor: action={} order_id={} amount={} currency={} mode={} kb_payment_id={} latency_ms={}",
+                    action, orderId, amount, currency, mode, kbPaymentId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
         } catch (SQLException e) {
             logger.error("Database error in buildFormDescriptor", e);
@@ -877,4 +877,16 @@ public class LiqPayPaymentPluginApi implements PaymentPluginApi {
         props.add(new PluginProperty("hpp_flow", "true", false));
         return props;
     }
+
+    /**
+     * Calls rejected by the circuit breaker or bulkhead never reached LiqPay and are expected while it
+     * is degraded; they are logged without a stack trace and reported as CANCELED, so they can be retried.
+     */
+    private static void logFailure(String operation, LiqPayException e) {
+        if (LiqPayClient.isRejected(e)) {
+            logger.warn("LiqPay {} not sent: {}", operation, e.getMessage());
+        } else {
+            logger.error("LiqPay {} failed", operation, e);
+        }
+    }
 }
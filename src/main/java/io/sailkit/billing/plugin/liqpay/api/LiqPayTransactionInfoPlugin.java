@@ -29,6 +29,7 @@ import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
 
 import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
 
 /**
  * Implementation of PaymentTransactionInfoPlugin for LiqPay transactions.
@@ -115,6 +116,40 @@ public class LiqPayTransactionInfoPlugin implements PaymentTransactionInfoPlugin
         return builder.build();
     }
 
+    /**
+     * Creates a transaction info from a stored response, without rebuilding the LiqPay response.
+     *
+     * @param rawResponse Stored JSON to expose as the {@code raw_response} property (may be null)
+     */
+    public static LiqPayTransactionInfoPlugin fromRecord(UUID kbPaymentId, LiqPayResponseRecord record,
+                                                          String rawResponse) {
+        String status = record.getStatus();
+        DateTime date = record.getApiCallDate() != null
+                ? new DateTime(record.getApiCallDate().getTime())
+                : new DateTime(record.getCreatedDate().getTime());
+
+        Builder builder = builder()
+                .withKbPaymentId(kbPaymentId)
+                .withKbTransactionPaymentId(record.getKbTransactionId())
+                .withTransactionType(TransactionType.valueOf(record.getTransactionType()))
+                .withAmount(record.getAmount())
+                .withCurrency(record.getCurrency() != null ? Currency.valueOf(record.getCurrency()) : null)
+                .withEffectiveDate(date)
+                .withCreatedDate(date)
+                .withStatus(LiqPayStatusMapper.mapStatus(status, record.getAction()))
+                .withFirstPaymentReferenceId(record.getLiqpayOrderId())
+                .withSecondPaymentReferenceId(record.getLiqpayPaymentId());
+
+        if (LiqPayResponse.isErrorStatus(status)) {
+            builder.withGatewayErrorCode(record.getErrCode())
+                   .withGatewayError(record.getErrDescription());
+        }
+        builder.addProperty("liqpay_status", status);
+        builder.addProperty("raw_response", rawResponse);
+
+        return builder.build();
+    }
+
     /**
      * Creates a pending transaction info (for hosted page flow).
      */
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.callback;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+
+/**
+ * Detects repeated deliveries of the same LiqPay callback.
+ *
+ * A callback is identified by (order_id, status, payment_id). Identities of applied callbacks
+ * are kept in a bounded LRU and in liqpay_processed_callbacks (unique constraint), so a
+ * duplicate is recognised from memory without touching the database, and from a single
+ * read after a restart or eviction.
+ */
+public class LiqPayCallbackDeduplicator {
+
+    private final LiqPayDao dao;
+    private final Map<String, Boolean> recent;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder databaseHits = new LongAdder();
+
+    /**
+     * @param cacheSize Maximum number of identities kept in memory
+     */
+    public LiqPayCallbackDeduplicator(LiqPayDao dao, int cacheSize) {
+        this.dao = dao;
+        this.recent = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Checks whether this callback has already been applied.
+     */
+    public boolean isDuplicate(LiqPayResponse response) throws SQLException {
+        if (isCached(response)) {
+            return true;
+        }
+
+        String orderId = orderId(response);
+        String status = status(response);
+        String paymentId = paymentId(response);
+        if (dao.isCallbackProcessed(orderId, status, paymentId)) {
+            remember(response);
+            databaseHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the in-memory cache only.
+     */
+    public boolean isCached(LiqPayResponse response) {
+        String key = key(orderId(response), status(response), paymentId(response));
+        synchronized (recent) {
+            if (recent.get(key) != null) {
+                cacheHits.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the callback identity as part of the unit of work that applies the callback,
+     * so it is only persisted if the callback's other writes commit.
+     *
+     * @return false if the callback was already applied (the unit of work is then rollback-only)
+     */
+    public boolean claim(LiqPayDao.UnitOfWork uow, UUID tenantId, LiqPayResponse response) throws SQLException {
+        boolean claimed = dao.insertProcessedCallback(uow, tenantId, orderId(response), status(response),
+                paymentId(response));
+        if (!claimed) {
+            databaseHits.increment();
+        }
+        return claimed;
+    }
+
+    /**
+     * Adds the callback identity to the in-memory cache. Call after the claiming unit of work committed.
+     */
+    public void remember(LiqPayResponse response) {
+        String key = key(orderId(response), status(response), paymentId(response));
+        synchronized (recent) {
+            recent.put(key, Boolean.TRUE);
+        }
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getDatabaseHits() {
+        return databaseHits.sum();
+    }
+
+    private static String key(String orderId, String status, String paymentId) {
+        return orderId + '\u0000' + status + '\u0000' + paymentId;
+    }
+
+    private static String orderId(LiqPayResponse response) {
+        return response.getOrderId() != null ? response.getOrderId() : response.getLiqpayOrderId();
+    }
+
+    private static String status(LiqPayResponse response) {
+        return response.getStatus() != null ? response.getStatus() : "";
+    }
+
+    private static String paymentId(LiqPayResponse response) {
+        return response.getPaymentId() != null ? response.getPaymentId().toString() : "";
+    }
+}
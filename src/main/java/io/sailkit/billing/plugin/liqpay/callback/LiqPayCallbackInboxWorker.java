@@ -0,0 +1,242 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.callback;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayExecutionService;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.model.CallbackInboxRecord;
+
+/**
+ * Drains the durable callback inbox (liqpay_callback_inbox).
+ *
+ * The callback servlet only verifies the signature and stores the raw payload via
+ * {@link #enqueue(String, UUID, String, String)}. This worker polls the inbox for the first
+ * unprocessed entry of each order and drains each order sequentially on the
+ * {@link LiqPayExecutionService}, so callbacks for one order are applied in arrival order while
+ * different orders run in parallel. The inbox only hands out an entry once every earlier entry of
+ * its order is DONE or FAILED, so the order also holds when several Kill Bill nodes poll it.
+ *
+ * A failed entry is retried with exponential backoff and blocks later entries of the same order
+ * until it succeeds or is marked FAILED after {@code callbackInboxMaxAttempts} attempts. An entry
+ * left in PROCESSING by a node that died counts as one attempt when it is requeued. Entries
+ * waiting for a retry are not fetched, so they never crowd out newer callbacks of other orders.
+ */
+public class LiqPayCallbackInboxWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayCallbackInboxWorker.class);
+
+    static final long BASE_RETRY_DELAY_MILLIS = 5000L;
+    static final long MAX_RETRY_DELAY_MILLIS = 600000L;
+    // Entries claimed longer ago than this are assumed orphaned (node crashed) and requeued
+    static final long STALE_CLAIM_MILLIS = 300000L;
+
+    private final LiqPayDao dao;
+    private final LiqPayCallbackProcessor processor;
+    private final LiqPayExecutionService executionService;
+    private final Clock clock;
+    private final boolean enabled;
+    private final int pollIntervalMillis;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    // Orders being drained on this node, so a poll does not submit them twice
+    private final Set<String> activeOrders = ConcurrentHashMap.newKeySet();
+    private final LongAdder processedEntries = new LongAdder();
+    private final LongAdder retriedEntries = new LongAdder();
+    private final LongAdder failedEntries = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param enabled Store callbacks in the inbox; when false the servlet processes callbacks directly
+     * @param pollIntervalMillis Delay between inbox polls
+     * @param batchSize Maximum entries fetched per poll
+     * @param maxAttempts Attempts before an entry is marked FAILED
+     */
+    public LiqPayCallbackInboxWorker(LiqPayDao dao,
+                                     LiqPayCallbackProcessor processor,
+                                     LiqPayExecutionService executionService,
+                                     Clock clock,
+                                     boolean enabled,
+                                     int pollIntervalMillis,
+                                     int batchSize,
+                                     int maxAttempts) {
+        this.dao = dao;
+        this.processor = processor;
+        this.executionService = executionService;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Starts polling the inbox. Does nothing when the inbox is disabled.
+     */
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "liqpay-callback-inbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollSafely, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("LiqPay callback inbox worker started: pollInterval={}ms, batchSize={}, maxAttempts={}",
+                pollIntervalMillis, batchSize, maxAttempts);
+    }
+
+    /**
+     * Stops polling. Entries being processed are finished by the execution service.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stores a verified callback in the inbox.
+     */
+    public void enqueue(String orderId, UUID tenantId, String data, String signature) throws SQLException {
+        dao.insertCallbackInbox(orderId, tenantId, data, signature, now());
+    }
+
+    /**
+     * Fetches the due first entry of pending orders and schedules draining for every order not
+     * already being drained on this node.
+     */
+    void poll() throws SQLException {
+        Timestamp claimedBefore = new Timestamp(clock.getUTCNow().getMillis() - STALE_CLAIM_MILLIS);
+        int failed = dao.failStaleCallbackInboxEntries(claimedBefore, maxAttempts, now());
+        if (failed > 0) {
+            failedEntries.add(failed);
+            logger.error("Gave up on {} stale callback inbox entries after {} attempts", failed, maxAttempts);
+        }
+        int requeued = dao.requeueStaleCallbackInboxEntries(claimedBefore, maxAttempts, now());
+        if (requeued > 0) {
+            retriedEntries.add(requeued);
+            logger.warn("Requeued {} stale callback inbox entries", requeued);
+        }
+
+        for (CallbackInboxRecord entry : dao.getPendingCallbackInboxEntries(now(), batchSize)) {
+            String orderId = entry.getOrderId();
+            if (!activeOrders.add(orderId)) {
+                continue;
+            }
+            executionService.submit(entry.getKbTenantId(), () -> {
+                drainOrder(entry);
+                return null;
+            }).whenComplete((ignored, error) -> {
+                activeOrders.remove(orderId);
+                if (error != null) {
+                    logger.error("Failed to drain callback inbox for order {}", orderId, error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes an order's entries in arrival order, starting with {@code first} and stopping
+     * when the order has no due entry left, an entry is claimed elsewhere, or an entry fails.
+     */
+    void drainOrder(CallbackInboxRecord first) throws SQLException {
+        CallbackInboxRecord entry = first;
+        while (entry != null) {
+            if (!dao.claimCallbackInboxEntry(entry.getRecordId(), now())) {
+                return;
+            }
+
+            try {
+                processor.process(entry);
+            } catch (Exception e) {
+                int attempts = entry.getAttempts() + 1;
+                boolean exhausted = attempts >= maxAttempts;
+                Timestamp nextAttempt = new Timestamp(clock.getUTCNow().getMillis() + retryDelayMillis(attempts));
+                dao.failCallbackInboxEntry(entry.getRecordId(), attempts, nextAttempt, e.toString(), exhausted, now());
+
+                if (exhausted) {
+                    failedEntries.increment();
+                    logger.error("Giving up on callback inbox entry {} for order {} after {} attempts",
+                            entry.getRecordId(), entry.getOrderId(), attempts, e);
+                } else {
+                    retriedEntries.increment();
+                    logger.warn("Callback inbox entry {} for order {} failed (attempt {}), retrying at {}",
+                            entry.getRecordId(), entry.getOrderId(), attempts, nextAttempt, e);
+                }
+                return;
+            }
+
+            dao.completeCallbackInboxEntry(entry.getRecordId(), now());
+            processedEntries.increment();
+
+            entry = dao.getNextCallbackInboxEntry(entry.getOrderId(), now());
+        }
+    }
+
+    static long retryDelayMillis(int attempts) {
+        long delay = BASE_RETRY_DELAY_MILLIS << Math.min(attempts - 1, 20);
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    // Metrics
+
+    public long getProcessedEntries() {
+        return processedEntries.sum();
+    }
+
+    public long getRetriedEntries() {
+        return retriedEntries.sum();
+    }
+
+    public long getFailedEntries() {
+        return failedEntries.sum();
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (Exception e) {
+            logger.error("Error polling LiqPay callback inbox", e);
+        }
+    }
+
+    private Timestamp now() {
+        return new Timestamp(clock.getUTCNow().getMillis());
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.callback;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayConfig;
+import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
+import io.sailkit.billing.plugin.liqpay.api.LiqPayStatusMapper;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayAsyncClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.model.CallbackInboxRecord;
+import io.sailkit.billing.plugin.liqpay.dao.model.HppRequestRecord;
+import io.sailkit.billing.plugin.liqpay.dao.model.PendingTransactionRecord;
+
+/**
+ * Applies a verified LiqPay callback: updates the pending transaction, stores the response
+ * for audit, saves the card token and releases verification holds.
+ *
+ * Used inline by the callback servlet and by the {@link LiqPayCallbackInboxWorker}.
+ */
+public class LiqPayCallbackProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayCallbackProcessor.class);
+
+    private final LiqPayConfigurationHandler configurationHandler;
+    private final LiqPayDao dao;
+    private final LiqPayCallbackDeduplicator deduplicator;
+
+    public LiqPayCallbackProcessor(LiqPayConfigurationHandler configurationHandler, LiqPayDao dao,
+                                   LiqPayCallbackDeduplicator deduplicator) {
+        this.configurationHandler = configurationHandler;
+        this.dao = dao;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Processes a callback stored in the inbox. The signature was verified with the key of the
+     * entry's tenant before it was stored; the order's transaction is looked up here.
+     *
+     * @param entry Inbox entry with the raw callback payload
+     * @throws SQLException if a database write fails (the entry should be retried)
+     */
+    public void process(CallbackInboxRecord entry) throws SQLException {
+        LiqPayResponse response = LiqPayResponse.fromData(entry.getData());
+        if (isCachedDuplicate(response)) {
+            return;
+        }
+        String rawJson = response.getRawJson();
+
+        Outcome outcome = dao.inTransaction(uow -> {
+            PendingTransactionRecord pendingTx = dao.getPendingTransaction(uow, entry.getOrderId());
+            if (pendingTx == null) {
+                logger.warn("No pending transaction found for inbox entry {}, order_id: {}",
+                        entry.getRecordId(), entry.getOrderId());
+                return Outcome.SKIPPED;
+            }
+            if (!isSignedForTenant(entry, pendingTx.getKbTenantId())) {
+                logger.warn("Inbox entry {} for order_id: {} is not signed with the key of tenant {}, skipping",
+                        entry.getRecordId(), entry.getOrderId(), pendingTx.getKbTenantId());
+                return Outcome.SKIPPED;
+            }
+            return apply(uow, pendingTx, response, pendingTx.getKbTenantId(), rawJson);
+        });
+        afterCommit(response, outcome);
+    }
+
+    /**
+     * Checks that a callback verified with the key of the entry's tenant was also signed by the
+     * transaction's tenant. Tenants sharing a LiqPay account are told apart only by the transaction.
+     */
+    private boolean isSignedForTenant(CallbackInboxRecord entry, UUID tenantId) {
+        if (tenantId.equals(entry.getKbTenantId())) {
+            return true;
+        }
+        LiqPayConfig config = configurationHandler.getConfigForTenant(tenantId);
+        return config != null && config.isConfigured()
+                && configurationHandler.getClientForTenant(tenantId).verifyCallbackSignature(entry.getData(), entry.getSignature());
+    }
+
+    /**
+     * Processes the callback, updates the database, and notifies KillBill.
+     * For verification holds, automatically calls unhold to release the $1 hold after token capture.
+     * Repeated deliveries of an already applied callback are skipped without any database writes.
+     *
+     * All database work runs in one unit of work (one connection, one transaction).
+     *
+     * @throws SQLException if a database write fails
+     */
+    public void process(PendingTransactionRecord pendingTx, LiqPayResponse response,
+                        UUID tenantId, String rawJson) throws SQLException {
+        if (isCachedDuplicate(response)) {
+            return;
+        }
+        Outcome outcome = dao.inTransaction(uow -> apply(uow, pendingTx, response, tenantId, rawJson));
+        afterCommit(response, outcome);
+    }
+
+    /**
+     * Applies the callback's writes.
+     *
+     * @return What was applied, including the HPP request of a verification hold that must be released
+     */
+    private Outcome apply(LiqPayDao.UnitOfWork uow, PendingTransactionRecord pendingTx,
+                                   LiqPayResponse response, UUID tenantId, String rawJson) throws SQLException {
+        String orderId = orderId(response);
+
+        // Claim the callback identity first: a concurrent or earlier delivery makes this rollback-only
+        if (!deduplicator.claim(uow, tenantId, response)) {
+            logger.info("Skipping duplicate callback for order {}: status={}, payment_id={}",
+                    orderId, response.getStatus(), response.getPaymentId());
+            return Outcome.DUPLICATE;
+        }
+
+        // Determine if payment was successful
+        boolean isSuccess = LiqPayStatusMapper.isSuccessStatus(response.getStatus(), response.getAction());
+        boolean isFinal = LiqPayStatusMapper.isFinalStatus(response.getStatus());
+
+        logger.info("Processing callback for order {}: status={}, isSuccess={}, isFinal={}",
+                orderId, response.getStatus(), isSuccess, isFinal);
+
+        // Update pending transaction status
+        String status = isSuccess ? "COMPLETED" : (response.isError() ? "FAILED" : "PENDING");
+        dao.updatePendingTransactionStatus(uow, orderId, tenantId, status);
+
+        // Save the response for audit
+        dao.saveResponse(
+                uow,
+                pendingTx.getKbAccountId(),
+                pendingTx.getKbPaymentId(),
+                pendingTx.getKbTransactionId(),
+                pendingTx.getKbPaymentMethodId(),
+                tenantId,
+                mapActionToTransactionType(response.getAction()),
+                response,
+                rawJson
+        );
+
+        // If we received a card token, update the payment method
+        if (response.hasCardToken() && pendingTx.getKbPaymentMethodId() != null) {
+            logger.info("Updating payment method {} with card token", pendingTx.getKbPaymentMethodId());
+            dao.updatePaymentMethodToken(
+                    uow,
+                    pendingTx.getKbPaymentMethodId(),
+                    tenantId,
+                    response.getCardToken(),
+                    response.getSenderCardMask(),
+                    response.getSenderCardType(),
+                    response.getSenderCardBank(),
+                    response.getSenderCardCountry()
+            );
+        }
+
+        // Check if this is a verification hold that needs auto-release
+        if ("hold_wait".equals(response.getStatus())) {
+            HppRequestRecord hppRequest = dao.getHppRequestByOrderId(uow, orderId, tenantId);
+            if (hppRequest != null && hppRequest.isVerification()) {
+                return new Outcome(true, hppRequest);
+            }
+        }
+        return Outcome.APPLIED;
+    }
+
+    private void afterCommit(LiqPayResponse response, Outcome outcome) {
+        if (outcome == Outcome.DUPLICATE) {
+            deduplicator.remember(response);
+            return;
+        }
+        if (!outcome.applied) {
+            return;
+        }
+        deduplicator.remember(response);
+
+        String orderId = orderId(response);
+        if (outcome.verificationHold != null) {
+            releaseVerificationHold(orderId, outcome.verificationHold.getKbTenantId(), outcome.verificationHold);
+        }
+
+        // Note: We don't call notifyPendingTransactionOfStateChanged here because it requires
+        // authentication that external callbacks don't have. Instead, KillBill's Janitor will
+        // call getPaymentInfo() which returns the updated status from our liqpay_responses table.
+        // This is the same pattern used by the Stripe plugin.
+
+        logger.info("Callback processed successfully for order {}, status={}", orderId, response.getStatus());
+    }
+
+    private boolean isCachedDuplicate(LiqPayResponse response) {
+        if (deduplicator.isCached(response)) {
+            logger.info("Skipping duplicate callback for order {}: status={}, payment_id={}",
+                    orderId(response), response.getStatus(), response.getPaymentId());
+            return true;
+        }
+        return false;
+    }
+
+    private static String orderId(LiqPayResponse response) {
+        return response.getOrderId() != null ? response.getOrderId() : response.getLiqpayOrderId();
+    }
+
+    /**
+     * Handles auto-release for verification mode.
+     * If the HPP request was created with verification=true, automatically release the hold
+     * by refunding the held amount after the card token has been captured.
+     * Note: LiqPay does not have an "unhold" action. Hold releases use the refund API.
+     *
+     * The release call is issued on the async client so the callback thread is not held
+     * while LiqPay processes the refund; the HPP status is updated when it completes.
+     */
+    private void releaseVerificationHold(String orderId, UUID tenantId, HppRequestRecord hppRequest) {
+        logger.info("Verification hold completed for order {}, auto-releasing hold via refund", orderId);
+
+        // Release hold by refunding the held amount
+        LiqPayAsyncClient client = configurationHandler.getAsyncClientForTenant(tenantId);
+        client.releaseHold(orderId, hppRequest.getAmount())
+                .whenComplete((releaseResponse, error) -> {
+                    if (error != null) {
+                        LiqPayException e = LiqPayAsyncClient.unwrap(error);
+                        logger.error("Failed to auto-release verification hold for order {}: {}",
+                                orderId, e.getMessage(), e);
+                        // Don't fail the callback - token is already captured
+                        updateHppRequestStatus(orderId, tenantId, "RELEASE_FAILED");
+                        return;
+                    }
+
+                    logger.info("Auto-release completed for order {}: status={}",
+                            orderId, releaseResponse.getStatus());
+
+                    // Update HPP request status to COMPLETED
+                    updateHppRequestStatus(orderId, tenantId, "COMPLETED");
+                });
+    }
+
+    private void updateHppRequestStatus(String orderId, UUID tenantId, String status) {
+        try {
+            dao.updateHppRequestStatus(orderId, tenantId, status);
+        } catch (SQLException e) {
+            logger.error("Failed to update HPP request status", e);
+        }
+    }
+
+    /**
+     * Maps LiqPay action to KillBill transaction type.
+     */
+    private String mapActionToTransactionType(String action) {
+        if (action == null) {
+            return "PURCHASE";
+        }
+        switch (action) {
+            case "hold":
+                return "AUTHORIZE";
+            case "hold_completion":
+                return "CAPTURE";
+            case "refund":
+                return "REFUND";
+            case "unhold":
+                return "VOID";
+            case "pay":
+            case "paytoken":
+            default:
+                return "PURCHASE";
+        }
+    }
+
+    /**
+     * Result of applying a callback inside its unit of work.
+     */
+    private static final class Outcome {
+        private static final Outcome APPLIED = new Outcome(true, null);
+        private static final Outcome DUPLICATE = new Outcome(false, null);
+        private static final Outcome SKIPPED = new Outcome(false, null);
+
+        private final boolean applied;
+        private final HppRequestRecord verificationHold;
+
+        private Outcome(boolean applied, HppRequestRecord verificationHold) {
+            this.applied = applied;
+            this.verificationHold = verificationHold;
+        }
+    }
+}
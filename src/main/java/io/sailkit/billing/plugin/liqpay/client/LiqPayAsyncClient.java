@@ -0,0 +1,332 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking HTTP client for LiqPay API.
+ *
+ * Mirrors the operations of {@link LiqPayClient} but returns {@link CompletableFuture}s
+ * so callers do not park a thread while waiting for LiqPay. The number of requests in
+ * flight is capped; when the cap is reached new requests fail fast with a
+ * {@link LiqPayException} instead of queueing. Calls are logged and guarded by a
+ * {@link LiqPayCircuitBreaker} the same way as those of the blocking client, and
+ * share its breaker when created through the client registry.
+ *
+ * Futures complete exceptionally with a {@link LiqPayException} (possibly wrapped in a
+ * {@link CompletionException}) on transport errors and LiqPay error statuses.
+ */
+public class LiqPayAsyncClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayAsyncClient.class);
+
+    public static final String ERROR_TOO_MANY_REQUESTS = "too_many_requests";
+
+    private final String publicKey;
+    private final LiqPaySigner signer;
+    private final URI apiUri;
+    private final boolean sandbox;
+    private final String serverUrl;
+    private final String language;
+    private final Duration readTimeout;
+    private final int maxInFlight;
+
+    private final HttpClient httpClient;
+    private final Semaphore inFlight;
+
+    private volatile LiqPayRequestListener requestListener = LiqPayRequestListener.NONE;
+    private volatile LiqPayCircuitBreaker circuitBreaker;
+
+    /**
+     * @param httpClient Shared JDK HTTP client (see {@link #createHttpClient(int)})
+     * @param maxInFlight Maximum number of concurrent requests issued by this client
+     */
+    public LiqPayAsyncClient(String publicKey, String privateKey, boolean sandbox,
+                             String serverUrl, String language, int readTimeout,
+                             int maxInFlight, HttpClient httpClient) {
+        this(publicKey, privateKey, sandbox, serverUrl, language, readTimeout, maxInFlight, httpClient,
+                LiqPayClient.API_URL);
+    }
+
+    /**
+     * @param apiUrl LiqPay API request endpoint
+     */
+    public LiqPayAsyncClient(String publicKey, String privateKey, boolean sandbox,
+                             String serverUrl, String language, int readTimeout,
+                             int maxInFlight, HttpClient httpClient, String apiUrl) {
+        this.publicKey = publicKey;
+        this.signer = new LiqPaySigner(privateKey);
+        this.apiUri = URI.create(apiUrl);
+        this.sandbox = sandbox;
+        this.serverUrl = serverUrl;
+        this.language = language;
+        this.readTimeout = Duration.ofMillis(readTimeout);
+        this.maxInFlight = maxInFlight;
+        this.httpClient = httpClient;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Creates a JDK HTTP client suitable for sharing between async LiqPay clients.
+     */
+    public static HttpClient createHttpClient(int connectionTimeout) {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectionTimeout))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * Sends a request to LiqPay API without blocking the calling thread.
+     *
+     * @param request LiqPay request
+     * @return Future completed with the LiqPay response
+     */
+    public CompletableFuture<LiqPayResponse> request(LiqPayRequest request) {
+        Map<String, Object> params = request.getParams();
+        String data;
+        String signature;
+        try {
+            LiqPayClient.applyDefaults(params, publicKey, sandbox, serverUrl, language);
+            data = LiqPaySignature.encodeData(params);
+            signature = signer.sign(data);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        String action = String.valueOf(params.get("action"));
+        Object orderId = params.get("order_id");
+
+        // Full (masked) payloads only for sampled calls, and for failed ones below
+        boolean sampled = LiqPayPayloadLog.sample();
+        if (sampled) {
+            logger.info("LiqPay async API request: action={} order_id={} url={} params={}",
+                    action, orderId, apiUri, LiqPayPayloadLog.params(params));
+        }
+
+        if (!inFlight.tryAcquire()) {
+            logger.warn("LiqPay async API call rejected: action={} order_id={} reason={} max_in_flight={}",
+                    action, orderId, ERROR_TOO_MANY_REQUESTS, maxInFlight);
+            return CompletableFuture.failedFuture(new LiqPayException(ERROR_TOO_MANY_REQUESTS,
+                    "Too many LiqPay requests in flight (limit " + maxInFlight + ")"));
+        }
+        LiqPayCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.tryAcquire()) {
+            inFlight.release();
+            logger.warn("LiqPay async API call rejected: action={} order_id={} reason={}",
+                    action, orderId, LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN);
+            return CompletableFuture.failedFuture(new LiqPayException(LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN,
+                    "LiqPay circuit breaker is open, request not sent"));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<LiqPayResponse> future;
+        try {
+            future = executeRequest(data, signature, sampled);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((response, error) -> {
+            inFlight.release();
+            long duration = System.nanoTime() - start;
+            if (error != null) {
+                LiqPayException failure = unwrap(error);
+                LiqPayResponse failed = failure.getResponse();
+                if (breaker != null) {
+                    // A LiqPay error response is an answer; only calls without one count as failures
+                    breaker.onResult(duration, failed == null);
+                }
+                logger.warn("LiqPay async API call failed: action={} order_id={} status={} err_code={} latency_ms={} error={}",
+                        action, orderId, failed != null ? failed.getStatus() : null, failure.getErrorCode(),
+                        TimeUnit.NANOSECONDS.toMillis(duration), failure.getMessage());
+                if (!sampled && LiqPayPayloadLog.onError()) {
+                    logger.warn("LiqPay async API request: action={} order_id={} url={} params={}",
+                            action, orderId, apiUri, LiqPayPayloadLog.params(params));
+                }
+                requestListener.onRequestCompleted(action, duration, failed, failure);
+            } else {
+                if (breaker != null) {
+                    breaker.onResult(duration, false);
+                }
+                logger.info("LiqPay async API call: action={} order_id={} status={} latency_ms={}",
+                        action, orderId, response.getStatus(), TimeUnit.NANOSECONDS.toMillis(duration));
+                requestListener.onRequestCompleted(action, duration, response, null);
+            }
+        });
+    }
+
+    /**
+     * Executes the HTTP request to LiqPay API.
+     */
+    private CompletableFuture<LiqPayResponse> executeRequest(String data, String signature, boolean logPayload) {
+        String form = "data=" + URLEncoder.encode(data, StandardCharsets.UTF_8) +
+                "&signature=" + URLEncoder.encode(signature, StandardCharsets.UTF_8);
+
+        HttpRequest httpRequest = HttpRequest.newBuilder(apiUri)
+                .timeout(readTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(form, StandardCharsets.UTF_8))
+                .build();
+
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((httpResponse, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        logger.error("Failed to communicate with LiqPay API", cause);
+                        throw new CompletionException(
+                                new LiqPayException("Failed to communicate with LiqPay API", cause));
+                    }
+
+                    if (logPayload) {
+                        logger.info("LiqPay async API response: http_status={} body={}",
+                                httpResponse.statusCode(), LiqPayPayloadLog.json(httpResponse.body()));
+                    }
+
+                    LiqPayResponse liqPayResponse = LiqPayResponse.fromJson(httpResponse.body());
+                    if (liqPayResponse.isError()) {
+                        if (!logPayload && LiqPayPayloadLog.onError()) {
+                            logger.warn("LiqPay async API response: http_status={} body={}",
+                                    httpResponse.statusCode(), LiqPayPayloadLog.json(httpResponse.body()));
+                        }
+                        throw new CompletionException(new LiqPayException(liqPayResponse));
+                    }
+                    return liqPayResponse;
+                });
+    }
+
+    // Convenience methods for common operations
+
+    /**
+     * Performs a token-based payment.
+     */
+    public CompletableFuture<LiqPayResponse> payToken(String orderId, String cardToken, BigDecimal amount,
+                                                      String currency, String description) {
+        return request(LiqPayRequest.payToken(publicKey, orderId, cardToken, amount, currency, description)
+                .isRecurring(true)
+                .build());
+    }
+
+    /**
+     * Performs a token-based hold (pre-authorization).
+     */
+    public CompletableFuture<LiqPayResponse> holdWithToken(String orderId, String cardToken, BigDecimal amount,
+                                                           String currency, String description) {
+        return request(LiqPayRequest.builder()
+                .publicKey(publicKey)
+                .action("hold")
+                .orderId(orderId)
+                .cardToken(cardToken)
+                .amount(amount)
+                .currency(currency)
+                .description(description)
+                .recurringByToken(true)
+                .build());
+    }
+
+    /**
+     * Captures (completes) a held payment.
+     */
+    public CompletableFuture<LiqPayResponse> holdCompletion(String orderId, BigDecimal amount) {
+        return request(LiqPayRequest.holdCompletion(publicKey, orderId, amount).build());
+    }
+
+    /**
+     * Releases a held payment by refunding the held amount.
+     * Note: LiqPay does not have an "unhold" action. Hold releases use the refund API.
+     */
+    public CompletableFuture<LiqPayResponse> releaseHold(String orderId, BigDecimal amount) {
+        return request(LiqPayRequest.releaseHold(publicKey, orderId, amount).build());
+    }
+
+    /**
+     * Performs a refund.
+     */
+    public CompletableFuture<LiqPayResponse> refund(String orderId, BigDecimal amount) {
+        return request(LiqPayRequest.refund(publicKey, orderId, amount).build());
+    }
+
+    /**
+     * Gets the status of a payment.
+     */
+    public CompletableFuture<LiqPayResponse> status(String orderId) {
+        return request(LiqPayRequest.status(publicKey, orderId).build());
+    }
+
+    /**
+     * Unwraps the {@link LiqPayException} carried by a failed future, if any.
+     */
+    public static LiqPayException unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof LiqPayException) {
+            return (LiqPayException) cause;
+        }
+        return new LiqPayException(cause.getMessage(), cause);
+    }
+
+    /**
+     * Sets the listener notified after every API request (metrics).
+     */
+    public void setRequestListener(LiqPayRequestListener requestListener) {
+        this.requestListener = requestListener != null ? requestListener : LiqPayRequestListener.NONE;
+    }
+
+    /**
+     * Sets the circuit breaker guarding calls of this client, or null for none.
+     */
+    public void setCircuitBreaker(LiqPayCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    // Getters
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public LiqPayCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+}
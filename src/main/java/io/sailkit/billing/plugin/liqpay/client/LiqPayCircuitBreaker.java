@@ -0,0 +1,225 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Count-based circuit breaker for the LiqPay API calls of one tenant.
+ *
+ * The outcomes of the last {@code windowSize} calls are kept. Once at least {@code minimumCalls}
+ * were recorded, the breaker opens when the share of failed calls (no usable response: I/O error,
+ * timeout, unparseable body) or of slow calls reaches its threshold. LiqPay business errors
+ * (declines, invalid card, ...) are answers, not failures. While open, calls are rejected without
+ * touching the network. After {@code openDuration} the breaker lets {@code halfOpenCalls} trial
+ * calls through: one failed or slow trial opens it again, all of them succeeding closes it.
+ */
+public class LiqPayCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayCircuitBreaker.class);
+
+    public static final String ERROR_CIRCUIT_OPEN = "circuit_open";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoTime;
+
+    // Guarded by this
+    private final byte[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSucceeded;
+
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LongAdder openings = new LongAdder();
+
+    /**
+     * @param failureRateThreshold Percentage of failed calls in the window that opens the breaker
+     * @param slowCallRateThreshold Percentage of slow calls in the window that opens the breaker
+     * @param slowCallMillis Duration from which a call counts as slow
+     * @param windowSize Number of most recent calls considered
+     * @param minimumCalls Calls needed in the window before rates are evaluated
+     * @param openMillis How long the breaker stays open before allowing trial calls
+     * @param halfOpenCalls Number of trial calls in the half-open state
+     */
+    public LiqPayCircuitBreaker(int failureRateThreshold, int slowCallRateThreshold, long slowCallMillis,
+                                int windowSize, int minimumCalls, long openMillis, int halfOpenCalls) {
+        this(failureRateThreshold, slowCallRateThreshold, slowCallMillis, windowSize, minimumCalls,
+                openMillis, halfOpenCalls, System::nanoTime);
+    }
+
+    LiqPayCircuitBreaker(int failureRateThreshold, int slowCallRateThreshold, long slowCallMillis,
+                         int windowSize, int minimumCalls, long openMillis, int halfOpenCalls,
+                         LongSupplier nanoTime) {
+        if (windowSize < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("windowSize and halfOpenCalls must be positive");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoTime = nanoTime;
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * Asks for permission to make a call. Every permitted call must be followed by {@link #onResult}.
+     *
+     * @return false if the call must be rejected
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoTime.getAsLong() - openedAt < openNanos) {
+                rejectedCalls.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSucceeded = 0;
+            logger.info("LiqPay circuit breaker half-open, allowing {} trial calls", halfOpenCalls);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejectedCalls.increment();
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param durationNanos Call duration
+     * @param failed True if no usable response was received
+     */
+    public synchronized void onResult(long durationNanos, boolean failed) {
+        byte outcome = failed ? FAILED : durationNanos >= slowCallNanos ? SLOW : OK;
+
+        if (state == State.HALF_OPEN) {
+            if (outcome != OK) {
+                open("trial call " + (failed ? "failed" : "was slow"));
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Result of a call started before the breaker opened
+            return;
+        }
+
+        if (recorded == window.length) {
+            remove(window[next]);
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if (outcome == FAILED) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+
+        if (recorded >= minimumCalls) {
+            if (failures * 100 >= failureRateThreshold * recorded) {
+                open("failure rate " + rate(failures) + "% of the last " + recorded + " calls");
+            } else if (slowCalls * 100 >= slowCallRateThreshold * recorded) {
+                open("slow call rate " + rate(slowCalls) + "% of the last " + recorded + " calls");
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+            // Reported as half-open once the next call would be let through
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getFailureRate() {
+        return rate(failures);
+    }
+
+    public synchronized int getSlowCallRate() {
+        return rate(slowCalls);
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    public long getOpenings() {
+        return openings.sum();
+    }
+
+    private void open(String reason) {
+        logger.warn("LiqPay circuit breaker opened ({}), rejecting calls for {} ms",
+                reason, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+        openings.increment();
+    }
+
+    private void close() {
+        logger.info("LiqPay circuit breaker closed after {} successful trial calls", halfOpenSucceeded);
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void remove(byte outcome) {
+        if (outcome == FAILED) {
+            failures--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    private int rate(int count) {
+        return recorded == 0 ? 0 : count * 100 / recorded;
+    }
+}
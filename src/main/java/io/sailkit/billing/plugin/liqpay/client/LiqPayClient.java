@@ -22,6 +22,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
@@ -46,9 +49,11 @@ public class LiqPayClient {
 
     public static final String API_URL = "https://www.liqpay.ua/api/request";
     public static final String CHECKOUT_URL = "https://www.liqpay.ua/api/3/checkout";
+    public static final String ERROR_TOO_MANY_REQUESTS = "too_many_requests";
 
     private final String publicKey;
-    private final String privateKey;
+    private final LiqPaySigner signer;
+    private final String apiUrl;
     private final boolean sandbox;
     private final String serverUrl;
     private final String language;
@@ -57,26 +62,53 @@ public class LiqPayClient {
 
     private final CloseableHttpClient httpClient;
 
+    private volatile LiqPayRequestListener requestListener = LiqPayRequestListener.NONE;
+    private volatile LiqPayCircuitBreaker circuitBreaker;
+    private volatile Bulkhead bulkhead;
+
     public LiqPayClient(String publicKey, String privateKey, boolean sandbox,
                         String serverUrl, String language,
                         int connectionTimeout, int readTimeout) {
+        this(publicKey, privateKey, sandbox, serverUrl, language, connectionTimeout, readTimeout,
+                HttpClients.custom()
+                        .setDefaultRequestConfig(RequestConfig.custom()
+                                .setConnectTimeout(connectionTimeout)
+                                .setSocketTimeout(readTimeout)
+                                .setConnectionRequestTimeout(connectionTimeout)
+                                .build())
+                        .build());
+    }
+
+    /**
+     * Creates a client on top of an existing HTTP client, typically one backed by
+     * the shared {@link LiqPayConnectionPool}.
+     */
+    public LiqPayClient(String publicKey, String privateKey, boolean sandbox,
+                        String serverUrl, String language,
+                        int connectionTimeout, int readTimeout,
+                        CloseableHttpClient httpClient) {
+        this(publicKey, privateKey, sandbox, serverUrl, language, connectionTimeout, readTimeout,
+                httpClient, API_URL);
+    }
+
+    /**
+     * Creates a client that sends requests to a custom API endpoint (e.g. a local stand-in server).
+     *
+     * @param apiUrl LiqPay API request endpoint
+     */
+    public LiqPayClient(String publicKey, String privateKey, boolean sandbox,
+                        String serverUrl, String language,
+                        int connectionTimeout, int readTimeout,
+                        CloseableHttpClient httpClient, String apiUrl) {
         this.publicKey = publicKey;
-        this.privateKey = privateKey;
+        this.signer = new LiqPaySigner(privateKey);
+        this.apiUrl = apiUrl;
         this.sandbox = sandbox;
         this.serverUrl = serverUrl;
         this.language = language;
         this.connectionTimeout = connectionTimeout;
         this.readTimeout = readTimeout;
-
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(connectionTimeout)
-                .setSocketTimeout(readTimeout)
-                .setConnectionRequestTimeout(connectionTimeout)
-                .build();
-
-        this.httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .build();
+        this.httpClient = httpClient;
     }
 
     /**
@@ -88,8 +120,95 @@ public class LiqPayClient {
      */
     public LiqPayResponse request(LiqPayRequest request) throws LiqPayException {
         Map<String, Object> params = request.getParams();
+        applyDefaults(params, publicKey, sandbox, serverUrl, language);
+
+        String data = LiqPaySignature.encodeData(params);
+        String signature = signer.sign(data);
+
+        String action = String.valueOf(params.get("action"));
+        Object orderId = params.get("order_id");
+
+        // Full (masked) payloads only for sampled calls, and for failed ones below
+        boolean sampled = LiqPayPayloadLog.sample();
+        if (sampled) {
+            logger.info("LiqPay API request: action={} order_id={} url={} params={}",
+                    action, orderId, apiUrl, LiqPayPayloadLog.params(params));
+        }
+
+        // Fail fast instead of tying up the caller while LiqPay is unhealthy or overloaded
+        Bulkhead bulkhead = this.bulkhead;
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            logger.warn("LiqPay API call rejected: action={} order_id={} reason={} max_in_flight={}",
+                    action, orderId, ERROR_TOO_MANY_REQUESTS, bulkhead.maxInFlight);
+            throw new LiqPayException(ERROR_TOO_MANY_REQUESTS,
+                    "Too many LiqPay requests in flight (limit " + bulkhead.maxInFlight + ")");
+        }
+        LiqPayCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.tryAcquire()) {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            logger.warn("LiqPay API call rejected: action={} order_id={} reason={}",
+                    action, orderId, LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN);
+            throw new LiqPayException(LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN,
+                    "LiqPay circuit breaker is open, request not sent");
+        }
+
+        long start = System.nanoTime();
+        try {
+            LiqPayResponse response = executeRequest(data, signature, sampled);
+            long duration = System.nanoTime() - start;
+            if (breaker != null) {
+                breaker.onResult(duration, false);
+            }
+            logger.info("LiqPay API call: action={} order_id={} status={} latency_ms={}",
+                    action, orderId, response.getStatus(), TimeUnit.NANOSECONDS.toMillis(duration));
+            requestListener.onRequestCompleted(action, duration, response, null);
+            return response;
+        } catch (LiqPayException e) {
+            long duration = System.nanoTime() - start;
+            LiqPayResponse response = e.getResponse();
+            if (breaker != null) {
+                // A LiqPay error response is an answer; only calls without one count as failures
+                breaker.onResult(duration, response == null);
+            }
+            logger.warn("LiqPay API call failed: action={} order_id={} status={} err_code={} latency_ms={} error={}",
+                    action, orderId, response != null ? response.getStatus() : null, e.getErrorCode(),
+                    TimeUnit.NANOSECONDS.toMillis(duration), e.getMessage());
+            if (!sampled && LiqPayPayloadLog.onError()) {
+                logger.warn("LiqPay API request: action={} order_id={} url={} params={}",
+                        action, orderId, apiUrl, LiqPayPayloadLog.params(params));
+            }
+            requestListener.onRequestCompleted(action, duration, response, e);
+            throw e;
+        } catch (RuntimeException e) {
+            long duration = System.nanoTime() - start;
+            if (breaker != null) {
+                breaker.onResult(duration, true);
+            }
+            requestListener.onRequestCompleted(action, duration, null, e);
+            throw e;
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
 
-        // Add default parameters
+    /**
+     * Returns true if the exception is a call rejected by the circuit breaker or the bulkhead,
+     * i.e. the request was never sent to LiqPay.
+     */
+    public static boolean isRejected(LiqPayException e) {
+        return LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN.equals(e.getErrorCode())
+                || ERROR_TOO_MANY_REQUESTS.equals(e.getErrorCode());
+    }
+
+    /**
+     * Adds the per-client default parameters to a request.
+     */
+    static void applyDefaults(Map<String, Object> params, String publicKey, boolean sandbox,
+                              String serverUrl, String language) {
         params.putIfAbsent("public_key", publicKey);
         if (sandbox) {
             params.put("sandbox", 1);
@@ -101,25 +220,13 @@ public class LiqPayClient {
         if (language != null && !language.isEmpty()) {
             params.putIfAbsent("language", language);
         }
-
-        // Log the full request payload for debugging (helpful for LiqPay support)
-        logger.info("LiqPay API Request - Action: {}, Order: {}, Full params: {}",
-                params.get("action"), params.get("order_id"), params);
-
-        String data = LiqPaySignature.encodeData(params);
-        String signature = LiqPaySignature.createSignature(privateKey, data);
-
-        logger.info("LiqPay API Request - URL: {}, data (base64): {}, signature: {}",
-                API_URL, data, signature);
-
-        return executeRequest(data, signature);
     }
 
     /**
      * Executes the HTTP request to LiqPay API.
      */
-    private LiqPayResponse executeRequest(String data, String signature) throws LiqPayException {
-        HttpPost httpPost = new HttpPost(API_URL);
+    private LiqPayResponse executeRequest(String data, String signature, boolean logPayload) throws LiqPayException {
+        HttpPost httpPost = new HttpPost(apiUrl);
 
         List<NameValuePair> formParams = new ArrayList<>();
         formParams.add(new BasicNameValuePair("data", data));
@@ -128,20 +235,23 @@ public class LiqPayClient {
         try {
             httpPost.setEntity(new UrlEncodedFormEntity(formParams, StandardCharsets.UTF_8));
 
-            logger.info("Sending HTTP POST to LiqPay API: {}", API_URL);
-
             try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
                 int statusCode = response.getStatusLine().getStatusCode();
                 HttpEntity entity = response.getEntity();
                 String responseBody = EntityUtils.toString(entity, StandardCharsets.UTF_8);
 
-                logger.info("LiqPay API Response - HTTP Status: {}, Body: {}", statusCode, responseBody);
+                if (logPayload) {
+                    logger.info("LiqPay API response: http_status={} body={}",
+                            statusCode, LiqPayPayloadLog.json(responseBody));
+                }
 
                 LiqPayResponse liqPayResponse = LiqPayResponse.fromJson(responseBody);
 
                 if (liqPayResponse.isError()) {
-                    logger.error("LiqPay API Error - Status: {}, ErrCode: {}, ErrDescription: {}",
-                            liqPayResponse.getStatus(), liqPayResponse.getErrCode(), liqPayResponse.getErrDescription());
+                    if (!logPayload && LiqPayPayloadLog.onError()) {
+                        logger.warn("LiqPay API response: http_status={} body={}",
+                                statusCode, LiqPayPayloadLog.json(responseBody));
+                    }
                     throw new LiqPayException(liqPayResponse);
                 }
 
@@ -280,7 +390,7 @@ public class LiqPayClient {
 
         LiqPayRequest request = builder.build();
         String data = LiqPaySignature.encodeData(request.getParams());
-        String signature = LiqPaySignature.createSignature(privateKey, data);
+        String signature = signer.sign(data);
 
         return Map.of(
                 "data", data,
@@ -310,7 +420,7 @@ public class LiqPayClient {
         params.putIfAbsent("recurringbytoken", "1");
 
         String data = LiqPaySignature.encodeData(params);
-        String signature = LiqPaySignature.createSignature(privateKey, data);
+        String signature = signer.sign(data);
 
         return Map.of(
                 "data", data,
@@ -322,15 +432,14 @@ public class LiqPayClient {
      * Verifies a callback signature.
      */
     public boolean verifyCallbackSignature(String data, String signature) {
-        return LiqPaySignature.verifySignature(privateKey, data, signature);
+        return signer.verify(data, signature);
     }
 
     /**
      * Parses callback data.
      */
     public LiqPayResponse parseCallback(String data) {
-        Map<String, Object> decodedData = LiqPaySignature.decodeData(data);
-        return LiqPayResponse.fromMap(decodedData);
+        return LiqPayResponse.fromData(data);
     }
 
     /**
@@ -344,6 +453,31 @@ public class LiqPayClient {
         }
     }
 
+    /**
+     * Sets the listener notified after every API request (metrics).
+     */
+    public void setRequestListener(LiqPayRequestListener requestListener) {
+        this.requestListener = requestListener != null ? requestListener : LiqPayRequestListener.NONE;
+    }
+
+    /**
+     * Sets the circuit breaker guarding this client's API calls (null to disable).
+     */
+    public void setCircuitBreaker(LiqPayCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Caps the API calls in flight through this client. A call waits at most {@code maxWaitMillis}
+     * for a free slot and is then rejected with {@link #ERROR_TOO_MANY_REQUESTS}.
+     *
+     * @param maxInFlight Maximum concurrent calls, 0 or less to disable
+     * @param maxWaitMillis Maximum time to wait for a free slot
+     */
+    public void setBulkhead(int maxInFlight, long maxWaitMillis) {
+        this.bulkhead = maxInFlight > 0 ? new Bulkhead(maxInFlight, maxWaitMillis) : null;
+    }
+
     // Getters
 
     public String getPublicKey() {
@@ -362,7 +496,65 @@ public class LiqPayClient {
         return language;
     }
 
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public LiqPaySigner getSigner() {
+        return signer;
+    }
+
     public static String getCheckoutUrl() {
         return CHECKOUT_URL;
     }
+
+    public LiqPayCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getMaxInFlight() {
+        Bulkhead current = bulkhead;
+        return current != null ? current.maxInFlight : 0;
+    }
+
+    public int getInFlight() {
+        Bulkhead current = bulkhead;
+        return current != null ? current.maxInFlight - current.permits.availablePermits() : 0;
+    }
+
+    public long getBulkheadRejections() {
+        Bulkhead current = bulkhead;
+        return current != null ? current.rejected.sum() : 0;
+    }
+
+    private static final class Bulkhead {
+        private final int maxInFlight;
+        private final long maxWaitMillis;
+        private final Semaphore permits;
+        private final LongAdder rejected = new LongAdder();
+
+        private Bulkhead(int maxInFlight, long maxWaitMillis) {
+            this.maxInFlight = maxInFlight;
+            this.maxWaitMillis = maxWaitMillis;
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        private boolean tryAcquire() {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire() || permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejected.increment();
+            }
+            return acquired;
+        }
+
+        private void release() {
+            permits.release();
+        }
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared HTTP connection pool for LiqPay API clients.
+ *
+ * All tenants talk to the same LiqPay host, so a single pooling connection manager
+ * lets clients reuse TLS connections instead of paying for a handshake on every call.
+ * Clients created here share the manager and do not close it when they are closed.
+ *
+ * A background monitor closes connections that have been idle for longer than the
+ * keep-alive, so sockets the LiqPay side has already dropped are not kept in the pool.
+ */
+public class LiqPayConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayConnectionPool.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final ScheduledExecutorService idleConnectionMonitor;
+
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder leaseWaitNanos = new LongAdder();
+    private final LongAdder leaseTimeouts = new LongAdder();
+
+    /**
+     * @param maxTotal Maximum number of open connections across all routes
+     * @param maxPerRoute Maximum number of open connections per route (LiqPay host)
+     * @param keepAliveMillis Keep-alive used when the server does not send a Keep-Alive header
+     */
+    public LiqPayConnectionPool(int maxTotal, int maxPerRoute, long keepAliveMillis) {
+        // No time to live: a busy connection stays open, idle ones expire through the keep-alive strategy
+        this.connectionManager = new PoolingHttpClientConnectionManager() {
+            @Override
+            public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+                return new TimedConnectionRequest(super.requestConnection(route, state));
+            }
+        };
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        this.connectionManager.setValidateAfterInactivity(2000);
+
+        this.keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        long monitorIntervalMillis = Math.max(100L, keepAliveMillis / 2);
+        this.idleConnectionMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "liqpay-idle-connection-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.idleConnectionMonitor.scheduleWithFixedDelay(() -> evictIdleConnections(keepAliveMillis),
+                monitorIntervalMillis, monitorIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("LiqPay connection pool created: maxTotal={}, maxPerRoute={}, keepAlive={}ms",
+                maxTotal, maxPerRoute, keepAliveMillis);
+    }
+
+    /**
+     * Creates an HTTP client backed by the shared connection manager.
+     *
+     * @param connectionTimeout Connect and pool lease timeout in milliseconds
+     * @param readTimeout Socket read timeout in milliseconds
+     * @return HTTP client that leaves the shared manager open when closed
+     */
+    public CloseableHttpClient createHttpClient(int connectionTimeout, int readTimeout) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectionTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectionTimeout)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * Closes idle and expired connections. Called periodically by the idle connection monitor.
+     */
+    public void evictIdleConnections(long idleMillis) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the current pool statistics (leased, pending, available, max).
+     */
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Number of connections leased from the pool.
+     */
+    public long getLeases() {
+        return leases.sum();
+    }
+
+    /**
+     * Total time callers waited for a pooled connection, including lease timeouts.
+     */
+    public long getLeaseWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(leaseWaitNanos.sum());
+    }
+
+    /**
+     * Number of lease attempts that timed out because the pool was exhausted.
+     */
+    public long getLeaseTimeouts() {
+        return leaseTimeouts.sum();
+    }
+
+    /**
+     * Shuts down the connection manager and closes all pooled connections.
+     */
+    public void close() {
+        idleConnectionMonitor.shutdownNow();
+        connectionManager.shutdown();
+        logger.info("LiqPay connection pool closed");
+    }
+
+    /**
+     * Records how long the caller waits for the pool to hand out a connection.
+     */
+    private final class TimedConnectionRequest implements ConnectionRequest {
+        private final ConnectionRequest delegate;
+
+        private TimedConnectionRequest(ConnectionRequest delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+            long start = System.nanoTime();
+            try {
+                HttpClientConnection connection = delegate.get(timeout, unit);
+                leases.increment();
+                return connection;
+            } catch (ConnectionPoolTimeoutException e) {
+                leaseTimeouts.increment();
+                throw e;
+            } finally {
+                leaseWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            return delegate.cancel();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * Shared JSON configuration for LiqPay payloads.
+ *
+ * One mapper is configured once, with Afterburner registered, and only the immutable,
+ * thread-safe readers and writers derived from it are handed out. Their root (de)serializers
+ * are resolved up front, so parsing a response or writing a request map does no type lookup.
+ */
+public final class LiqPayJson {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .addModule(new AfterburnerModule())
+            // LiqPay adds response fields without notice
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(MapperFeature.DEFAULT_VIEW_INCLUSION)
+            // Streams are owned and closed by the caller
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private static final ObjectReader RESPONSE_READER = MAPPER.readerFor(LiqPayResponse.class);
+    private static final ObjectReader MAP_READER = MAPPER.readerFor(MAP_TYPE);
+    private static final ObjectWriter MAP_WRITER = MAPPER.writerFor(MAP_TYPE);
+
+    private LiqPayJson() {
+        // Utility class
+    }
+
+    /**
+     * Reader for {@link LiqPayResponse} (API responses and callback data).
+     */
+    public static ObjectReader responseReader() {
+        return RESPONSE_READER;
+    }
+
+    /**
+     * Reader for untyped JSON objects.
+     */
+    public static ObjectReader mapReader() {
+        return MAP_READER;
+    }
+
+    /**
+     * Writer for request parameter maps and other JSON objects.
+     */
+    public static ObjectWriter mapWriter() {
+        return MAP_WRITER;
+    }
+
+    /**
+     * Serializes a map to a JSON string.
+     */
+    public static String toJson(Map<String, ?> map) {
+        try {
+            return MAP_WRITER.writeValueAsString(map);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode parameters to JSON", e);
+        }
+    }
+
+    static Set<Object> registeredModuleIds() {
+        return MAPPER.getRegisteredModuleIds();
+    }
+
+    /**
+     * Binds an already decoded map to a response.
+     */
+    static LiqPayResponse convert(Map<String, Object> map) {
+        return MAPPER.convertValue(map, LiqPayResponse.class);
+    }
+}
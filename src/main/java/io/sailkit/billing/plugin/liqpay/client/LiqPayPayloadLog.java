@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when full LiqPay payloads are logged and renders them masked.
+ *
+ * Every API call and callback gets a one-line summary (action, order_id, status, latency). Full
+ * payloads are only logged for a sampled fraction of calls ({@code payloadLogSampleRate}) and,
+ * if {@code payloadLogOnError} is set, for failed ones. The views returned by {@link #params},
+ * {@link #json} and {@link #data} do their decoding and masking in {@code toString()}, so they
+ * cost nothing unless the logger actually formats them.
+ */
+public final class LiqPayPayloadLog {
+
+    private static final String MASK = "****";
+
+    // Card data, tokens and personal data LiqPay sends back or accepts
+    private static final Set<String> MASKED_FIELDS = new HashSet<>(Arrays.asList(
+            "card", "card_token", "card_cvv", "card_exp_month", "card_exp_year", "card_token_rec",
+            "sender_card_mask2", "sender_first_name", "sender_last_name", "sender_phone", "phone",
+            "email", "ip", "customer", "signature", "private_key"));
+
+    private static volatile double sampleRate = 0.0;
+    private static volatile boolean logOnError = true;
+
+    private LiqPayPayloadLog() {
+    }
+
+    /**
+     * @param payloadSampleRate Fraction of calls whose payloads are logged, 0 (never) to 1 (always)
+     * @param payloadOnError Log payloads of failed calls regardless of sampling
+     */
+    public static void configure(double payloadSampleRate, boolean payloadOnError) {
+        sampleRate = Math.max(0.0, Math.min(1.0, payloadSampleRate));
+        logOnError = payloadOnError;
+    }
+
+    /**
+     * Returns true if the payloads of the current call should be logged.
+     */
+    public static boolean sample() {
+        double rate = sampleRate;
+        return rate > 0.0 && (rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Returns true if the payloads of a failed call should be logged.
+     */
+    public static boolean onError() {
+        return logOnError;
+    }
+
+    /**
+     * Masked view of request parameters.
+     */
+    public static Object params(Map<String, ?> params) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return mask(params).toString();
+            }
+        };
+    }
+
+    /**
+     * Masked view of a JSON response body. Bodies that are not a JSON object are shown truncated.
+     */
+    public static Object json(String json) {
+        return new Object() {
+            @Override
+            public String toString() {
+                try {
+                    return mask(LiqPayJson.mapReader().readValue(json)).toString();
+                } catch (Exception e) {
+                    return truncate(json);
+                }
+            }
+        };
+    }
+
+    /**
+     * Masked view of a Base64 {@code data} parameter (request form or callback).
+     */
+    public static Object data(String data) {
+        return new Object() {
+            @Override
+            public String toString() {
+                try {
+                    return mask(LiqPayJson.mapReader().readValue(LiqPaySignature.decodeToJson(data))).toString();
+                } catch (Exception e) {
+                    return truncate(data);
+                }
+            }
+        };
+    }
+
+    /**
+     * Masks a single value, keeping the last four characters of long ones.
+     */
+    public static String maskValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString();
+        return text.length() > 8 ? MASK + text.substring(text.length() - 4) : MASK;
+    }
+
+    static Map<String, Object> mask(Map<String, ?> values) {
+        Map<String, Object> masked = new LinkedHashMap<>();
+        if (values == null) {
+            return masked;
+        }
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            masked.put(entry.getKey(), MASKED_FIELDS.contains(entry.getKey())
+                    ? maskValue(entry.getValue()) : entry.getValue());
+        }
+        return masked;
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > 200 ? value.substring(0, 200) + "...(" + value.length() + " chars)" : value;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+/**
+ * Observes completed LiqPay API requests, e.g. to record latency and status metrics.
+ *
+ * Called on the thread that completed the request; implementations must be fast and must not throw.
+ */
+@FunctionalInterface
+public interface LiqPayRequestListener {
+
+    LiqPayRequestListener NONE = (action, durationNanos, response, error) -> { };
+
+    /**
+     * @param action LiqPay action of the request (pay, hold, refund, ...)
+     * @param durationNanos Time from sending the request to having the parsed response (or the failure)
+     * @param response Parsed LiqPay response, or null if none could be read
+     * @param error Exception returned to the caller, or null on success
+     */
+    void onRequestCompleted(String action, long durationNanos, LiqPayResponse response, Throwable error);
+}
@@ -16,12 +16,14 @@
 
 package io.sailkit.billing.plugin.liqpay.client;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * LiqPay API response model.
@@ -30,8 +32,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class LiqPayResponse {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-
     // Result
     private String result;
 
@@ -214,17 +214,38 @@ public class LiqPayResponse {
     // Raw response map for any unmapped fields
     private Map<String, Object> rawResponse;
 
+    // Decoded callback JSON; the raw JSON string and the raw response map are built from it on demand
+    private byte[] rawJson;
+
     // Static factory method
     public static LiqPayResponse fromJson(String json) {
         try {
-            return OBJECT_MAPPER.readValue(json, LiqPayResponse.class);
+            return LiqPayJson.responseReader().readValue(json);
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse LiqPay response", e);
         }
     }
 
+    /**
+     * Parses base64-encoded callback data. The base64 is decoded once and the response is parsed
+     * from the decoded bytes without an intermediate JSON string or map; {@link #getRawJson()} and
+     * {@link #getRawResponse()} are built from the same bytes only when called.
+     *
+     * @param data Base64-encoded JSON, as sent in the callback's {@code data} parameter
+     */
+    public static LiqPayResponse fromData(String data) {
+        try {
+            byte[] json = Base64.getDecoder().decode(data);
+            LiqPayResponse response = LiqPayJson.responseReader().readValue(json);
+            response.rawJson = json;
+            return response;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse LiqPay callback data", e);
+        }
+    }
+
     public static LiqPayResponse fromMap(Map<String, Object> map) {
-        LiqPayResponse response = OBJECT_MAPPER.convertValue(map, LiqPayResponse.class);
+        LiqPayResponse response = LiqPayJson.convert(map);
         response.rawResponse = map;
         return response;
     }
@@ -253,6 +274,13 @@ public class LiqPayResponse {
     }
 
     public boolean isError() {
+        return isErrorStatus(status);
+    }
+
+    /**
+     * Checks whether a LiqPay status is an error, for statuses read back without a response.
+     */
+    public static boolean isErrorStatus(String status) {
         return "error".equals(status) || "failure".equals(status);
     }
 
@@ -491,9 +519,23 @@ public class LiqPayResponse {
     }
 
     public Map<String, Object> getRawResponse() {
+        if (rawResponse == null && rawJson != null) {
+            try {
+                rawResponse = LiqPayJson.mapReader().readValue(rawJson);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to parse LiqPay callback data", e);
+            }
+        }
         return rawResponse;
     }
 
+    /**
+     * Returns the decoded JSON of a response parsed by {@link #fromData(String)}, or null.
+     */
+    public String getRawJson() {
+        return rawJson != null ? new String(rawJson, StandardCharsets.UTF_8) : null;
+    }
+
     public BigDecimal getCommissionDebit() {
         return commissionDebit;
     }
@@ -722,6 +764,7 @@ public class LiqPayResponse {
 
     public void setRawResponse(Map<String, Object> rawResponse) {
         this.rawResponse = rawResponse;
+        this.rawJson = null;
     }
 
     public void setCommissionDebit(BigDecimal commissionDebit) {
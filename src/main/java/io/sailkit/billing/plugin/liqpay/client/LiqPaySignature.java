@@ -17,15 +17,9 @@
 package io.sailkit.billing.plugin.liqpay.client;
 
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * LiqPay signature generation and verification utility.
  *
@@ -36,8 +30,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class LiqPaySignature {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-
     private LiqPaySignature() {
         // Utility class
     }
@@ -50,22 +42,7 @@ public class LiqPaySignature {
      * @return Base64-encoded SHA1 signature
      */
     public static String createSignature(String privateKey, String data) {
-        if (privateKey == null || privateKey.isEmpty()) {
-            throw new IllegalArgumentException("Private key cannot be null or empty");
-        }
-        if (data == null || data.isEmpty()) {
-            throw new IllegalArgumentException("Data cannot be null or empty");
-        }
-
-        String signString = privateKey + data + privateKey;
-
-        try {
-            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-            byte[] hash = sha1.digest(signString.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-1 algorithm not available", e);
-        }
+        return new LiqPaySigner(privateKey).sign(data);
     }
 
     /**
@@ -77,12 +54,7 @@ public class LiqPaySignature {
      * @return true if signature is valid
      */
     public static boolean verifySignature(String privateKey, String data, String signature) {
-        if (signature == null || signature.isEmpty()) {
-            return false;
-        }
-
-        String expectedSignature = createSignature(privateKey, data);
-        return expectedSignature.equals(signature);
+        return new LiqPaySigner(privateKey).verify(data, signature);
     }
 
     /**
@@ -92,12 +64,8 @@ public class LiqPaySignature {
      * @return Base64-encoded JSON string
      */
     public static String encodeData(Map<String, Object> params) {
-        try {
-            String json = OBJECT_MAPPER.writeValueAsString(params);
-            return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to encode parameters to JSON", e);
-        }
+        String json = LiqPayJson.toJson(params);
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -108,9 +76,7 @@ public class LiqPaySignature {
      */
     public static Map<String, Object> decodeData(String data) {
         try {
-            byte[] decoded = Base64.getDecoder().decode(data);
-            String json = new String(decoded, StandardCharsets.UTF_8);
-            return OBJECT_MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {});
+            return LiqPayJson.mapReader().readValue(Base64.getDecoder().decode(data));
         } catch (Exception e) {
             throw new RuntimeException("Failed to decode data", e);
         }
@@ -125,9 +91,7 @@ public class LiqPaySignature {
      */
     public static <T> T decodeData(String data, Class<T> clazz) {
         try {
-            byte[] decoded = Base64.getDecoder().decode(data);
-            String json = new String(decoded, StandardCharsets.UTF_8);
-            return OBJECT_MAPPER.readValue(json, clazz);
+            return LiqPayJson.responseReader().forType(clazz).readValue(Base64.getDecoder().decode(data));
         } catch (Exception e) {
             throw new RuntimeException("Failed to decode data to " + clazz.getName(), e);
         }
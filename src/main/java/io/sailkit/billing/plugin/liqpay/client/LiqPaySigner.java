@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Computes and verifies LiqPay signatures for one private key.
+ *
+ * Produces the same value as {@link LiqPaySignature#createSignature(String, String)}, but the key
+ * is encoded once, the SHA-1 digest and the input buffer are reused per thread, and
+ * {@code key + data + key} is assembled directly as bytes instead of as a concatenated string.
+ * Callback signatures are compared in constant time.
+ *
+ * Instances are immutable and thread-safe; one is kept per tenant client.
+ */
+public final class LiqPaySigner {
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final byte[] keyBytes;
+
+    /**
+     * @param privateKey LiqPay private key
+     */
+    public LiqPaySigner(String privateKey) {
+        if (privateKey == null || privateKey.isEmpty()) {
+            throw new IllegalArgumentException("Private key cannot be null or empty");
+        }
+        this.keyBytes = privateKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the signature for base64-encoded request data.
+     *
+     * @param data Base64-encoded JSON data
+     * @return Base64-encoded SHA1 signature
+     */
+    public String sign(String data) {
+        return Base64.getEncoder().encodeToString(digest(data));
+    }
+
+    /**
+     * Verifies a callback signature in constant time.
+     *
+     * @param data Base64-encoded JSON data from callback
+     * @param signature Signature from callback
+     * @return true if signature is valid
+     */
+    public boolean verify(String data, String signature) {
+        if (signature == null || signature.isEmpty()) {
+            return false;
+        }
+        byte[] received;
+        try {
+            received = Base64.getDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(digest(data), received);
+    }
+
+    private byte[] digest(String data) {
+        if (data == null || data.isEmpty()) {
+            throw new IllegalArgumentException("Data cannot be null or empty");
+        }
+
+        Scratch scratch = SCRATCH.get();
+        MessageDigest sha1 = scratch.sha1;
+        int keyLength = keyBytes.length;
+        int dataLength = data.length();
+        int length = dataLength + 2 * keyLength;
+
+        // key + data + key in one contiguous buffer, hashed with a single update
+        byte[] buffer = scratch.buffer(length);
+        System.arraycopy(keyBytes, 0, buffer, 0, keyLength);
+        int high = 0;
+        for (int i = 0; i < dataLength; i++) {
+            char c = data.charAt(i);
+            high |= c;
+            buffer[keyLength + i] = (byte) c;
+        }
+        if (high >= 0x80) {
+            // Not base64 - hash the UTF-8 bytes like the reference implementation
+            sha1.update(keyBytes);
+            sha1.update(data.getBytes(StandardCharsets.UTF_8));
+            sha1.update(keyBytes);
+            return sha1.digest();
+        }
+        System.arraycopy(keyBytes, 0, buffer, keyLength + dataLength, keyLength);
+        sha1.update(buffer, 0, length);
+        return sha1.digest();
+    }
+
+    /**
+     * Per-thread SHA-1 digest and input buffer.
+     */
+    private static final class Scratch {
+        private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+        private final MessageDigest sha1;
+        private byte[] buffer = new byte[4096];
+
+        private Scratch() {
+            try {
+                this.sha1 = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-1 algorithm not available", e);
+            }
+        }
+
+        /**
+         * Returns a buffer of at least the given length. Oversized requests get a one-off array.
+         */
+        private byte[] buffer(int length) {
+            if (length <= buffer.length) {
+                return buffer;
+            }
+            if (length > MAX_RETAINED_BUFFER) {
+                return new byte[length];
+            }
+            buffer = new byte[Math.max(length, Math.min(MAX_RETAINED_BUFFER, buffer.length * 2))];
+            return buffer;
+        }
+    }
+}
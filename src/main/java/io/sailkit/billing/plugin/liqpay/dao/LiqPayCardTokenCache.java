@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.clock.Clock;
+
+/**
+ * Read-through cache for card tokens, keyed by (tenant, payment method).
+ *
+ * Entries expire {@code ttlMillis} after they were loaded and the least recently used entry is
+ * evicted beyond {@code maxSize}. Only found tokens are cached: a payment method without one
+ * is usually about to get one from a hosted-flow callback.
+ *
+ * The DAO invalidates an entry whenever it writes the payment method's token. A lookup that read
+ * the database before such an invalidation must not store its stale result afterwards, so loaders
+ * take a {@link #generation()} before reading and {@link #put} drops the result if any
+ * invalidation happened since.
+ */
+public class LiqPayCardTokenCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize Maximum number of cached payment methods
+     * @param ttlMillis Time an entry stays valid after it was loaded
+     */
+    public LiqPayCardTokenCache(int maxSize, long ttlMillis, Clock clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > LiqPayCardTokenCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached card token, or null if it is missing or expired.
+     */
+    String get(UUID kbPaymentMethodId, UUID kbTenantId) {
+        Key key = new Key(kbPaymentMethodId, kbTenantId);
+        long now = now();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.increment();
+                return entry.cardToken;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the current invalidation generation, to be passed to {@link #put}.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a card token loaded at {@code loadGeneration}. Null tokens are not cached, and
+     * neither is a token loaded before the latest invalidation.
+     */
+    void put(UUID kbPaymentMethodId, UUID kbTenantId, String cardToken, long loadGeneration) {
+        if (cardToken == null) {
+            return;
+        }
+        Entry entry = new Entry(cardToken, now() + ttlMillis);
+        synchronized (entries) {
+            if (generation.get() == loadGeneration) {
+                entries.put(new Key(kbPaymentMethodId, kbTenantId), entry);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached token of a payment method.
+     */
+    public void invalidate(UUID kbPaymentMethodId, UUID kbTenantId) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.remove(new Key(kbPaymentMethodId, kbTenantId));
+        }
+    }
+
+    /**
+     * Drops all cached tokens of a tenant.
+     */
+    public void invalidateTenant(UUID kbTenantId) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.keySet().removeIf(key -> key.kbTenantId.equals(kbTenantId));
+        }
+    }
+
+    // Metrics
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long now() {
+        return clock.getUTCNow().getMillis();
+    }
+
+    private static final class Entry {
+        private final String cardToken;
+        private final long expiresAt;
+
+        private Entry(String cardToken, long expiresAt) {
+            this.cardToken = cardToken;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key {
+        private final UUID kbPaymentMethodId;
+        private final UUID kbTenantId;
+
+        private Key(UUID kbPaymentMethodId, UUID kbTenantId) {
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.kbTenantId = kbTenantId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kbPaymentMethodId.equals(other.kbPaymentMethodId) && kbTenantId.equals(other.kbTenantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kbPaymentMethodId, kbTenantId);
+        }
+    }
+}
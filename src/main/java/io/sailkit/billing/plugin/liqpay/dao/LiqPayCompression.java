@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed encoding of JSON payloads.
+ *
+ * The binary form ({@link #compressToBytes}) is a format version byte followed by the payload
+ * compressed with that format, for binary columns (liqpay_responses_archive). The text form
+ * ({@link #compress}) is {@value #PREFIX} followed by the Base64 of the binary form, for TEXT
+ * columns (raw_response, additional_data). Stored text values without the prefix are plain
+ * payloads, so compressed and uncompressed rows can be mixed and {@link #decompress} accepts both.
+ */
+public final class LiqPayCompression {
+
+    /** Marks an encoded value. Plain payloads are JSON and never start with it. */
+    static final String PREFIX = "~z";
+
+    /** Raw Deflate (no zlib header) primed with {@link #DICTIONARY}. */
+    static final byte FORMAT_DEFLATE = 1;
+
+    /**
+     * Preset dictionary for {@link #FORMAT_DEFLATE}: the keys and common values of
+     * LiqPay callbacks, API responses and HPP additional_data, so even a single small payload
+     * compresses well. Deflate references nearer bytes more cheaply, so the most frequent
+     * strings come last. Stored data depends on it: never change it, add a new format instead.
+     */
+    private static final byte[] DICTIONARY = (
+            "LiqPayResponse{result='ok', status='', action='', orderId='', paymentId=, amount=, currency='', " +
+            "errCode='null', errDescription='null'}" +
+            "\"err_code\":\"\",\"err_description\":\"\",\"code\":\"\",\"result\":\"error\",\"result\":\"ok\"," +
+            "\"recurringbytoken\":\"1\",\"sandbox\":1,\"result_url\":\"https://\",\"server_url\":\"https://\"," +
+            "\"kb_payment_id\":\"\",\"kb_transaction_id\":\"\",\"signature\":\"\",{\"data\":\"eyJ" +
+            "\"status\":\"failure\",\"status\":\"reversed\",\"status\":\"hold_wait\",\"action\":\"hold\"," +
+            "\"wait_amount\":false,\"is_3ds\":false,\"mpi_eci\":\"7\",\"language\":\"uk\",\"language\":\"en\"," +
+            "\"create_date\":,\"end_date\":,\"transaction_id\":,\"card_token\":\"\"," +
+            "\"sender_commission\":0.0,\"receiver_commission\":,\"agent_commission\":0.0," +
+            "\"amount_debit\":,\"amount_credit\":,\"commission_debit\":0.0,\"commission_credit\":," +
+            "\"currency_debit\":\"UAH\",\"currency_credit\":\"UAH\",\"sender_bonus\":0.0,\"amount_bonus\":0.0," +
+            "\"sender_phone\":\"380\",\"sender_first_name\":\"\",\"sender_last_name\":\"\"," +
+            "\"sender_card_mask2\":\"\",\"sender_card_bank\":\"\",\"sender_card_type\":\"visa\"," +
+            "\"sender_card_type\":\"mc\",\"sender_card_country\":804,\"ip\":\"\"," +
+            "\"order_id\":\"\",\"liqpay_order_id\":\"\",\"description\":\"\",\"amount\":,\"currency\":\"UAH\"," +
+            "{\"payment_id\":,\"action\":\"pay\",\"status\":\"success\",\"version\":3,\"type\":\"buy\"," +
+            "\"paytype\":\"card\",\"public_key\":\"\",\"acq_id\":"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private LiqPayCompression() {
+    }
+
+    /**
+     * Encodes a payload for a TEXT column. Already encoded values are returned unchanged.
+     */
+    public static String compress(String value) {
+        if (value == null || isCompressed(value)) {
+            return value;
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(deflate(value));
+    }
+
+    /**
+     * Encodes a payload for a binary column. Values already encoded by {@link #compress} are
+     * converted without being compressed again.
+     *
+     * @throws IOException if an already encoded value is not valid Base64
+     */
+    public static byte[] compressToBytes(String value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        return isCompressed(value) ? decodeBase64(value) : deflate(value);
+    }
+
+    /**
+     * Decodes a stored TEXT value. Plain values are returned unchanged.
+     *
+     * @throws IOException if the value is corrupt or uses an unknown format version
+     */
+    public static String decompress(String value) throws IOException {
+        if (value == null || !isCompressed(value)) {
+            return value;
+        }
+        return inflate(decodeBase64(value));
+    }
+
+    /**
+     * Decodes a value encoded by {@link #compressToBytes}.
+     *
+     * @throws IOException if the value is corrupt or uses an unknown format version
+     */
+    public static String decompressBytes(byte[] value) throws IOException {
+        return value != null ? inflate(value) : null;
+    }
+
+    /**
+     * Checks whether a stored value is encoded by {@link #compress}.
+     */
+    public static boolean isCompressed(String value) {
+        return value != null && value.startsWith(PREFIX);
+    }
+
+    private static byte[] deflate(String value) {
+        byte[] input = value.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(input.length / 4 + 16);
+            bytes.write(FORMAT_DEFLATE);
+            byte[] buffer = new byte[Math.max(64, Math.min(input.length, 8192))];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                bytes.write(buffer, 0, length);
+            }
+            return bytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] encoded) throws IOException {
+        if (encoded.length == 0 || encoded[0] != FORMAT_DEFLATE) {
+            throw new IOException("Unknown compressed payload format " + (encoded.length > 0 ? encoded[0] : -1));
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            // Raw Deflate streams don't ask for their dictionary, it is set upfront
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(encoded, 1, encoded.length - 1);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed payload");
+                }
+                bytes.write(buffer, 0, length);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] decodeBase64(String value) throws IOException {
+        try {
+            return Base64.getDecoder().decode(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 in compressed payload", e);
+        }
+    }
+}
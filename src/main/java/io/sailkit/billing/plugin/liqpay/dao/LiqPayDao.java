@@ -16,6 +16,7 @@
 
 package io.sailkit.billing.plugin.liqpay.dao;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -23,15 +24,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
 
+import org.killbill.clock.Clock;
+import org.killbill.clock.DefaultClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.model.CallbackInboxRecord;
 import io.sailkit.billing.plugin.liqpay.dao.model.HppRequestRecord;
 import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayPaymentMethodRecord;
 import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
@@ -44,10 +50,177 @@ public class LiqPayDao {
 
     private static final Logger logger = LoggerFactory.getLogger(LiqPayDao.class);
 
+    static final String INSERT_RESPONSE_SQL = "INSERT INTO liqpay_responses " +
+            "(kb_account_id, kb_payment_id, kb_transaction_id, kb_payment_method_id, kb_tenant_id, " +
+            "liqpay_order_id, liqpay_payment_id, liqpay_transaction_id, transaction_type, action, status, " +
+            "amount, currency, err_code, err_description, raw_response, api_call_date, created_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String RESPONSE_SUMMARY_COLUMNS = "record_id, kb_payment_id, kb_transaction_id, kb_tenant_id, " +
+            "liqpay_order_id, liqpay_payment_id, transaction_type, action, status, amount, currency, " +
+            "err_code, err_description, api_call_date, created_date";
+
+    // Full response rows, with raw_response restored from liqpay_responses_archive once archived
+    private static final String SELECT_RESPONSE = "SELECT r.*, a.compressed_raw_response FROM liqpay_responses r " +
+            "LEFT JOIN liqpay_responses_archive a ON a.response_record_id = r.record_id ";
+
+    // An entry is only eligible while no earlier entry of its order is still NEW or PROCESSING,
+    // so every node drains an order strictly in arrival order
+    private static final String INBOX_HEAD_CONDITION = "i.status = 'NEW' " +
+            "AND (i.next_attempt_date IS NULL OR i.next_attempt_date <= ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM liqpay_callback_inbox e WHERE e.order_id = i.order_id " +
+            "AND e.status IN ('NEW', 'PROCESSING') AND e.record_id < i.record_id)";
+
+    private static final String STALE_CLAIM_ERROR = "Processing claim went stale";
+
+    private static final int SEARCH_FETCH_SIZE = 100;
+    private static final int SEARCH_COUNT_CAP = 10000;
+    private static final int CARD_LAST4_LENGTH = 4;
+    // Shorter payloads barely shrink once Base64-encoded
+    private static final int MIN_COMPRESSED_PAYLOAD_LENGTH = 256;
+
     private final DataSource dataSource;
+    private final Clock clock;
+
+    private volatile LiqPayResponseWriter responseWriter;
+    private volatile LiqPayCardTokenCache cardTokenCache;
+    private volatile boolean compressPayloads;
 
     public LiqPayDao(DataSource dataSource) {
+        this(dataSource, new DefaultClock());
+    }
+
+    /**
+     * @param clock Clock the created and updated dates of pending transactions, HPP requests and
+     *              responses are taken from, so age cutoffs computed from the same clock compare
+     *              like with like
+     */
+    public LiqPayDao(DataSource dataSource, Clock clock) {
         this.dataSource = dataSource;
+        this.clock = clock;
+    }
+
+    /**
+     * Routes {@link #saveResponse} through a batching writer (null to write each row directly).
+     */
+    public void setResponseWriter(LiqPayResponseWriter responseWriter) {
+        this.responseWriter = responseWriter;
+    }
+
+    /**
+     * Serves {@link #getCardToken} from a cache (null to always read the database).
+     */
+    public void setCardTokenCache(LiqPayCardTokenCache cardTokenCache) {
+        this.cardTokenCache = cardTokenCache;
+    }
+
+    /**
+     * Stores raw_response and HPP additional_data compressed (see {@link LiqPayCompression}).
+     * Reads accept both forms regardless of this setting.
+     */
+    public void setCompressPayloads(boolean compressPayloads) {
+        this.compressPayloads = compressPayloads;
+    }
+
+    // Unit of Work
+
+    /**
+     * Runs several DAO operations on one connection in one transaction.
+     * Commits when the work returns, rolls back if it throws or marks the unit rollback-only.
+     * Statements are prepared once per unit of work and reused.
+     */
+    public <T> T inTransaction(Work<T> work) throws SQLException {
+        try (UnitOfWork uow = new UnitOfWork(dataSource.getConnection())) {
+            uow.connection.setAutoCommit(false);
+            try {
+                T result = work.run(uow);
+                if (uow.rollbackOnly) {
+                    uow.connection.rollback();
+                } else {
+                    uow.connection.commit();
+                }
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                uow.connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private <T> T withConnection(Work<T> work) throws SQLException {
+        try (UnitOfWork uow = new UnitOfWork(dataSource.getConnection())) {
+            return work.run(uow);
+        }
+    }
+
+    /**
+     * Work executed by {@link #inTransaction(Work)}.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(UnitOfWork uow) throws SQLException;
+    }
+
+    /**
+     * A connection shared by several DAO operations, with a per-unit statement cache.
+     */
+    public static final class UnitOfWork implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private final List<Runnable> afterCompletion = new ArrayList<>();
+        private boolean rollbackOnly;
+
+        private UnitOfWork(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        /**
+         * Discards the transaction's changes when the work returns.
+         */
+        public void setRollbackOnly() {
+            this.rollbackOnly = true;
+        }
+
+        public boolean isRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        /**
+         * Runs an action once the unit's transaction has ended and its connection is released.
+         */
+        void afterCompletion(Runnable action) {
+            afterCompletion.add(action);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                try {
+                    connection.close();
+                } finally {
+                    for (Runnable action : afterCompletion) {
+                        action.run();
+                    }
+                }
+            }
+        }
     }
 
     // Payment Method Operations
@@ -58,8 +231,8 @@ public class LiqPayDao {
     public void insertPaymentMethod(LiqPayPaymentMethodRecord record) throws SQLException {
         String sql = "INSERT INTO liqpay_payment_methods " +
                 "(kb_account_id, kb_payment_method_id, kb_tenant_id, liqpay_card_token, " +
-                "card_mask, card_type, card_bank, card_country, is_default, is_deleted, additional_data) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "card_mask, card_last4, card_type, card_bank, card_country, is_default, is_deleted, additional_data) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -69,14 +242,16 @@ public class LiqPayDao {
             stmt.setString(3, record.getKbTenantId().toString());
             stmt.setString(4, record.getLiqpayCardToken());
             stmt.setString(5, record.getCardMask());
-            stmt.setString(6, record.getCardType());
-            stmt.setString(7, record.getCardBank());
-            stmt.setString(8, record.getCardCountry());
-            stmt.setBoolean(9, record.getIsDefault() != null && record.getIsDefault());
-            stmt.setBoolean(10, record.getIsDeleted() != null && record.getIsDeleted());
-            stmt.setString(11, record.getAdditionalData());
+            stmt.setString(6, cardLast4(record.getCardMask()));
+            stmt.setString(7, record.getCardType());
+            stmt.setString(8, record.getCardBank());
+            stmt.setString(9, record.getCardCountry());
+            stmt.setBoolean(10, record.getIsDefault() != null && record.getIsDefault());
+            stmt.setBoolean(11, record.getIsDeleted() != null && record.getIsDeleted());
+            stmt.setString(12, record.getAdditionalData());
 
             stmt.executeUpdate();
+            invalidateCardToken(record.getKbPaymentMethodId(), record.getKbTenantId());
             logger.debug("Inserted payment method record for KB payment method {}", record.getKbPaymentMethodId());
         }
     }
@@ -85,19 +260,23 @@ public class LiqPayDao {
      * Gets a payment method record by KillBill payment method ID.
      */
     public LiqPayPaymentMethodRecord getPaymentMethod(UUID kbPaymentMethodId, UUID kbTenantId) throws SQLException {
+        return withConnection(uow -> getPaymentMethod(uow, kbPaymentMethodId, kbTenantId));
+    }
+
+    /**
+     * Gets a payment method record by KillBill payment method ID within a unit of work.
+     */
+    public LiqPayPaymentMethodRecord getPaymentMethod(UnitOfWork uow, UUID kbPaymentMethodId, UUID kbTenantId) throws SQLException {
         String sql = "SELECT * FROM liqpay_payment_methods " +
                 "WHERE kb_payment_method_id = ? AND kb_tenant_id = ? AND is_deleted = FALSE";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, kbPaymentMethodId.toString());
-            stmt.setString(2, kbTenantId.toString());
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, kbPaymentMethodId.toString());
+        stmt.setString(2, kbTenantId.toString());
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapPaymentMethodRecord(rs);
-                }
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return mapPaymentMethodRecord(rs);
             }
         }
         return null;
@@ -128,31 +307,80 @@ public class LiqPayDao {
         return records;
     }
 
+    /**
+     * Searches a tenant's active payment methods by card mask suffix (up to 4 digits), exact bank,
+     * exact card type or KillBill account ID.
+     *
+     * Pages are keyed by record_id, see {@link #searchResponses}. The returned pagination streams
+     * from an open cursor and must be closed.
+     */
+    public LiqPayResultSetPagination<LiqPayPaymentMethodRecord> searchPaymentMethods(UUID kbTenantId, String searchKey,
+                                                                                     long afterRecordId, int limit) throws SQLException {
+        boolean last4 = isNumeric(searchKey) && searchKey.length() <= CARD_LAST4_LENGTH;
+        boolean uuid = isUuid(searchKey);
+        String match;
+        if (uuid) {
+            match = "kb_account_id = ?";
+        } else if (last4) {
+            match = searchKey.length() == CARD_LAST4_LENGTH ? "card_last4 = ?" : "card_last4 LIKE ?";
+        } else {
+            match = "card_bank = ? OR card_type = ?";
+        }
+        SearchBranch branch = new SearchBranch("kb_tenant_id = ? AND is_deleted = FALSE AND (" + match + ")",
+                (stmt, index) -> {
+                    stmt.setString(index++, kbTenantId.toString());
+                    if (uuid) {
+                        stmt.setString(index++, searchKey.toLowerCase());
+                    } else if (last4) {
+                        stmt.setString(index++, searchKey.length() == CARD_LAST4_LENGTH ? searchKey : "%" + searchKey);
+                    } else {
+                        stmt.setString(index++, searchKey);
+                        stmt.setString(index++, searchKey);
+                    }
+                    return index;
+                });
+
+        return search("liqpay_payment_methods", "*", List.of(branch), this::mapPaymentMethodRecord,
+                afterRecordId, limit);
+    }
+
     /**
      * Updates the card token for a payment method.
      */
     public void updatePaymentMethodToken(UUID kbPaymentMethodId, UUID kbTenantId,
                                          String cardToken, String cardMask, String cardType,
                                          String cardBank, String cardCountry) throws SQLException {
+        withConnection(uow -> {
+            updatePaymentMethodToken(uow, kbPaymentMethodId, kbTenantId, cardToken, cardMask, cardType,
+                    cardBank, cardCountry);
+            return null;
+        });
+    }
+
+    /**
+     * Updates the card token for a payment method within a unit of work.
+     */
+    public void updatePaymentMethodToken(UnitOfWork uow, UUID kbPaymentMethodId, UUID kbTenantId,
+                                         String cardToken, String cardMask, String cardType,
+                                         String cardBank, String cardCountry) throws SQLException {
         String sql = "UPDATE liqpay_payment_methods SET " +
-                "liqpay_card_token = ?, card_mask = ?, card_type = ?, card_bank = ?, card_country = ?, " +
+                "liqpay_card_token = ?, card_mask = ?, card_last4 = ?, card_type = ?, card_bank = ?, card_country = ?, " +
                 "updated_date = CURRENT_TIMESTAMP " +
                 "WHERE kb_payment_method_id = ? AND kb_tenant_id = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, cardToken);
-            stmt.setString(2, cardMask);
-            stmt.setString(3, cardType);
-            stmt.setString(4, cardBank);
-            stmt.setString(5, cardCountry);
-            stmt.setString(6, kbPaymentMethodId.toString());
-            stmt.setString(7, kbTenantId.toString());
-
-            stmt.executeUpdate();
-            logger.debug("Updated token for payment method {}", kbPaymentMethodId);
-        }
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, cardToken);
+        stmt.setString(2, cardMask);
+        stmt.setString(3, cardLast4(cardMask));
+        stmt.setString(4, cardType);
+        stmt.setString(5, cardBank);
+        stmt.setString(6, cardCountry);
+        stmt.setString(7, kbPaymentMethodId.toString());
+        stmt.setString(8, kbTenantId.toString());
+
+        stmt.executeUpdate();
+        uow.afterCompletion(() -> invalidateCardToken(kbPaymentMethodId, kbTenantId));
+        logger.debug("Updated token for payment method {}", kbPaymentMethodId);
     }
 
     /**
@@ -170,6 +398,7 @@ public class LiqPayDao {
             stmt.setString(2, kbTenantId.toString());
 
             stmt.executeUpdate();
+            invalidateCardToken(kbPaymentMethodId, kbTenantId);
             logger.debug("Soft deleted payment method {}", kbPaymentMethodId);
         }
     }
@@ -213,60 +442,136 @@ public class LiqPayDao {
      * Gets the card token for a payment method.
      */
     public String getCardToken(UUID kbPaymentMethodId, UUID kbTenantId) throws SQLException {
-        LiqPayPaymentMethodRecord record = getPaymentMethod(kbPaymentMethodId, kbTenantId);
-        return record != null ? record.getLiqpayCardToken() : null;
+        return withConnection(uow -> getCardToken(uow, kbPaymentMethodId, kbTenantId));
+    }
+
+    /**
+     * Gets the card token for a payment method from the card token cache, without touching the
+     * database. Returns null if there is no cache or the token is not cached.
+     */
+    public String getCachedCardToken(UUID kbPaymentMethodId, UUID kbTenantId) {
+        LiqPayCardTokenCache cache = this.cardTokenCache;
+        return cache != null ? cache.get(kbPaymentMethodId, kbTenantId) : null;
+    }
+
+    /**
+     * Gets the card token for a payment method within a unit of work.
+     * Served from the card token cache when one is set.
+     */
+    public String getCardToken(UnitOfWork uow, UUID kbPaymentMethodId, UUID kbTenantId) throws SQLException {
+        LiqPayCardTokenCache cache = this.cardTokenCache;
+        long generation = 0L;
+        if (cache != null) {
+            String cached = cache.get(kbPaymentMethodId, kbTenantId);
+            if (cached != null) {
+                return cached;
+            }
+            generation = cache.generation();
+        }
+
+        String sql = "SELECT liqpay_card_token FROM liqpay_payment_methods " +
+                "WHERE kb_payment_method_id = ? AND kb_tenant_id = ? AND is_deleted = FALSE";
+
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, kbPaymentMethodId.toString());
+        stmt.setString(2, kbTenantId.toString());
+
+        String cardToken = null;
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                cardToken = rs.getString("liqpay_card_token");
+            }
+        }
+        if (cache != null) {
+            cache.put(kbPaymentMethodId, kbTenantId, cardToken, generation);
+        }
+        return cardToken;
+    }
+
+    private void invalidateCardToken(UUID kbPaymentMethodId, UUID kbTenantId) {
+        LiqPayCardTokenCache cache = this.cardTokenCache;
+        if (cache != null) {
+            cache.invalidate(kbPaymentMethodId, kbTenantId);
+        }
     }
 
     // Response Operations
 
     /**
      * Saves a LiqPay API response.
+     * When a {@link LiqPayResponseWriter} is set, the row is group-committed with other
+     * concurrent writes; the call still returns only after the row is committed.
      */
     public void saveResponse(UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
                              UUID kbPaymentMethodId, UUID kbTenantId,
                              String transactionType, LiqPayResponse response, String rawJson) throws SQLException {
-        String sql = "INSERT INTO liqpay_responses " +
-                "(kb_account_id, kb_payment_id, kb_transaction_id, kb_payment_method_id, kb_tenant_id, " +
-                "liqpay_order_id, liqpay_payment_id, liqpay_transaction_id, transaction_type, action, status, " +
-                "amount, currency, err_code, err_description, raw_response, api_call_date) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+        LiqPayResponseWriter writer = responseWriter;
+        if (writer != null) {
+            writer.write(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, kbTenantId,
+                    transactionType, response, storedPayload(rawJson), now());
+            return;
+        }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        withConnection(uow -> {
+            saveResponse(uow, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, kbTenantId,
+                    transactionType, response, rawJson);
+            return null;
+        });
+    }
+
+    /**
+     * Saves a LiqPay API response within a unit of work. The row is written on the unit's
+     * connection (not through the batching writer) so it commits together with the other operations.
+     */
+    public void saveResponse(UnitOfWork uow, UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
+                             UUID kbPaymentMethodId, UUID kbTenantId,
+                             String transactionType, LiqPayResponse response, String rawJson) throws SQLException {
+        PreparedStatement stmt = uow.prepare(INSERT_RESPONSE_SQL);
+        bindResponse(stmt, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, kbTenantId,
+                transactionType, response, storedPayload(rawJson), now());
 
-            stmt.setString(1, kbAccountId != null ? kbAccountId.toString() : null);
-            stmt.setString(2, kbPaymentId != null ? kbPaymentId.toString() : null);
-            stmt.setString(3, kbTransactionId != null ? kbTransactionId.toString() : null);
-            stmt.setString(4, kbPaymentMethodId != null ? kbPaymentMethodId.toString() : null);
-            stmt.setString(5, kbTenantId.toString());
-            // Use orderId from response, or fallback to KB transaction ID if not available
-            String orderId = response.getOrderId() != null ? response.getOrderId() :
-                    (response.getLiqpayOrderId() != null ? response.getLiqpayOrderId() :
-                    (kbTransactionId != null ? kbTransactionId.toString() : "unknown"));
-            stmt.setString(6, orderId);
-            stmt.setString(7, response.getPaymentId() != null ? response.getPaymentId().toString() : null);
-            stmt.setString(8, response.getTransactionId() != null ? response.getTransactionId().toString() : null);
-            stmt.setString(9, transactionType);
-            stmt.setString(10, response.getAction());
-            stmt.setString(11, response.getStatus());
-            stmt.setBigDecimal(12, response.getAmount());
-            stmt.setString(13, response.getCurrency());
-            stmt.setString(14, response.getErrCode());
-            stmt.setString(15, response.getErrDescription());
-            stmt.setString(16, rawJson);
+        stmt.executeUpdate();
+        logger.debug("Saved LiqPay response for transaction {}", kbTransactionId);
+    }
 
-            stmt.executeUpdate();
-            logger.debug("Saved LiqPay response for transaction {}", kbTransactionId);
-        }
+    /**
+     * Binds a liqpay_responses row to {@link #INSERT_RESPONSE_SQL}.
+     */
+    static void bindResponse(PreparedStatement stmt, UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
+                             UUID kbPaymentMethodId, UUID kbTenantId,
+                             String transactionType, LiqPayResponse response, String rawJson,
+                             Timestamp createdDate) throws SQLException {
+        stmt.setString(1, kbAccountId != null ? kbAccountId.toString() : null);
+        stmt.setString(2, kbPaymentId != null ? kbPaymentId.toString() : null);
+        stmt.setString(3, kbTransactionId != null ? kbTransactionId.toString() : null);
+        stmt.setString(4, kbPaymentMethodId != null ? kbPaymentMethodId.toString() : null);
+        stmt.setString(5, kbTenantId.toString());
+        // Use orderId from response, or fallback to KB transaction ID if not available
+        String orderId = response.getOrderId() != null ? response.getOrderId() :
+                (response.getLiqpayOrderId() != null ? response.getLiqpayOrderId() :
+                (kbTransactionId != null ? kbTransactionId.toString() : "unknown"));
+        stmt.setString(6, orderId);
+        stmt.setString(7, response.getPaymentId() != null ? response.getPaymentId().toString() : null);
+        stmt.setString(8, response.getTransactionId() != null ? response.getTransactionId().toString() : null);
+        stmt.setString(9, transactionType);
+        stmt.setString(10, response.getAction());
+        stmt.setString(11, response.getStatus());
+        stmt.setBigDecimal(12, response.getAmount());
+        stmt.setString(13, response.getCurrency());
+        stmt.setString(14, response.getErrCode());
+        stmt.setString(15, response.getErrDescription());
+        stmt.setString(16, rawJson);
+        stmt.setTimestamp(17, createdDate);
+        stmt.setTimestamp(18, createdDate);
     }
 
     /**
      * Gets the latest response for a transaction.
      */
     public LiqPayResponseRecord getLatestResponse(UUID kbTransactionId, UUID kbTenantId) throws SQLException {
-        String sql = "SELECT * FROM liqpay_responses " +
-                "WHERE kb_transaction_id = ? AND kb_tenant_id = ? " +
-                "ORDER BY created_date DESC LIMIT 1";
+        String sql = SELECT_RESPONSE +
+                "WHERE r.kb_transaction_id = ? AND r.kb_tenant_id = ? " +
+                "ORDER BY r.created_date DESC LIMIT 1";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -287,7 +592,32 @@ public class LiqPayDao {
      * Gets all responses for a payment.
      */
     public List<LiqPayResponseRecord> getResponsesForPayment(UUID kbPaymentId, UUID kbTenantId) throws SQLException {
-        String sql = "SELECT * FROM liqpay_responses " +
+        String sql = SELECT_RESPONSE +
+                "WHERE r.kb_payment_id = ? AND r.kb_tenant_id = ? " +
+                "ORDER BY r.created_date ASC";
+
+        List<LiqPayResponseRecord> records = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, kbPaymentId.toString());
+            stmt.setString(2, kbTenantId.toString());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapResponseRecord(rs));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Gets the responses for a payment without their raw_response, oldest first.
+     */
+    public List<LiqPayResponseRecord> getResponseSummariesForPayment(UUID kbPaymentId, UUID kbTenantId) throws SQLException {
+        String sql = "SELECT " + RESPONSE_SUMMARY_COLUMNS + " FROM liqpay_responses " +
                 "WHERE kb_payment_id = ? AND kb_tenant_id = ? " +
                 "ORDER BY created_date ASC";
 
@@ -301,20 +631,169 @@ public class LiqPayDao {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    records.add(mapResponseRecord(rs));
+                    records.add(mapResponseSummary(rs));
                 }
             }
         }
         return records;
     }
 
+    /**
+     * Searches a tenant's responses by LiqPay order ID prefix, exact LiqPay payment ID or exact
+     * KillBill payment ID, without raw_response.
+     *
+     * Each kind of key is its own query on its own index, merged by record_id, so the search never
+     * falls back to filtering the whole table. On PostgreSQL with a non-C collation the order ID
+     * prefix needs the varchar_pattern_ops index from ddl.sql.
+     *
+     * Pages are keyed by record_id: {@code afterRecordId} is the last record_id of the previous
+     * page (0 for the first one). Results stream from an open cursor, so the returned pagination
+     * must be closed.
+     */
+    public LiqPayResultSetPagination<LiqPayResponseRecord> searchResponses(UUID kbTenantId, String searchKey,
+                                                                           long afterRecordId, int limit) throws SQLException {
+        List<SearchBranch> branches = new ArrayList<>();
+        branches.add(new SearchBranch("kb_tenant_id = ? AND liqpay_order_id LIKE ? ESCAPE '!'",
+                (stmt, index) -> {
+                    stmt.setString(index++, kbTenantId.toString());
+                    stmt.setString(index++, escapeLike(searchKey) + "%");
+                    return index;
+                }));
+        if (isNumeric(searchKey)) {
+            branches.add(new SearchBranch("kb_tenant_id = ? AND liqpay_payment_id = ?",
+                    (stmt, index) -> {
+                        stmt.setString(index++, kbTenantId.toString());
+                        stmt.setString(index++, searchKey);
+                        return index;
+                    }));
+        }
+        if (isUuid(searchKey)) {
+            branches.add(new SearchBranch("kb_payment_id = ? AND kb_tenant_id = ?",
+                    (stmt, index) -> {
+                        stmt.setString(index++, searchKey.toLowerCase());
+                        stmt.setString(index++, kbTenantId.toString());
+                        return index;
+                    }));
+        }
+
+        return search("liqpay_responses", RESPONSE_SUMMARY_COLUMNS, branches, this::mapResponseSummary,
+                afterRecordId, limit);
+    }
+
+    /**
+     * Runs a keyset-paginated search over a table's record_id and returns it as a streaming pagination.
+     * Each branch pages its own matches, and the page is the union of their record_ids, so every
+     * branch can use its own index. The next offset and total are separate queries run on their own
+     * connection when first asked for.
+     */
+    private <T> LiqPayResultSetPagination<T> search(String table, String columns, List<SearchBranch> branches,
+                                                    LiqPayResultSetPagination.RowMapper<T> mapper,
+                                                    long afterRecordId, int limit) throws SQLException {
+        String pageIds = union(table, branches, " AND record_id > ? ORDER BY record_id LIMIT ?");
+        // Joined as a derived table: MySQL rejects LIMIT in an IN (...) subquery
+        String pageSql = "SELECT " + columns + " FROM " + table + " " +
+                "JOIN " + pageIds + " page ON page.match_id = record_id ORDER BY record_id LIMIT ?";
+        String nextOffsetSql = "SELECT COUNT(*), MAX(match_id) FROM (SELECT match_id FROM " + pageIds + " " +
+                "matches ORDER BY match_id LIMIT ?) page";
+        String countSql = "SELECT COUNT(*) FROM " + union(table, branches, " LIMIT " + SEARCH_COUNT_CAP) + " matches";
+        ParameterBinder bindPage = (stmt, index) -> {
+            for (SearchBranch branch : branches) {
+                index = branch.binder.bind(stmt, index);
+                stmt.setLong(index++, afterRecordId);
+                stmt.setInt(index++, limit);
+            }
+            stmt.setInt(index++, limit);
+            return index;
+        };
+
+        Connection conn = dataSource.getConnection();
+        try {
+            // Auto-commit off so the driver can stream with the fetch size
+            conn.setAutoCommit(false);
+            PreparedStatement stmt = conn.prepareStatement(pageSql);
+            stmt.setFetchSize(Math.min(limit, SEARCH_FETCH_SIZE));
+            bindPage.bind(stmt, 1);
+            ResultSet rs = stmt.executeQuery();
+
+            return new LiqPayResultSetPagination<>(conn, stmt, rs, mapper, afterRecordId,
+                    () -> {
+                        try (Connection lookupConn = dataSource.getConnection();
+                             PreparedStatement lookup = lookupConn.prepareStatement(nextOffsetSql)) {
+                            bindPage.bind(lookup, 1);
+                            try (ResultSet page = lookup.executeQuery()) {
+                                page.next();
+                                return page.getInt(1) < limit ? null : page.getLong(2);
+                            }
+                        }
+                    },
+                    () -> {
+                        try (Connection lookupConn = dataSource.getConnection();
+                             PreparedStatement lookup = lookupConn.prepareStatement(countSql)) {
+                            int index = 1;
+                            for (SearchBranch branch : branches) {
+                                index = branch.binder.bind(lookup, index);
+                            }
+                            try (ResultSet count = lookup.executeQuery()) {
+                                count.next();
+                                // Each branch is capped, so their union can still exceed the cap
+                                return Math.min(count.getLong(1), SEARCH_COUNT_CAP);
+                            }
+                        }
+                    });
+        } catch (SQLException | RuntimeException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the UNION of the branches' record_ids as {@code match_id}, each branch ending with {@code tail}.
+     */
+    private static String union(String table, List<SearchBranch> branches, String tail) {
+        StringBuilder sql = new StringBuilder("(");
+        for (SearchBranch branch : branches) {
+            if (sql.length() > 1) {
+                sql.append(" UNION ");
+            }
+            sql.append("(SELECT record_id AS match_id FROM ").append(table).append(" WHERE ").append(branch.filter)
+                    .append(tail).append(")");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * Gets the raw_response of each response for a payment, keyed by record ID.
+     * Archived raw responses are read back from liqpay_responses_archive.
+     */
+    public Map<Long, String> getRawResponsesForPayment(UUID kbPaymentId, UUID kbTenantId) throws SQLException {
+        String sql = "SELECT r.record_id, r.raw_response, a.compressed_raw_response FROM liqpay_responses r " +
+                "LEFT JOIN liqpay_responses_archive a ON a.response_record_id = r.record_id " +
+                "WHERE r.kb_payment_id = ? AND r.kb_tenant_id = ?";
+
+        Map<Long, String> rawResponses = new HashMap<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, kbPaymentId.toString());
+            stmt.setString(2, kbTenantId.toString());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rawResponses.put(rs.getLong("record_id"), rawResponse(rs));
+                }
+            }
+        }
+        return rawResponses;
+    }
+
     /**
      * Gets a response by LiqPay order ID.
      */
     public LiqPayResponseRecord getResponseByOrderId(String orderId, UUID kbTenantId) throws SQLException {
-        String sql = "SELECT * FROM liqpay_responses " +
-                "WHERE liqpay_order_id = ? AND kb_tenant_id = ? " +
-                "ORDER BY created_date DESC LIMIT 1";
+        String sql = SELECT_RESPONSE +
+                "WHERE r.liqpay_order_id = ? AND r.kb_tenant_id = ? " +
+                "ORDER BY r.created_date DESC LIMIT 1";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -331,6 +810,54 @@ public class LiqPayDao {
         return null;
     }
 
+    /**
+     * Gets the authorization hold of a payment (first AUTHORIZE response in hold_wait status).
+     * Only the order ID, amount and currency are loaded.
+     */
+    public LiqPayResponseRecord getOriginalHold(UUID kbPaymentId, UUID kbTenantId) throws SQLException {
+        String sql = "SELECT liqpay_order_id, transaction_type, status, amount, currency FROM liqpay_responses " +
+                "WHERE kb_payment_id = ? AND kb_tenant_id = ? " +
+                "AND transaction_type = 'AUTHORIZE' AND status = 'hold_wait' " +
+                "ORDER BY created_date ASC, record_id ASC LIMIT 1";
+        return getResponseSummary(sql, kbPaymentId, kbTenantId);
+    }
+
+    /**
+     * Gets the completed charge of a payment (first successful PURCHASE or CAPTURE response).
+     * Only the order ID, amount and currency are loaded.
+     */
+    public LiqPayResponseRecord getRefundableCharge(UUID kbPaymentId, UUID kbTenantId) throws SQLException {
+        String sql = "SELECT liqpay_order_id, transaction_type, status, amount, currency FROM liqpay_responses " +
+                "WHERE kb_payment_id = ? AND kb_tenant_id = ? " +
+                "AND transaction_type IN ('PURCHASE', 'CAPTURE') AND status = 'success' " +
+                "ORDER BY created_date ASC, record_id ASC LIMIT 1";
+        return getResponseSummary(sql, kbPaymentId, kbTenantId);
+    }
+
+    private LiqPayResponseRecord getResponseSummary(String sql, UUID kbPaymentId, UUID kbTenantId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, kbPaymentId.toString());
+            stmt.setString(2, kbTenantId.toString());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    LiqPayResponseRecord record = new LiqPayResponseRecord();
+                    record.setKbPaymentId(kbPaymentId);
+                    record.setKbTenantId(kbTenantId);
+                    record.setLiqpayOrderId(rs.getString("liqpay_order_id"));
+                    record.setTransactionType(rs.getString("transaction_type"));
+                    record.setStatus(rs.getString("status"));
+                    record.setAmount(rs.getBigDecimal("amount"));
+                    record.setCurrency(rs.getString("currency"));
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+
     // Pending Transaction Operations
 
     /**
@@ -339,27 +866,40 @@ public class LiqPayDao {
     public void createPendingTransaction(UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
                                          UUID kbPaymentMethodId, UUID kbTenantId, String orderId,
                                          String transactionType, BigDecimal amount, String currency) throws SQLException {
+        withConnection(uow -> {
+            createPendingTransaction(uow, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId,
+                    kbTenantId, orderId, transactionType, amount, currency);
+            return null;
+        });
+    }
+
+    /**
+     * Creates a pending transaction record within a unit of work.
+     */
+    public void createPendingTransaction(UnitOfWork uow, UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
+                                         UUID kbPaymentMethodId, UUID kbTenantId, String orderId,
+                                         String transactionType, BigDecimal amount, String currency) throws SQLException {
         String sql = "INSERT INTO liqpay_pending_transactions " +
                 "(kb_account_id, kb_payment_id, kb_transaction_id, kb_payment_method_id, kb_tenant_id, " +
-                "order_id, transaction_type, amount, currency, status) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'PENDING')";
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, kbAccountId.toString());
-            stmt.setString(2, kbPaymentId != null ? kbPaymentId.toString() : null);
-            stmt.setString(3, kbTransactionId.toString());
-            stmt.setString(4, kbPaymentMethodId != null ? kbPaymentMethodId.toString() : null);
-            stmt.setString(5, kbTenantId.toString());
-            stmt.setString(6, orderId);
-            stmt.setString(7, transactionType);
-            stmt.setBigDecimal(8, amount);
-            stmt.setString(9, currency);
-
-            stmt.executeUpdate();
-            logger.debug("Created pending transaction for order {}", orderId);
-        }
+                "order_id, transaction_type, amount, currency, status, created_date, updated_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'PENDING', ?, ?)";
+
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, kbAccountId.toString());
+        stmt.setString(2, kbPaymentId != null ? kbPaymentId.toString() : null);
+        stmt.setString(3, kbTransactionId.toString());
+        stmt.setString(4, kbPaymentMethodId != null ? kbPaymentMethodId.toString() : null);
+        stmt.setString(5, kbTenantId.toString());
+        stmt.setString(6, orderId);
+        stmt.setString(7, transactionType);
+        stmt.setBigDecimal(8, amount);
+        stmt.setString(9, currency);
+        Timestamp now = now();
+        stmt.setTimestamp(10, now);
+        stmt.setTimestamp(11, now);
+
+        stmt.executeUpdate();
+        logger.debug("Created pending transaction for order {}", orderId);
     }
 
     /**
@@ -388,28 +928,36 @@ public class LiqPayDao {
      * Updates pending transaction status.
      */
     public void updatePendingTransactionStatus(String orderId, UUID kbTenantId, String status) throws SQLException {
+        withConnection(uow -> {
+            updatePendingTransactionStatus(uow, orderId, kbTenantId, status);
+            return null;
+        });
+    }
+
+    /**
+     * Updates pending transaction status within a unit of work.
+     */
+    public void updatePendingTransactionStatus(UnitOfWork uow, String orderId, UUID kbTenantId, String status) throws SQLException {
         String sql;
         if (kbTenantId != null) {
             sql = "UPDATE liqpay_pending_transactions SET " +
-                    "status = ?, updated_date = CURRENT_TIMESTAMP " +
+                    "status = ?, updated_date = ? " +
                     "WHERE order_id = ? AND kb_tenant_id = ?";
         } else {
             sql = "UPDATE liqpay_pending_transactions SET " +
-                    "status = ?, updated_date = CURRENT_TIMESTAMP " +
+                    "status = ?, updated_date = ? " +
                     "WHERE order_id = ?";
         }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, status);
-            stmt.setString(2, orderId);
-            if (kbTenantId != null) {
-                stmt.setString(3, kbTenantId.toString());
-            }
-
-            stmt.executeUpdate();
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, status);
+        stmt.setTimestamp(2, now());
+        stmt.setString(3, orderId);
+        if (kbTenantId != null) {
+            stmt.setString(4, kbTenantId.toString());
         }
+
+        stmt.executeUpdate();
     }
 
     /**
@@ -439,21 +987,25 @@ public class LiqPayDao {
      * Used in callback handling to get all transaction details for KillBill API calls.
      */
     public PendingTransactionRecord getPendingTransaction(String orderId) throws SQLException {
+        return withConnection(uow -> getPendingTransaction(uow, orderId));
+    }
+
+    /**
+     * Gets the full pending transaction record by order ID within a unit of work.
+     */
+    public PendingTransactionRecord getPendingTransaction(UnitOfWork uow, String orderId) throws SQLException {
         String sql = "SELECT * FROM liqpay_pending_transactions WHERE order_id = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, orderId);
 
-            stmt.setString(1, orderId);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapPendingTransactionRecord(rs);
-                }
-            }
-        }
-        return null;
-    }
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return mapPendingTransactionRecord(rs);
+            }
+        }
+        return null;
+    }
 
     /**
      * Gets the full pending transaction record by order ID and tenant.
@@ -497,6 +1049,96 @@ public class LiqPayDao {
         return record;
     }
 
+    private LiqPayResponseRecord mapResponseSummary(ResultSet rs) throws SQLException {
+        LiqPayResponseRecord record = new LiqPayResponseRecord();
+        record.setRecordId(rs.getLong("record_id"));
+
+        String paymentId = rs.getString("kb_payment_id");
+        record.setKbPaymentId(paymentId != null ? UUID.fromString(paymentId) : null);
+
+        String transactionId = rs.getString("kb_transaction_id");
+        record.setKbTransactionId(transactionId != null ? UUID.fromString(transactionId) : null);
+
+        record.setKbTenantId(UUID.fromString(rs.getString("kb_tenant_id")));
+        record.setLiqpayOrderId(rs.getString("liqpay_order_id"));
+        record.setLiqpayPaymentId(rs.getString("liqpay_payment_id"));
+        record.setTransactionType(rs.getString("transaction_type"));
+        record.setAction(rs.getString("action"));
+        record.setStatus(rs.getString("status"));
+        record.setAmount(rs.getBigDecimal("amount"));
+        record.setCurrency(rs.getString("currency"));
+        record.setErrCode(rs.getString("err_code"));
+        record.setErrDescription(rs.getString("err_description"));
+        record.setApiCallDate(rs.getTimestamp("api_call_date"));
+        record.setCreatedDate(rs.getTimestamp("created_date"));
+        return record;
+    }
+
+    /**
+     * Last 4 digits of a card mask such as "473119******4634", or null if it doesn't end in 4 digits.
+     */
+    private static String cardLast4(String cardMask) {
+        if (cardMask == null || cardMask.length() < CARD_LAST4_LENGTH) {
+            return null;
+        }
+        String last4 = cardMask.substring(cardMask.length() - CARD_LAST4_LENGTH);
+        return isNumeric(last4) ? last4 : null;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String value) {
+        if (value.length() != 36) {
+            return false;
+        }
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Timestamp now() {
+        return new Timestamp(clock.getUTCNow().getMillis());
+    }
+
+    // '!' rather than backslash: MySQL reads a backslash inside a string literal as an escape itself
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Binds parameters starting at {@code index} and returns the next parameter index.
+     */
+    @FunctionalInterface
+    private interface ParameterBinder {
+        int bind(PreparedStatement stmt, int index) throws SQLException;
+    }
+
+    /**
+     * One indexed part of a search: a filter on a single table and the binder for its parameters.
+     */
+    private static final class SearchBranch {
+        private final String filter;
+        private final ParameterBinder binder;
+
+        private SearchBranch(String filter, ParameterBinder binder) {
+            this.filter = filter;
+            this.binder = binder;
+        }
+    }
+
     private LiqPayResponseRecord mapResponseRecord(ResultSet rs) throws SQLException {
         LiqPayResponseRecord record = new LiqPayResponseRecord();
         record.setRecordId(rs.getLong("record_id"));
@@ -524,12 +1166,49 @@ public class LiqPayDao {
         record.setCurrency(rs.getString("currency"));
         record.setErrCode(rs.getString("err_code"));
         record.setErrDescription(rs.getString("err_description"));
-        record.setRawResponse(rs.getString("raw_response"));
+        record.setRawResponse(rawResponse(rs));
         record.setApiCallDate(rs.getTimestamp("api_call_date"));
         record.setCreatedDate(rs.getTimestamp("created_date"));
         return record;
     }
 
+    /**
+     * Reads raw_response, or its archived copy when the row has been archived, decompressed.
+     */
+    private static String rawResponse(ResultSet rs) throws SQLException {
+        String rawResponse = rs.getString("raw_response");
+        try {
+            if (rawResponse != null) {
+                return LiqPayCompression.decompress(rawResponse);
+            }
+            return LiqPayCompression.decompressBytes(rs.getBytes("compressed_raw_response"));
+        } catch (IOException e) {
+            throw decompressionFailed(rs, e);
+        }
+    }
+
+    private static String decodePayload(String value, ResultSet rs) throws SQLException {
+        try {
+            return LiqPayCompression.decompress(value);
+        } catch (IOException e) {
+            throw decompressionFailed(rs, e);
+        }
+    }
+
+    private static SQLException decompressionFailed(ResultSet rs, IOException e) throws SQLException {
+        return new SQLException("Failed to decompress payload of record " + rs.getLong("record_id"), e);
+    }
+
+    /**
+     * Value to store for a raw_response or additional_data payload.
+     */
+    private String storedPayload(String value) {
+        if (!compressPayloads || value == null || value.length() < MIN_COMPRESSED_PAYLOAD_LENGTH) {
+            return value;
+        }
+        return LiqPayCompression.compress(value);
+    }
+
     private PendingTransactionRecord mapPendingTransactionRecord(ResultSet rs) throws SQLException {
         PendingTransactionRecord record = new PendingTransactionRecord();
         record.setRecordId(rs.getLong("record_id"));
@@ -583,8 +1262,8 @@ public class LiqPayDao {
                                 BigDecimal amount, String currency, String additionalData) throws SQLException {
         String sql = "INSERT INTO liqpay_hpp_requests " +
                 "(kb_account_id, kb_payment_method_id, kb_tenant_id, session_id, order_id, " +
-                "mode, is_verification, amount, currency, additional_data, status) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'CREATED')";
+                "mode, is_verification, amount, currency, additional_data, status, created_date, updated_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'CREATED', ?, ?)";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -598,7 +1277,10 @@ public class LiqPayDao {
             stmt.setBoolean(7, isVerification);
             stmt.setBigDecimal(8, amount);
             stmt.setString(9, currency);
-            stmt.setString(10, additionalData);
+            stmt.setString(10, storedPayload(additionalData));
+            Timestamp now = now();
+            stmt.setTimestamp(11, now);
+            stmt.setTimestamp(12, now);
 
             stmt.executeUpdate();
             logger.debug("Created HPP request: sessionId={}, orderId={}, mode={}, verification={}",
@@ -612,18 +1294,22 @@ public class LiqPayDao {
      * Used in callback handling to check verification mode.
      */
     public HppRequestRecord getHppRequestByOrderId(String orderId, UUID kbTenantId) throws SQLException {
-        String sql = "SELECT * FROM liqpay_hpp_requests WHERE order_id = ? AND kb_tenant_id = ?";
+        return withConnection(uow -> getHppRequestByOrderId(uow, orderId, kbTenantId));
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Gets an HPP request by order ID within a unit of work.
+     */
+    public HppRequestRecord getHppRequestByOrderId(UnitOfWork uow, String orderId, UUID kbTenantId) throws SQLException {
+        String sql = "SELECT * FROM liqpay_hpp_requests WHERE order_id = ? AND kb_tenant_id = ?";
 
-            stmt.setString(1, orderId);
-            stmt.setString(2, kbTenantId.toString());
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, orderId);
+        stmt.setString(2, kbTenantId.toString());
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapHppRequestRecord(rs);
-                }
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return mapHppRequestRecord(rs);
             }
         }
         return null;
@@ -655,15 +1341,16 @@ public class LiqPayDao {
      */
     public void updateHppRequestStatus(String orderId, UUID kbTenantId, String status) throws SQLException {
         String sql = "UPDATE liqpay_hpp_requests SET " +
-                "status = ?, updated_date = CURRENT_TIMESTAMP " +
+                "status = ?, updated_date = ? " +
                 "WHERE order_id = ? AND kb_tenant_id = ?";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, status);
-            stmt.setString(2, orderId);
-            stmt.setString(3, kbTenantId.toString());
+            stmt.setTimestamp(2, now());
+            stmt.setString(3, orderId);
+            stmt.setString(4, kbTenantId.toString());
 
             stmt.executeUpdate();
             logger.debug("Updated HPP request status: orderId={}, status={}", orderId, status);
@@ -689,11 +1376,547 @@ public class LiqPayDao {
         record.setVerification(rs.getBoolean("is_verification"));
         record.setAmount(rs.getBigDecimal("amount"));
         record.setCurrency(rs.getString("currency"));
-        record.setAdditionalData(rs.getString("additional_data"));
+        record.setAdditionalData(decodePayload(rs.getString("additional_data"), rs));
+        record.setStatus(rs.getString("status"));
+        record.setCreatedDate(rs.getTimestamp("created_date"));
+        record.setUpdatedDate(rs.getTimestamp("updated_date"));
+
+        return record;
+    }
+
+    // Processed Callback Operations
+
+    /**
+     * Checks whether a callback with this identity has already been applied.
+     */
+    public boolean isCallbackProcessed(String orderId, String status, String paymentId) throws SQLException {
+        String sql = "SELECT 1 FROM liqpay_processed_callbacks " +
+                "WHERE order_id = ? AND status = ? AND payment_id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, orderId);
+            stmt.setString(2, status);
+            stmt.setString(3, paymentId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Records that a callback has been applied.
+     *
+     * @return false if the identity was already recorded (unique constraint violation)
+     */
+    public boolean insertProcessedCallback(UUID kbTenantId, String orderId, String status,
+                                           String paymentId) throws SQLException {
+        return withConnection(uow -> insertProcessedCallback(uow, kbTenantId, orderId, status, paymentId));
+    }
+
+    /**
+     * Records that a callback has been applied, within a unit of work.
+     * On a duplicate the unit of work is marked rollback-only (some databases abort the
+     * transaction after a constraint violation).
+     *
+     * @return false if the identity was already recorded (unique constraint violation)
+     */
+    public boolean insertProcessedCallback(UnitOfWork uow, UUID kbTenantId, String orderId, String status,
+                                           String paymentId) throws SQLException {
+        String sql = "INSERT INTO liqpay_processed_callbacks " +
+                "(kb_tenant_id, order_id, status, payment_id) VALUES (?, ?, ?, ?)";
+
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, kbTenantId.toString());
+        stmt.setString(2, orderId);
+        stmt.setString(3, status);
+        stmt.setString(4, paymentId);
+
+        try {
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            // SQLState class 23: integrity constraint violation
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                uow.setRollbackOnly();
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    // Callback Inbox Operations
+
+    /**
+     * Stores a verified raw callback in the inbox. A single insert, so the servlet can ack right away.
+     */
+    public void insertCallbackInbox(String orderId, UUID kbTenantId, String data, String signature,
+                                    Timestamp now) throws SQLException {
+        String sql = "INSERT INTO liqpay_callback_inbox " +
+                "(kb_tenant_id, order_id, data, signature, status, attempts, next_attempt_date, created_date, updated_date) " +
+                "VALUES (?, ?, ?, ?, 'NEW', 0, ?, ?, ?)";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, kbTenantId.toString());
+            stmt.setString(2, orderId);
+            stmt.setString(3, data);
+            stmt.setString(4, signature);
+            stmt.setTimestamp(5, now);
+            stmt.setTimestamp(6, now);
+            stmt.setTimestamp(7, now);
+
+            stmt.executeUpdate();
+            logger.debug("Stored callback in inbox for order {}", orderId);
+        }
+    }
+
+    /**
+     * Gets the first unprocessed entry of each order whose next attempt is due, oldest first.
+     * Orders whose first entry is waiting for a retry or being processed are skipped.
+     */
+    public List<CallbackInboxRecord> getPendingCallbackInboxEntries(Timestamp now, int limit) throws SQLException {
+        String sql = "SELECT * FROM liqpay_callback_inbox i WHERE " + INBOX_HEAD_CONDITION + " " +
+                "ORDER BY i.record_id ASC LIMIT ?";
+
+        List<CallbackInboxRecord> records = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, now);
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapCallbackInboxRecord(rs));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Gets the first unprocessed entry of an order if it is due.
+     *
+     * @return Entry, or null if the order has none that can be processed now
+     */
+    public CallbackInboxRecord getNextCallbackInboxEntry(String orderId, Timestamp now) throws SQLException {
+        String sql = "SELECT * FROM liqpay_callback_inbox i WHERE i.order_id = ? AND " + INBOX_HEAD_CONDITION;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, orderId);
+            stmt.setTimestamp(2, now);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapCallbackInboxRecord(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Claims an inbox entry for processing.
+     *
+     * @return true if this node claimed the entry, false if another worker already did
+     */
+    public boolean claimCallbackInboxEntry(long recordId, Timestamp now) throws SQLException {
+        String sql = "UPDATE liqpay_callback_inbox SET status = 'PROCESSING', updated_date = ? " +
+                "WHERE record_id = ? AND status = 'NEW'";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, now);
+            stmt.setLong(2, recordId);
+
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Marks an inbox entry as processed.
+     */
+    public void completeCallbackInboxEntry(long recordId, Timestamp now) throws SQLException {
+        String sql = "UPDATE liqpay_callback_inbox SET status = 'DONE', last_error = NULL, updated_date = ? " +
+                "WHERE record_id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, now);
+            stmt.setLong(2, recordId);
+
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Records a failed processing attempt. The entry goes back to NEW with the given next attempt date,
+     * or to FAILED once retries are exhausted.
+     */
+    public void failCallbackInboxEntry(long recordId, int attempts, Timestamp nextAttemptDate,
+                                       String lastError, boolean exhausted, Timestamp now) throws SQLException {
+        String sql = "UPDATE liqpay_callback_inbox SET " +
+                "status = ?, attempts = ?, next_attempt_date = ?, last_error = ?, updated_date = ? " +
+                "WHERE record_id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, exhausted ? "FAILED" : "NEW");
+            stmt.setInt(2, attempts);
+            stmt.setTimestamp(3, nextAttemptDate);
+            stmt.setString(4, lastError);
+            stmt.setTimestamp(5, now);
+            stmt.setLong(6, recordId);
+
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Puts entries stuck in PROCESSING (e.g. the node died mid-way) back to NEW. The lost claim
+     * counts as an attempt; entries it would bring to {@code maxAttempts} are left to
+     * {@link #failStaleCallbackInboxEntries}.
+     *
+     * @return Number of entries requeued
+     */
+    public int requeueStaleCallbackInboxEntries(Timestamp claimedBefore, int maxAttempts,
+                                                Timestamp now) throws SQLException {
+        return updateStaleCallbackInboxEntries("NEW", "attempts + 1 < ?", claimedBefore, maxAttempts, now);
+    }
+
+    /**
+     * Marks entries stuck in PROCESSING as FAILED once the lost claim brings them to
+     * {@code maxAttempts}, so a callback that crashes its node every time is not retried forever.
+     *
+     * @return Number of entries marked FAILED
+     */
+    public int failStaleCallbackInboxEntries(Timestamp claimedBefore, int maxAttempts,
+                                             Timestamp now) throws SQLException {
+        return updateStaleCallbackInboxEntries("FAILED", "attempts + 1 >= ?", claimedBefore, maxAttempts, now);
+    }
+
+    private int updateStaleCallbackInboxEntries(String status, String attemptsCondition, Timestamp claimedBefore,
+                                                int maxAttempts, Timestamp now) throws SQLException {
+        String sql = "UPDATE liqpay_callback_inbox SET status = ?, attempts = attempts + 1, " +
+                "last_error = ?, updated_date = ? " +
+                "WHERE status = 'PROCESSING' AND updated_date < ? AND " + attemptsCondition;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, status);
+            stmt.setString(2, STALE_CLAIM_ERROR);
+            stmt.setTimestamp(3, now);
+            stmt.setTimestamp(4, claimedBefore);
+            stmt.setInt(5, maxAttempts);
+
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes up to {@code batchSize} DONE or FAILED inbox entries last updated before {@code updatedBefore}.
+     *
+     * @return Number of entries deleted
+     */
+    public int purgeCallbackInbox(Timestamp updatedBefore, int batchSize) throws SQLException {
+        // Ids first: MySQL allows neither LIMIT nor the target table in a DELETE subquery
+        String selectSql = "SELECT record_id FROM liqpay_callback_inbox " +
+                "WHERE status IN ('DONE', 'FAILED') AND updated_date < ? ORDER BY record_id LIMIT ?";
+        String deleteSql = "DELETE FROM liqpay_callback_inbox WHERE record_id = ?";
+
+        return inTransaction(uow -> {
+            PreparedStatement select = uow.prepare(selectSql);
+            select.setTimestamp(1, updatedBefore);
+            select.setInt(2, batchSize);
+
+            PreparedStatement delete = uow.prepare(deleteSql);
+            int purged = 0;
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    delete.setLong(1, rs.getLong("record_id"));
+                    delete.addBatch();
+                    purged++;
+                }
+            }
+            if (purged > 0) {
+                delete.executeBatch();
+            }
+            return purged;
+        });
+    }
+
+    private CallbackInboxRecord mapCallbackInboxRecord(ResultSet rs) throws SQLException {
+        CallbackInboxRecord record = new CallbackInboxRecord();
+        record.setRecordId(rs.getLong("record_id"));
+
+        String tenantId = rs.getString("kb_tenant_id");
+        record.setKbTenantId(tenantId != null ? UUID.fromString(tenantId) : null);
+
+        record.setOrderId(rs.getString("order_id"));
+        record.setData(rs.getString("data"));
+        record.setSignature(rs.getString("signature"));
         record.setStatus(rs.getString("status"));
+        record.setAttempts(rs.getInt("attempts"));
+        record.setNextAttemptDate(rs.getTimestamp("next_attempt_date"));
+        record.setLastError(rs.getString("last_error"));
         record.setCreatedDate(rs.getTimestamp("created_date"));
         record.setUpdatedDate(rs.getTimestamp("updated_date"));
 
         return record;
     }
+
+    // Archive Operations
+
+    /**
+     * Moves the raw_response of up to {@code batchSize} responses created before {@code createdBefore}
+     * to liqpay_responses_archive, compressed. Responses of payments with a transaction still
+     * waiting for a callback are left alone. All other columns stay in liqpay_responses.
+     *
+     * @return Number of responses archived
+     */
+    public int archiveRawResponses(Timestamp createdBefore, int batchSize, Timestamp now) throws SQLException {
+        String selectSql = "SELECT r.record_id, r.kb_tenant_id, r.kb_payment_id, r.raw_response " +
+                "FROM liqpay_responses r " +
+                "WHERE r.created_date < ? AND r.raw_response IS NOT NULL " +
+                "AND NOT EXISTS (SELECT 1 FROM liqpay_pending_transactions p " +
+                "WHERE p.kb_payment_id = r.kb_payment_id AND p.kb_tenant_id = r.kb_tenant_id AND p.status = 'PENDING') " +
+                "ORDER BY r.created_date LIMIT ?";
+        String insertSql = "INSERT INTO liqpay_responses_archive " +
+                "(response_record_id, kb_tenant_id, kb_payment_id, compressed_raw_response, archived_date) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        String clearSql = "UPDATE liqpay_responses SET raw_response = NULL WHERE record_id = ?";
+
+        return inTransaction(uow -> {
+            PreparedStatement select = uow.prepare(selectSql);
+            select.setTimestamp(1, createdBefore);
+            select.setInt(2, batchSize);
+
+            PreparedStatement insert = uow.prepare(insertSql);
+            PreparedStatement clear = uow.prepare(clearSql);
+            int archived = 0;
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    long recordId = rs.getLong("record_id");
+                    insert.setLong(1, recordId);
+                    insert.setString(2, rs.getString("kb_tenant_id"));
+                    insert.setString(3, rs.getString("kb_payment_id"));
+                    try {
+                        insert.setBytes(4, LiqPayCompression.compressToBytes(rs.getString("raw_response")));
+                    } catch (IOException e) {
+                        throw decompressionFailed(rs, e);
+                    }
+                    insert.setTimestamp(5, now);
+                    insert.addBatch();
+
+                    clear.setLong(1, recordId);
+                    clear.addBatch();
+                    archived++;
+                }
+            }
+            if (archived > 0) {
+                insert.executeBatch();
+                clear.executeBatch();
+            }
+            return archived;
+        });
+    }
+
+    // Reconciliation Operations
+
+    /**
+     * Gets a tenant's PENDING transactions created before {@code createdBefore}, in record_id order
+     * after {@code afterRecordId}.
+     *
+     * @param limit Maximum number of transactions returned
+     */
+    public List<PendingTransactionRecord> getStalePendingTransactions(UUID kbTenantId, Timestamp createdBefore,
+                                                                      long afterRecordId, int limit) throws SQLException {
+        String sql = "SELECT * FROM liqpay_pending_transactions " +
+                "WHERE status = 'PENDING' AND kb_tenant_id = ? AND created_date < ? AND record_id > ? " +
+                "ORDER BY record_id LIMIT ?";
+
+        List<PendingTransactionRecord> records = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, kbTenantId.toString());
+            stmt.setTimestamp(2, createdBefore);
+            stmt.setLong(3, afterRecordId);
+            stmt.setInt(4, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapPendingTransactionRecord(rs));
+                }
+            }
+        }
+        return records;
+    }
+
+    // Expiry Operations
+
+    /**
+     * Gets the tenants that have transactions still waiting for a callback.
+     */
+    public List<UUID> getTenantsWithPendingTransactions() throws SQLException {
+        return getTenantsWithStatus("liqpay_pending_transactions", "PENDING");
+    }
+
+    /**
+     * Marks up to {@code batchSize} of a tenant's PENDING transactions created before
+     * {@code createdBefore} as EXPIRED.
+     *
+     * @return Number of transactions expired
+     */
+    public int expirePendingTransactions(UUID kbTenantId, Timestamp createdBefore, int batchSize,
+                                         Timestamp now) throws SQLException {
+        return expireBatch("liqpay_pending_transactions", "PENDING", kbTenantId, createdBefore, batchSize, now);
+    }
+
+    /**
+     * Gets the tenants that have hosted payment page sessions not completed yet.
+     */
+    public List<UUID> getTenantsWithOpenHppRequests() throws SQLException {
+        return getTenantsWithStatus("liqpay_hpp_requests", "CREATED");
+    }
+
+    /**
+     * Marks up to {@code batchSize} of a tenant's CREATED HPP requests created before
+     * {@code createdBefore} as EXPIRED.
+     *
+     * @return Number of requests expired
+     */
+    public int expireHppRequests(UUID kbTenantId, Timestamp createdBefore, int batchSize,
+                                 Timestamp now) throws SQLException {
+        return expireBatch("liqpay_hpp_requests", "CREATED", kbTenantId, createdBefore, batchSize, now);
+    }
+
+    private List<UUID> getTenantsWithStatus(String table, String status) throws SQLException {
+        String sql = "SELECT DISTINCT kb_tenant_id FROM " + table + " WHERE status = ?";
+
+        List<UUID> tenants = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, status);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tenants.add(UUID.fromString(rs.getString("kb_tenant_id")));
+                }
+            }
+        }
+        return tenants;
+    }
+
+    private int expireBatch(String table, String status, UUID kbTenantId, Timestamp createdBefore,
+                            int batchSize, Timestamp now) throws SQLException {
+        String selectSql = "SELECT record_id FROM " + table + " " +
+                "WHERE status = ? AND kb_tenant_id = ? AND created_date < ? " +
+                "ORDER BY created_date LIMIT ?";
+
+        try (Connection conn = dataSource.getConnection()) {
+            List<Long> recordIds = new ArrayList<>(batchSize);
+            try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                stmt.setString(1, status);
+                stmt.setString(2, kbTenantId.toString());
+                stmt.setTimestamp(3, createdBefore);
+                stmt.setInt(4, batchSize);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        recordIds.add(rs.getLong("record_id"));
+                    }
+                }
+            }
+            if (recordIds.isEmpty()) {
+                return 0;
+            }
+
+            // Status is re-checked so a row completed by a callback in the meantime is left alone
+            StringBuilder updateSql = new StringBuilder("UPDATE ").append(table)
+                    .append(" SET status = 'EXPIRED', updated_date = ? WHERE status = ? AND record_id IN (");
+            for (int i = 0; i < recordIds.size(); i++) {
+                updateSql.append(i == 0 ? "?" : ", ?");
+            }
+            updateSql.append(')');
+
+            try (PreparedStatement stmt = conn.prepareStatement(updateSql.toString())) {
+                stmt.setTimestamp(1, now);
+                stmt.setString(2, status);
+                for (int i = 0; i < recordIds.size(); i++) {
+                    stmt.setLong(i + 3, recordIds.get(i));
+                }
+                int expired = stmt.executeUpdate();
+                logger.debug("Expired {} rows in {} for tenant {}", expired, table, kbTenantId);
+                return expired;
+            }
+        }
+    }
+
+    // Lock Operations
+
+    /**
+     * Acquires or renews a named lease shared by all Kill Bill nodes.
+     *
+     * @param owner Identifier of the calling node
+     * @param expiresDate When the lease lapses unless renewed
+     * @return true if {@code owner} holds the lease until {@code expiresDate}
+     */
+    public boolean tryAcquireLock(String lockName, String owner, Timestamp now, Timestamp expiresDate) throws SQLException {
+        String updateSql = "UPDATE liqpay_locks SET owner = ?, expires_date = ? " +
+                "WHERE lock_name = ? AND (owner = ? OR expires_date < ?)";
+        String insertSql = "INSERT INTO liqpay_locks (lock_name, owner, expires_date) VALUES (?, ?, ?)";
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
+                stmt.setString(1, owner);
+                stmt.setTimestamp(2, expiresDate);
+                stmt.setString(3, lockName);
+                stmt.setString(4, owner);
+                stmt.setTimestamp(5, now);
+                if (stmt.executeUpdate() > 0) {
+                    return true;
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+                stmt.setString(1, lockName);
+                stmt.setString(2, owner);
+                stmt.setTimestamp(3, expiresDate);
+                stmt.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                // SQLState class 23: another node holds the lease
+                if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                    return false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Gives up a lease held by {@code owner}.
+     */
+    public void releaseLock(String lockName, String owner) throws SQLException {
+        String sql = "DELETE FROM liqpay_locks WHERE lock_name = ? AND owner = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, lockName);
+            stmt.setString(2, owner);
+            stmt.executeUpdate();
+        }
+    }
 }
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+
+/**
+ * Group-commit writer for liqpay_responses.
+ *
+ * Rows are queued and written by a single flusher thread with JDBC {@code addBatch}/{@code executeBatch}
+ * in one transaction per batch. A batch is flushed when it reaches {@code maxBatchSize} rows or
+ * {@code maxDelayMillis} after its first row (0 flushes whatever is queued right away, so concurrent
+ * writers share a commit without any added latency).
+ *
+ * If a batch fails, its rows are retried one by one so a single bad row only fails its own caller.
+ *
+ * {@link #write} blocks until the row is committed, {@link #submit} returns a future for callers
+ * that don't need to wait. The queue holds at most {@value #QUEUED_BATCHES} batches: when the
+ * database falls behind, callers wait for room instead of growing the heap, and both waits give
+ * up with an SQLException after {@value #MAX_WAIT_MILLIS} ms.
+ */
+public class LiqPayResponseWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayResponseWriter.class);
+
+    private static final long IDLE_POLL_MILLIS = 100L;
+    static final int QUEUED_BATCHES = 10;
+    static final long MAX_WAIT_MILLIS = 30000L;
+
+    private final DataSource dataSource;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final long maxWaitMillis;
+    private final BlockingQueue<PendingRow> queue;
+    private final Thread flusher;
+
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * @param maxBatchSize Maximum rows per batch
+     * @param maxDelayMillis Maximum time a row waits for more rows before its batch is flushed
+     */
+    public LiqPayResponseWriter(DataSource dataSource, int maxBatchSize, long maxDelayMillis) {
+        this(dataSource, maxBatchSize, maxDelayMillis, Math.max(1, maxBatchSize) * QUEUED_BATCHES, MAX_WAIT_MILLIS);
+    }
+
+    LiqPayResponseWriter(DataSource dataSource, int maxBatchSize, long maxDelayMillis,
+                         int queueCapacity, long maxWaitMillis) {
+        this.dataSource = dataSource;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayMillis = Math.max(0L, maxDelayMillis);
+        this.maxWaitMillis = maxWaitMillis;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.flusher = new Thread(this::run, "liqpay-response-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a row and waits until its batch is committed.
+     *
+     * @throws SQLException if the batch failed, the writer is closed, or the row was not
+     *                      committed in time
+     */
+    public void write(UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
+                      UUID kbPaymentMethodId, UUID kbTenantId,
+                      String transactionType, LiqPayResponse response, String rawJson,
+                      Timestamp createdDate) throws SQLException {
+        PendingRow row = enqueue(new PendingRow(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId,
+                kbTenantId, transactionType, response, rawJson, createdDate));
+        try {
+            row.future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Still queued: drop it so it is not written after the caller saw a failure
+            String state = queue.remove(row) ? "not written" : "still being written";
+            throw new SQLException("Timed out after " + maxWaitMillis + "ms waiting for LiqPay response write ("
+                    + state + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for LiqPay response write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Failed to write LiqPay response", e.getCause());
+        }
+    }
+
+    /**
+     * Queues a row, waiting for room in the queue if the database is falling behind.
+     *
+     * @return Future completed when the row's batch is committed
+     */
+    public CompletableFuture<Void> submit(UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId,
+                                          UUID kbPaymentMethodId, UUID kbTenantId,
+                                          String transactionType, LiqPayResponse response, String rawJson,
+                                          Timestamp createdDate) {
+        return enqueue(new PendingRow(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, kbTenantId,
+                transactionType, response, rawJson, createdDate)).future;
+    }
+
+    /**
+     * Flushes queued rows and stops the flusher thread.
+     */
+    public void close() {
+        closed = true;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything still queued (flusher timed out) is failed rather than left hanging
+        List<PendingRow> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingRow row : remaining) {
+            row.future.completeExceptionally(new SQLException("LiqPay response writer is closed"));
+        }
+    }
+
+    // Metrics
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private PendingRow enqueue(PendingRow row) {
+        if (closed) {
+            row.future.completeExceptionally(new SQLException("LiqPay response writer is closed"));
+            return row;
+        }
+        try {
+            if (!queue.offer(row, maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                row.future.completeExceptionally(new SQLException(
+                        "LiqPay response writer queue full for " + maxWaitMillis + "ms"));
+                return row;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            row.future.completeExceptionally(new SQLException("Interrupted while queueing LiqPay response write", e));
+            return row;
+        }
+        // close() may have drained the queue between the check above and the offer
+        if (closed && queue.remove(row)) {
+            row.future.completeExceptionally(new SQLException("LiqPay response writer is closed"));
+        }
+        return row;
+    }
+
+    private void run() {
+        List<PendingRow> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                PendingRow first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (PendingRow row : batch) {
+                    row.future.completeExceptionally(new SQLException("LiqPay response writer interrupted"));
+                }
+                return;
+            } catch (RuntimeException e) {
+                // Keep the flusher alive: later rows must not wait forever for a dead thread
+                logger.error("Unexpected error writing LiqPay responses", e);
+                for (PendingRow row : batch) {
+                    row.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<PendingRow> batch) throws InterruptedException {
+        if (maxDelayMillis == 0L) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                break;
+            }
+            PendingRow next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void flush(List<PendingRow> batch) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(LiqPayDao.INSERT_RESPONSE_SQL)) {
+                for (PendingRow row : batch) {
+                    LiqPayDao.bindResponse(stmt, row.kbAccountId, row.kbPaymentId, row.kbTransactionId,
+                            row.kbPaymentMethodId, row.kbTenantId, row.transactionType, row.response, row.rawJson,
+                            row.createdDate);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // One bad row must not fail the others: retry the rows one by one
+            logger.warn("Failed to write batch of {} LiqPay responses, retrying rows individually", batch.size(), e);
+            for (PendingRow row : batch) {
+                flush(Collections.singletonList(row));
+            }
+            return;
+        }
+
+        rowsWritten.add(batch.size());
+        batchesWritten.increment();
+        logger.debug("Wrote batch of {} LiqPay responses", batch.size());
+        for (PendingRow row : batch) {
+            row.future.complete(null);
+        }
+    }
+
+    private static final class PendingRow {
+        private final UUID kbAccountId;
+        private final UUID kbPaymentId;
+        private final UUID kbTransactionId;
+        private final UUID kbPaymentMethodId;
+        private final UUID kbTenantId;
+        private final String transactionType;
+        private final LiqPayResponse response;
+        private final String rawJson;
+        private final Timestamp createdDate;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingRow(UUID kbAccountId, UUID kbPaymentId, UUID kbTransactionId, UUID kbPaymentMethodId,
+                           UUID kbTenantId, String transactionType, LiqPayResponse response, String rawJson,
+                           Timestamp createdDate) {
+            this.kbAccountId = kbAccountId;
+            this.kbPaymentId = kbPaymentId;
+            this.kbTransactionId = kbTransactionId;
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.kbTenantId = kbTenantId;
+            this.transactionType = transactionType;
+            this.response = response;
+            this.rawJson = rawJson;
+            this.createdDate = createdDate;
+        }
+    }
+}
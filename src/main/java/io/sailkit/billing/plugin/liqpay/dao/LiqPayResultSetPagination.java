@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.killbill.billing.util.entity.Pagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming {@link Pagination} over an open JDBC cursor.
+ *
+ * Rows are mapped one at a time as the iterator advances, nothing is materialized. The connection
+ * is held in a read transaction so drivers that only stream with auto-commit off (PostgreSQL) fetch
+ * in chunks of the statement's fetch size. Resources are released when the iterator is exhausted
+ * or the pagination is closed, whichever happens first.
+ *
+ * Offsets are keyset cursors: the current offset is the key the page starts after, and the next
+ * offset is the key of the page's last row (null on the last page). Next offset and totals are
+ * looked up on first use through the supplied callbacks.
+ */
+public class LiqPayResultSetPagination<T> implements Pagination<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayResultSetPagination.class);
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> mapper;
+    private final Long currentOffset;
+    private final Lookup nextOffsetLookup;
+    private final Lookup totalLookup;
+
+    private Long nextOffset;
+    private boolean nextOffsetLoaded;
+    private Long total;
+    private boolean totalLoaded;
+    private boolean closed;
+
+    /**
+     * @param statement Statement on {@code connection}, already executed into {@code resultSet}
+     * @param nextOffsetLookup Returns the key of the page's last row, or null if it is the last page
+     * @param totalLookup Returns the (possibly capped) number of matching records
+     */
+    LiqPayResultSetPagination(Connection connection, PreparedStatement statement, ResultSet resultSet,
+                              RowMapper<T> mapper, Long currentOffset, Lookup nextOffsetLookup, Lookup totalLookup) {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.mapper = mapper;
+        this.currentOffset = currentOffset;
+        this.nextOffsetLookup = nextOffsetLookup;
+        this.totalLookup = totalLookup;
+    }
+
+    /**
+     * Returns a pagination over the same cursor that maps each row further.
+     * Only one of the two should be iterated.
+     */
+    public <R> LiqPayResultSetPagination<R> map(Function<? super T, ? extends R> next) {
+        RowMapper<T> first = this.mapper;
+        return new LiqPayResultSetPagination<>(connection, statement, resultSet,
+                rs -> next.apply(first.map(rs)), currentOffset, nextOffsetLookup, totalLookup);
+    }
+
+    @Override
+    public Long getCurrentOffset() {
+        return currentOffset;
+    }
+
+    @Override
+    public synchronized Long getNextOffset() {
+        if (!nextOffsetLoaded) {
+            nextOffset = lookup(nextOffsetLookup);
+            nextOffsetLoaded = true;
+        }
+        return nextOffset;
+    }
+
+    @Override
+    public Long getMaxNbRecords() {
+        return getTotalNbRecords();
+    }
+
+    @Override
+    public synchronized Long getTotalNbRecords() {
+        if (!totalLoaded) {
+            total = lookup(totalLookup);
+            totalLoaded = true;
+        }
+        return total;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Boolean hasRow;
+
+            @Override
+            public boolean hasNext() {
+                if (hasRow == null) {
+                    hasRow = advance();
+                }
+                return hasRow;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasRow = null;
+                try {
+                    return mapper.map(resultSet);
+                } catch (SQLException e) {
+                    close();
+                    throw new IllegalStateException("Failed to read LiqPay search results", e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            resultSet.close();
+            statement.close();
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.warn("Failed to release LiqPay search cursor", e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close LiqPay search connection", e);
+            }
+        }
+    }
+
+    private synchronized boolean advance() {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (resultSet.next()) {
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("Failed to read LiqPay search results", e);
+        }
+        close();
+        return false;
+    }
+
+    private static Long lookup(Lookup lookup) {
+        try {
+            return lookup.get();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to count LiqPay search results", e);
+        }
+    }
+
+    /**
+     * Maps the current row of the cursor.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Lazily computed offset or count.
+     */
+    @FunctionalInterface
+    interface Lookup {
+        Long get() throws SQLException;
+    }
+}
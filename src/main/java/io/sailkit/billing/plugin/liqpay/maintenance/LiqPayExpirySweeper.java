@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+
+/**
+ * Expires abandoned hosted-flow transactions and HPP sessions.
+ *
+ * PENDING rows in liqpay_pending_transactions and CREATED rows in liqpay_hpp_requests older than
+ * the tenant's {@code pendingExpiryAge} are set to EXPIRED in batches of {@code batchSize}, at most
+ * {@link #MAX_BATCHES_PER_RUN} batches per tenant and table per run. A callback that arrives after
+ * expiry is still applied.
+ *
+ * Only one Kill Bill node sweeps at a time ({@value #LOCK_NAME} lease in liqpay_locks, see
+ * {@link LiqPayLeaderJob}).
+ */
+public class LiqPayExpirySweeper extends LiqPayLeaderJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayExpirySweeper.class);
+
+    static final String LOCK_NAME = "expiry-sweeper";
+    static final int MAX_BATCHES_PER_RUN = 100;
+
+    private final LiqPayConfigurationHandler configurationHandler;
+    private final int batchSize;
+
+    private final LongAdder expiredTransactions = new LongAdder();
+    private final LongAdder expiredHppRequests = new LongAdder();
+
+    /**
+     * @param enabled Run the sweeper on this node
+     * @param intervalMillis Delay between sweeps
+     * @param batchSize Maximum rows expired per UPDATE
+     */
+    public LiqPayExpirySweeper(LiqPayDao dao,
+                               LiqPayConfigurationHandler configurationHandler,
+                               Clock clock,
+                               boolean enabled,
+                               int intervalMillis,
+                               int batchSize) {
+        super(dao, clock, LOCK_NAME, "LiqPay expiry sweeper", enabled, intervalMillis);
+        this.configurationHandler = configurationHandler;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected void runAsLeader(long now) throws SQLException {
+        for (UUID tenantId : dao.getTenantsWithPendingTransactions()) {
+            Timestamp cutoff = cutoff(tenantId, now);
+            int expired = 0;
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                int count = dao.expirePendingTransactions(tenantId, cutoff, batchSize, new Timestamp(now));
+                expired += count;
+                if (count < batchSize) {
+                    break;
+                }
+            }
+            record(expiredTransactions, expired, "pending transactions", tenantId);
+        }
+
+        for (UUID tenantId : dao.getTenantsWithOpenHppRequests()) {
+            Timestamp cutoff = cutoff(tenantId, now);
+            int expired = 0;
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                int count = dao.expireHppRequests(tenantId, cutoff, batchSize, new Timestamp(now));
+                expired += count;
+                if (count < batchSize) {
+                    break;
+                }
+            }
+            record(expiredHppRequests, expired, "HPP requests", tenantId);
+        }
+    }
+
+    // Metrics
+
+    public long getExpiredTransactions() {
+        return expiredTransactions.sum();
+    }
+
+    public long getExpiredHppRequests() {
+        return expiredHppRequests.sum();
+    }
+
+    private Timestamp cutoff(UUID tenantId, long now) {
+        return new Timestamp(now - configurationHandler.getConfigForTenant(tenantId).getPendingExpiryAge());
+    }
+
+    private static void record(LongAdder counter, int expired, String what, UUID tenantId) {
+        if (expired > 0) {
+            counter.add(expired);
+            logger.info("Expired {} stale {} for tenant {}", expired, what, tenantId);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+
+/**
+ * A periodic job that runs on one Kill Bill node at a time.
+ *
+ * Each run first acquires or renews the job's lease in liqpay_locks, which lapses after two
+ * intervals if its holder stops renewing it, then does the work of {@link #runAsLeader(long)}.
+ * A run that may outlast its lease calls {@link #renewLease()} as it goes. {@link #stop()} releases
+ * the lease so the next node can take over without waiting for it to lapse.
+ */
+public abstract class LiqPayLeaderJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayLeaderJob.class);
+
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    protected final LiqPayDao dao;
+    protected final Clock clock;
+    protected final int intervalMillis;
+
+    private final String lockName;
+    private final String description;
+    private final boolean enabled;
+    private final String owner;
+
+    private volatile boolean leader;
+    private volatile long renewAfterMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param lockName Lease name in liqpay_locks, also names the job's thread
+     * @param description Name of the job in log messages
+     * @param enabled Run the job on this node
+     * @param intervalMillis Delay between runs
+     */
+    protected LiqPayLeaderJob(LiqPayDao dao,
+                              Clock clock,
+                              String lockName,
+                              String description,
+                              boolean enabled,
+                              int intervalMillis) {
+        this.dao = dao;
+        this.clock = clock;
+        this.lockName = lockName;
+        this.description = description;
+        this.enabled = enabled;
+        this.intervalMillis = intervalMillis;
+        this.owner = hostName() + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Starts running the job. Does nothing when the job is disabled.
+     */
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "liqpay-" + lockName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("{} started: interval={}ms", description, intervalMillis);
+    }
+
+    /**
+     * Stops running the job and hands the lease to the next node once a run in progress has ended.
+     * A run that does not end in time keeps the lease, which then lapses on its own.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        ScheduledExecutorService stopping = scheduler;
+        scheduler = null;
+        stopping.shutdownNow();
+        try {
+            if (!stopping.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("{} run did not stop within {}s, leaving its lock to lapse", description,
+                        STOP_TIMEOUT_SECONDS);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (leader) {
+            leader = false;
+            try {
+                dao.releaseLock(lockName, owner);
+            } catch (SQLException e) {
+                logger.warn("Failed to release {} lock", description, e);
+            }
+        }
+    }
+
+    /**
+     * Runs the job once if this node holds the lease.
+     */
+    void runOnce() throws SQLException {
+        long now = clock.getUTCNow().getMillis();
+        if (!acquireLease(now)) {
+            logger.debug("{} lock held by another node, skipping", description);
+            return;
+        }
+        runAsLeader(now);
+    }
+
+    /**
+     * The work of one run, called only while this node holds the lease.
+     *
+     * @param now Start of the run, in epoch milliseconds
+     */
+    protected abstract void runAsLeader(long now) throws SQLException;
+
+    /**
+     * Extends the lease once half of it has passed.
+     *
+     * @return false if another node has taken the lease over, and the run should stop
+     */
+    protected boolean renewLease() throws SQLException {
+        long now = clock.getUTCNow().getMillis();
+        return leader && (now < renewAfterMillis || acquireLease(now));
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    private boolean acquireLease(long now) throws SQLException {
+        leader = dao.tryAcquireLock(lockName, owner, new Timestamp(now), new Timestamp(now + 2L * intervalMillis));
+        renewAfterMillis = now + intervalMillis;
+        return leader;
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            logger.warn("{} run failed", description, e);
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+
+/**
+ * Moves the raw_response of old liqpay_responses rows to the compressed liqpay_responses_archive table.
+ *
+ * Responses older than {@code archiveAgeMillis} are archived in batches of {@code batchSize}, one
+ * transaction per batch, at most {@link #MAX_BATCHES_PER_RUN} batches per run. Responses of payments
+ * with a transaction still waiting for a callback are kept in place.
+ *
+ * Each run also deletes DONE and FAILED liqpay_callback_inbox entries last updated more than
+ * {@code inboxRetentionMillis} ago, in batches of the same size.
+ *
+ * Only one Kill Bill node archives at a time ({@value #LOCK_NAME} lease in liqpay_locks, see
+ * {@link LiqPayLeaderJob}).
+ */
+public class LiqPayResponseArchiver extends LiqPayLeaderJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayResponseArchiver.class);
+
+    static final String LOCK_NAME = "response-archiver";
+    static final int MAX_BATCHES_PER_RUN = 100;
+
+    private final long archiveAgeMillis;
+    private final long inboxRetentionMillis;
+    private final int batchSize;
+
+    private final LongAdder archivedResponses = new LongAdder();
+    private final LongAdder purgedInboxEntries = new LongAdder();
+
+    /**
+     * @param enabled Run the archiver on this node
+     * @param archiveAgeMillis Age after which a response's raw_response is archived
+     * @param inboxRetentionMillis Age after which processed callback inbox entries are deleted (0 keeps them)
+     * @param intervalMillis Delay between runs
+     * @param batchSize Maximum responses archived per transaction
+     */
+    public LiqPayResponseArchiver(LiqPayDao dao,
+                                  Clock clock,
+                                  boolean enabled,
+                                  long archiveAgeMillis,
+                                  long inboxRetentionMillis,
+                                  int intervalMillis,
+                                  int batchSize) {
+        super(dao, clock, LOCK_NAME, "LiqPay response archiver", enabled, intervalMillis);
+        this.archiveAgeMillis = archiveAgeMillis;
+        this.inboxRetentionMillis = inboxRetentionMillis;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected void runAsLeader(long now) throws SQLException {
+        Timestamp cutoff = new Timestamp(now - archiveAgeMillis);
+        int archived = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN && !Thread.currentThread().isInterrupted(); batch++) {
+            // A long pass keeps its lease, and stops if another node has taken it over
+            if (!renewLease()) {
+                break;
+            }
+            int count = dao.archiveRawResponses(cutoff, batchSize, new Timestamp(now));
+            archived += count;
+            if (count < batchSize) {
+                break;
+            }
+        }
+        if (archived > 0) {
+            archivedResponses.add(archived);
+            logger.info("Archived raw_response of {} LiqPay responses", archived);
+        }
+
+        if (inboxRetentionMillis > 0) {
+            purgeInbox(now);
+        }
+    }
+
+    private void purgeInbox(long now) throws SQLException {
+        Timestamp cutoff = new Timestamp(now - inboxRetentionMillis);
+        int purged = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN && !Thread.currentThread().isInterrupted(); batch++) {
+            if (!renewLease()) {
+                break;
+            }
+            int count = dao.purgeCallbackInbox(cutoff, batchSize);
+            purged += count;
+            if (count < batchSize) {
+                break;
+            }
+        }
+        if (purged > 0) {
+            purgedInboxEntries.add(purged);
+            logger.info("Deleted {} processed LiqPay callback inbox entries", purged);
+        }
+    }
+
+    // Metrics
+
+    public long getArchivedResponses() {
+        return archivedResponses.sum();
+    }
+
+    public long getPurgedInboxEntries() {
+        return purgedInboxEntries.sum();
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayConfig;
+import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
+import io.sailkit.billing.plugin.liqpay.LiqPayExecutionService;
+import io.sailkit.billing.plugin.liqpay.api.LiqPayStatusMapper;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackProcessor;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.model.PendingTransactionRecord;
+
+/**
+ * Resolves hosted-flow transactions whose callback never arrived by polling the LiqPay status API.
+ *
+ * PENDING rows in liqpay_pending_transactions older than the tenant's {@code statusReconcileAge}
+ * are checked concurrently on the {@link LiqPayExecutionService}, at most {@code statusReconcileRateLimit}
+ * requests per second per tenant. A final status is applied through {@link LiqPayCallbackProcessor}
+ * exactly like a delivered callback. An order LiqPay still reports as in progress (or doesn't know yet)
+ * is re-checked after an exponentially growing delay, capped at {@link #MAX_BACKOFF_MILLIS}.
+ *
+ * Only one Kill Bill node polls at a time ({@value #LOCK_NAME} lease in liqpay_locks, see
+ * {@link LiqPayLeaderJob}). A run paced by a low rate limit can outlast the lease, so it is renewed
+ * between dispatch rounds and while waiting for the checks.
+ */
+public class LiqPayStatusReconciler extends LiqPayLeaderJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiqPayStatusReconciler.class);
+
+    static final String LOCK_NAME = "status-reconciler";
+    static final String PAYMENT_NOT_FOUND = "payment_not_found";
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int MAX_PAGES_PER_TENANT = 10;
+
+    private final LiqPayConfigurationHandler configurationHandler;
+    private final LiqPayExecutionService executionService;
+    private final LiqPayCallbackProcessor callbackProcessor;
+    private final int batchSize;
+
+    private final Map<String, Backoff> backoffs = new ConcurrentHashMap<>();
+
+    private final LongAdder checkedOrders = new LongAdder();
+    private final LongAdder fixedOrders = new LongAdder();
+    private final LongAdder unchangedOrders = new LongAdder();
+    private final LongAdder failedChecks = new LongAdder();
+
+    /**
+     * @param enabled Run the reconciler on this node
+     * @param intervalMillis Delay between runs, also the base of the per-order backoff
+     * @param batchSize Maximum orders checked per tenant per run
+     */
+    public LiqPayStatusReconciler(LiqPayDao dao,
+                                  LiqPayConfigurationHandler configurationHandler,
+                                  LiqPayExecutionService executionService,
+                                  LiqPayCallbackProcessor callbackProcessor,
+                                  Clock clock,
+                                  boolean enabled,
+                                  int intervalMillis,
+                                  int batchSize) {
+        super(dao, clock, LOCK_NAME, "LiqPay status reconciler", enabled, intervalMillis);
+        this.configurationHandler = configurationHandler;
+        this.executionService = executionService;
+        this.callbackProcessor = callbackProcessor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs one reconciliation and waits for its status checks.
+     */
+    @Override
+    protected void runAsLeader(long now) throws SQLException {
+        // Orders that left PENDING without being re-checked no longer need their backoff
+        backoffs.values().removeIf(backoff -> backoff.nextCheckMillis < now - MAX_BACKOFF_MILLIS);
+
+        List<TenantOrders> tenants = new ArrayList<>();
+        for (UUID tenantId : dao.getTenantsWithPendingTransactions()) {
+            LiqPayConfig config = configurationHandler.getConfigForTenant(tenantId);
+            List<PendingTransactionRecord> due = dueOrders(tenantId,
+                    new Timestamp(now - config.getStatusReconcileAge()), now);
+            if (!due.isEmpty()) {
+                tenants.add(new TenantOrders(tenantId, due, config.getStatusReconcileRateLimit()));
+            }
+        }
+
+        List<CompletableFuture<Void>> checks = new ArrayList<>();
+        try {
+            dispatch(tenants, checks);
+            awaitChecks(CompletableFuture.allOf(checks.toArray(new CompletableFuture[0])));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks one order and applies its status if LiqPay reports a final one.
+     */
+    void checkOrder(UUID tenantId, PendingTransactionRecord pendingTx) {
+        String orderId = pendingTx.getOrderId();
+        checkedOrders.increment();
+
+        LiqPayResponse response;
+        try {
+            response = configurationHandler.getClientForTenant(tenantId).status(orderId);
+        } catch (LiqPayException e) {
+            response = e.getResponse();
+            if (response == null) {
+                failedChecks.increment();
+                backOff(orderId);
+                logger.warn("LiqPay status check failed for order {}: {}", orderId, e.toString());
+                return;
+            }
+        }
+
+        // payment_not_found: the customer never submitted the hosted page (yet)
+        if (PAYMENT_NOT_FOUND.equals(response.getErrCode()) || !LiqPayStatusMapper.isFinalStatus(response.getStatus())) {
+            unchangedOrders.increment();
+            backOff(orderId);
+            logger.debug("Order {} still unresolved at LiqPay: status={}, err_code={}",
+                    orderId, response.getStatus(), response.getErrCode());
+            return;
+        }
+
+        if (response.getOrderId() == null) {
+            response.setOrderId(orderId);
+        }
+        try {
+            callbackProcessor.process(pendingTx, response, tenantId, response.toString());
+        } catch (SQLException e) {
+            failedChecks.increment();
+            backOff(orderId);
+            logger.warn("Failed to apply LiqPay status for order {}", orderId, e);
+            return;
+        }
+        backoffs.remove(orderId);
+        fixedOrders.increment();
+        logger.info("Reconciled order {} from LiqPay status API: status={}", orderId, response.getStatus());
+    }
+
+    // Metrics
+
+    public long getCheckedOrders() {
+        return checkedOrders.sum();
+    }
+
+    /**
+     * Orders resolved by the reconciler rather than by a callback.
+     */
+    public long getFixedOrders() {
+        return fixedOrders.sum();
+    }
+
+    public long getUnchangedOrders() {
+        return unchangedOrders.sum();
+    }
+
+    public long getFailedChecks() {
+        return failedChecks.sum();
+    }
+
+    public int getBackoffSize() {
+        return backoffs.size();
+    }
+
+    /**
+     * Pages through the tenant's stale PENDING transactions, skipping orders that are backing off.
+     */
+    private List<PendingTransactionRecord> dueOrders(UUID tenantId, Timestamp createdBefore, long now)
+            throws SQLException {
+        List<PendingTransactionRecord> due = new ArrayList<>();
+        long afterRecordId = 0L;
+        for (int page = 0; page < MAX_PAGES_PER_TENANT && due.size() < batchSize; page++) {
+            List<PendingTransactionRecord> records = dao.getStalePendingTransactions(tenantId, createdBefore,
+                    afterRecordId, batchSize);
+            for (PendingTransactionRecord record : records) {
+                Backoff backoff = backoffs.get(record.getOrderId());
+                if ((backoff == null || backoff.nextCheckMillis <= now) && due.size() < batchSize) {
+                    due.add(record);
+                }
+                afterRecordId = record.getRecordId();
+            }
+            if (records.size() < batchSize) {
+                break;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Submits the checks round-robin across tenants, each tenant paced by its own rate limit.
+     */
+    private void dispatch(List<TenantOrders> tenants, List<CompletableFuture<Void>> checks)
+            throws SQLException, InterruptedException {
+        while (!tenants.isEmpty()) {
+            if (!renewLease()) {
+                logger.info("LiqPay status reconciler lease taken over by another node, stopping dispatch");
+                return;
+            }
+            long waitNanos = Long.MAX_VALUE;
+            for (Iterator<TenantOrders> it = tenants.iterator(); it.hasNext(); ) {
+                TenantOrders tenant = it.next();
+                long wait = tenant.tryAcquire(System.nanoTime());
+                if (wait > 0L) {
+                    waitNanos = Math.min(waitNanos, wait);
+                    continue;
+                }
+                PendingTransactionRecord pendingTx = tenant.orders.next();
+                checks.add(executionService.submit(tenant.tenantId, () -> {
+                    checkOrder(tenant.tenantId, pendingTx);
+                    return null;
+                }));
+                if (!tenant.orders.hasNext()) {
+                    it.remove();
+                }
+            }
+            if (waitNanos != Long.MAX_VALUE) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Waits for the submitted checks, renewing the lease every interval.
+     */
+    private void awaitChecks(CompletableFuture<Void> checks) throws SQLException, InterruptedException {
+        while (true) {
+            try {
+                checks.get(intervalMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                renewLease();
+            } catch (ExecutionException e) {
+                logger.warn("LiqPay status check failed", e.getCause());
+                return;
+            }
+        }
+    }
+
+    private void backOff(String orderId) {
+        long now = clock.getUTCNow().getMillis();
+        backoffs.compute(orderId, (key, previous) -> {
+            int attempts = previous != null ? previous.attempts + 1 : 1;
+            long delay = Math.min(MAX_BACKOFF_MILLIS, (long) intervalMillis << Math.min(attempts, 20));
+            return new Backoff(attempts, now + delay);
+        });
+    }
+
+    private static final class Backoff {
+        private final int attempts;
+        private final long nextCheckMillis;
+
+        private Backoff(int attempts, long nextCheckMillis) {
+            this.attempts = attempts;
+            this.nextCheckMillis = nextCheckMillis;
+        }
+    }
+
+    /**
+     * A tenant's due orders and its request pacing (one request every {@code 1s / rateLimit}).
+     */
+    private static final class TenantOrders {
+        private final UUID tenantId;
+        private final Iterator<PendingTransactionRecord> orders;
+        private final long spacingNanos;
+        private long nextRequestNanos = Long.MIN_VALUE;
+
+        private TenantOrders(UUID tenantId, List<PendingTransactionRecord> orders, int rateLimit) {
+            this.tenantId = tenantId;
+            this.orders = orders.iterator();
+            this.spacingNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rateLimit);
+        }
+
+        /**
+         * @return 0 if a request may be sent now, otherwise the nanoseconds until the next one may
+         */
+        private long tryAcquire(long nowNanos) {
+            if (nextRequestNanos != Long.MIN_VALUE && nowNanos - nextRequestNanos < 0L) {
+                return nextRequestNanos - nowNanos;
+            }
+            nextRequestNanos = nowNanos + spacingNanos;
+            return 0L;
+        }
+    }
+}
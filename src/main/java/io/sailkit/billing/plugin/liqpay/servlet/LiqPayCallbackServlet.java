@@ -17,8 +17,8 @@
 package io.sailkit.billing.plugin.liqpay.servlet;
 
 import java.sql.SQLException;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -29,20 +29,19 @@ import org.jooby.Status;
 import org.jooby.mvc.Consumes;
 import org.jooby.mvc.POST;
 import org.jooby.mvc.Path;
-import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.plugin.core.resources.PluginHealthcheck;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.sailkit.billing.plugin.liqpay.LiqPayConfig;
 import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
-import io.sailkit.billing.plugin.liqpay.api.LiqPayStatusMapper;
-import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
-import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.LiqPayExecutionService;
+import io.sailkit.billing.plugin.liqpay.LiqPayMetrics;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackInboxWorker;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackProcessor;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayPayloadLog;
 import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
-import io.sailkit.billing.plugin.liqpay.client.LiqPaySignature;
 import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
-import io.sailkit.billing.plugin.liqpay.dao.model.HppRequestRecord;
 import io.sailkit.billing.plugin.liqpay.dao.model.PendingTransactionRecord;
 
 /**
@@ -52,6 +51,12 @@ import io.sailkit.billing.plugin.liqpay.dao.model.PendingTransactionRecord;
  * URL: /plugins/killbill-liqpay/callback
  *
  * This endpoint does NOT require Kill Bill API key headers.
+ *
+ * With the callback inbox enabled (default), the servlet only verifies the signature, stores the
+ * raw payload and acks; {@link LiqPayCallbackInboxWorker} looks up the transaction, skips
+ * duplicates and applies it in the background. The tenant whose key verifies the signature is
+ * found from the callback's public_key; only until that tenant's configuration has been loaded on
+ * this node does the servlet read it from the order's pending transaction.
  */
 @Singleton
 @Path("/callback")
@@ -59,17 +64,26 @@ public class LiqPayCallbackServlet extends PluginHealthcheck {
 
     private static final Logger logger = LoggerFactory.getLogger(LiqPayCallbackServlet.class);
 
-    private final OSGIKillbillAPI killbillAPI;
     private final LiqPayConfigurationHandler configurationHandler;
     private final LiqPayDao dao;
+    private final LiqPayExecutionService executionService;
+    private final LiqPayCallbackProcessor callbackProcessor;
+    private final LiqPayCallbackInboxWorker inboxWorker;
+    private final LiqPayMetrics metrics;
 
     @Inject
-    public LiqPayCallbackServlet(final OSGIKillbillAPI killbillAPI,
-                                  final LiqPayConfigurationHandler configurationHandler,
-                                  final LiqPayDao dao) {
-        this.killbillAPI = killbillAPI;
+    public LiqPayCallbackServlet(final LiqPayConfigurationHandler configurationHandler,
+                                  final LiqPayDao dao,
+                                  final LiqPayExecutionService executionService,
+                                  final LiqPayCallbackProcessor callbackProcessor,
+                                  final LiqPayCallbackInboxWorker inboxWorker,
+                                  final LiqPayMetrics metrics) {
         this.configurationHandler = configurationHandler;
         this.dao = dao;
+        this.executionService = executionService;
+        this.callbackProcessor = callbackProcessor;
+        this.inboxWorker = inboxWorker;
+        this.metrics = metrics;
     }
 
     /**
@@ -85,7 +99,25 @@ public class LiqPayCallbackServlet extends PluginHealthcheck {
     @POST
     @Consumes("application/x-www-form-urlencoded")
     public Result handleCallback(final org.jooby.Request req) {
-        logger.info("Received LiqPay callback at /plugins/killbill-liqpay/callback");
+        long start = System.nanoTime();
+        CallbackSummary summary = new CallbackSummary();
+        Result result = handle(req, summary);
+        long duration = System.nanoTime() - start;
+        int httpStatus = result.status().map(Status::value).orElse(Status.OK.value());
+
+        metrics.recordCallback(httpStatus, duration);
+        LiqPayResponse response = summary.response;
+        logger.info("LiqPay callback: action={} order_id={} status={} payment_id={} http_status={} latency_ms={}",
+                response != null ? response.getAction() : null,
+                response != null ? response.getOrderId() : null,
+                response != null ? response.getStatus() : null,
+                response != null ? response.getPaymentId() : null,
+                httpStatus, TimeUnit.NANOSECONDS.toMillis(duration));
+        return result;
+    }
+
+    private Result handle(final org.jooby.Request req, final CallbackSummary summary) {
+        logger.debug("Received LiqPay callback at /plugins/killbill-liqpay/callback");
 
         try {
             // Parse form parameters
@@ -102,39 +134,41 @@ public class LiqPayCallbackServlet extends PluginHealthcheck {
                 return Results.with("Missing signature", Status.BAD_REQUEST);
             }
 
-            // Log raw callback data for debugging (helpful for LiqPay support)
-            logger.info("LiqPay Callback - Raw data (base64): {}", data);
-            logger.info("LiqPay Callback - Signature: {}", signature);
-
-            // Decode the callback data to get order_id and determine tenant
-            Map<String, Object> callbackData = LiqPaySignature.decodeData(data);
-
-            // Log full decoded callback data
-            logger.info("LiqPay Callback - Decoded data: {}", callbackData);
+            // Full (masked) payload only for sampled callbacks, and for rejected ones below
+            boolean sampled = LiqPayPayloadLog.sample();
+            if (sampled) {
+                logger.info("LiqPay callback payload: {}", LiqPayPayloadLog.data(data));
+            }
 
-            String orderId = (String) callbackData.get("order_id");
-            String publicKey = (String) callbackData.get("public_key");
+            // Decode and parse the callback data once to get order_id and determine tenant
+            LiqPayResponse response = LiqPayResponse.fromData(data);
+            summary.response = response;
 
-            logger.info("Callback for order_id: {}, public_key: {}", orderId, publicKey);
+            String orderId = response.getOrderId();
+            logger.debug("Callback for order_id: {}, public_key: {}", orderId, response.getPublicKey());
 
             if (orderId == null) {
                 logger.warn("Callback missing order_id");
                 return Results.with("Missing order_id", Status.BAD_REQUEST);
             }
 
-            // Get the pending transaction to find tenant and KB IDs
-            PendingTransactionRecord pendingTx = dao.getPendingTransaction(orderId);
-            if (pendingTx == null) {
-                logger.warn("No pending transaction found for order_id: {}", orderId);
-                // Return 200 to prevent LiqPay retries
-                return Results.with("OK", Status.OK);
+            // Find the tenant whose key signed the callback; the order's transaction is only read
+            // when the tenant is not known on this node yet, or to process the callback inline
+            PendingTransactionRecord pendingTx = null;
+            UUID tenantId = configurationHandler.getTenantForPublicKey(response.getPublicKey());
+            if (tenantId == null || !inboxWorker.isEnabled()) {
+                pendingTx = dao.getPendingTransaction(orderId);
+                if (pendingTx == null) {
+                    logger.warn("No pending transaction found for order_id: {}", orderId);
+                    // Return 200 to prevent LiqPay retries
+                    return Results.with("OK", Status.OK);
+                }
+                tenantId = pendingTx.getKbTenantId();
+                logger.debug("Found pending transaction: kbAccountId={}, kbPaymentId={}, kbTransactionId={}, tenantId={}",
+                        pendingTx.getKbAccountId(), pendingTx.getKbPaymentId(),
+                        pendingTx.getKbTransactionId(), tenantId);
             }
 
-            UUID tenantId = pendingTx.getKbTenantId();
-            logger.info("Found pending transaction: kbAccountId={}, kbPaymentId={}, kbTransactionId={}, tenantId={}",
-                    pendingTx.getKbAccountId(), pendingTx.getKbPaymentId(),
-                    pendingTx.getKbTransactionId(), tenantId);
-
             // Get configuration for tenant
             LiqPayConfig config = configurationHandler.getConfigForTenant(tenantId);
             if (config == null || !config.isConfigured()) {
@@ -143,24 +177,44 @@ public class LiqPayCallbackServlet extends PluginHealthcheck {
                 return Results.with("OK", Status.OK);
             }
 
-            // Verify signature
-            String expectedSignature = LiqPaySignature.createSignature(config.getPrivateKey(), data);
-            logger.debug("Signature verification: received={}, expected={}", signature, expectedSignature);
-
-            if (!expectedSignature.equals(signature)) {
+            // Verify signature (constant-time, with the tenant client's cached signer)
+            if (!configurationHandler.getClientForTenant(tenantId).verifyCallbackSignature(data, signature)) {
                 logger.warn("Invalid signature for callback, order_id: {}", orderId);
+                if (!sampled && LiqPayPayloadLog.onError()) {
+                    logger.warn("LiqPay callback payload: {}", LiqPayPayloadLog.data(data));
+                }
                 return Results.with("Invalid signature", Status.UNAUTHORIZED);
             }
 
-            logger.info("Signature verified successfully for order_id: {}", orderId);
-
-            // Parse the full response
-            LiqPayResponse response = LiqPayResponse.fromMap(callbackData);
-            logger.info("LiqPay callback: status={}, action={}, order_id={}, payment_id={}",
-                    response.getStatus(), response.getAction(), response.getOrderId(), response.getPaymentId());
+            logger.debug("Signature verified successfully for order_id: {}", orderId);
+
+            if (inboxWorker.isEnabled()) {
+                // Persist and ack; the inbox worker applies the callback in order per order_id
+                try {
+                    inboxWorker.enqueue(orderId, tenantId, data, signature);
+                } catch (SQLException e) {
+                    logger.error("Failed to store callback in inbox, order_id: {}", orderId, e);
+                    // Not persisted - let LiqPay deliver it again
+                    return Results.with("Error", Status.SERVER_ERROR);
+                }
+                logger.debug("Callback stored in inbox for order_id: {}", orderId);
+                return Results.with("OK", Status.OK);
+            }
 
-            // Process the callback - update DB and notify KillBill
-            processCallback(pendingTx, response, tenantId, LiqPaySignature.decodeToJson(data));
+            // Process the callback - update DB and notify KillBill. Repeated deliveries are skipped
+            // by the processor.
+            String rawJson = response.getRawJson();
+            PendingTransactionRecord transaction = pendingTx;
+            UUID transactionTenantId = tenantId;
+            if (executionService.isVirtualThreads()) {
+                // Post-processing (DB writes, hold release) runs on a virtual thread, ack right away
+                executionService.submit(tenantId, () -> {
+                    processCallback(transaction, response, transactionTenantId, rawJson);
+                    return null;
+                });
+            } else {
+                processCallback(pendingTx, response, tenantId, rawJson);
+            }
 
             return Results.with("OK", Status.OK);
 
@@ -171,131 +225,19 @@ public class LiqPayCallbackServlet extends PluginHealthcheck {
         }
     }
 
-    /**
-     * Processes the callback, updates the database, and notifies KillBill.
-     * For verification holds, automatically calls unhold to release the $1 hold after token capture.
-     */
     private void processCallback(PendingTransactionRecord pendingTx, LiqPayResponse response,
                                   UUID tenantId, String rawJson) {
-        String orderId = response.getOrderId();
-        if (orderId == null) {
-            orderId = response.getLiqpayOrderId();
-        }
-
         try {
-            // Determine if payment was successful
-            boolean isSuccess = LiqPayStatusMapper.isSuccessStatus(response.getStatus(), response.getAction());
-            boolean isFinal = LiqPayStatusMapper.isFinalStatus(response.getStatus());
-
-            logger.info("Processing callback for order {}: status={}, isSuccess={}, isFinal={}",
-                    orderId, response.getStatus(), isSuccess, isFinal);
-
-            // Update pending transaction status
-            String status = isSuccess ? "COMPLETED" : (response.isError() ? "FAILED" : "PENDING");
-            dao.updatePendingTransactionStatus(orderId, tenantId, status);
-
-            // Save the response for audit
-            dao.saveResponse(
-                    pendingTx.getKbAccountId(),
-                    pendingTx.getKbPaymentId(),
-                    pendingTx.getKbTransactionId(),
-                    pendingTx.getKbPaymentMethodId(),
-                    tenantId,
-                    mapActionToTransactionType(response.getAction()),
-                    response,
-                    rawJson
-            );
-
-            // If we received a card token, update the payment method
-            if (response.hasCardToken() && pendingTx.getKbPaymentMethodId() != null) {
-                logger.info("Updating payment method {} with card token", pendingTx.getKbPaymentMethodId());
-                dao.updatePaymentMethodToken(
-                        pendingTx.getKbPaymentMethodId(),
-                        tenantId,
-                        response.getCardToken(),
-                        response.getSenderCardMask(),
-                        response.getSenderCardType(),
-                        response.getSenderCardBank(),
-                        response.getSenderCardCountry()
-                );
-            }
-
-            // Check if this is a verification hold that needs auto-release
-            if ("hold_wait".equals(response.getStatus())) {
-                handleVerificationAutoRelease(orderId, tenantId);
-            }
-
-            // Note: We don't call notifyPendingTransactionOfStateChanged here because it requires
-            // authentication that external callbacks don't have. Instead, KillBill's Janitor will
-            // call getPaymentInfo() which returns the updated status from our liqpay_responses table.
-            // This is the same pattern used by the Stripe plugin.
-
-            logger.info("Callback processed successfully for order {}, status={}", orderId, response.getStatus());
-
+            callbackProcessor.process(pendingTx, response, tenantId, rawJson);
         } catch (SQLException e) {
             logger.error("Database error processing callback", e);
         }
     }
 
     /**
-     * Handles auto-release for verification mode.
-     * If the HPP request was created with verification=true, automatically release the hold
-     * by refunding the held amount after the card token has been captured.
-     * Note: LiqPay does not have an "unhold" action. Hold releases use the refund API.
+     * What the callback request turned out to be, for the summary log line.
      */
-    private void handleVerificationAutoRelease(String orderId, UUID tenantId) {
-        try {
-            // Check if this HPP request is a verification
-            HppRequestRecord hppRequest = dao.getHppRequestByOrderId(orderId, tenantId);
-
-            if (hppRequest != null && hppRequest.isVerification()) {
-                logger.info("Verification hold completed for order {}, auto-releasing hold via refund", orderId);
-
-                // Create client and release hold by refunding the held amount
-                LiqPayClient client = configurationHandler.createClientForTenant(tenantId);
-                LiqPayResponse releaseResponse = client.releaseHold(orderId, hppRequest.getAmount());
-
-                logger.info("Auto-release completed for order {}: status={}",
-                        orderId, releaseResponse.getStatus());
-
-                // Update HPP request status to COMPLETED
-                dao.updateHppRequestStatus(orderId, tenantId, "COMPLETED");
-
-            }
-        } catch (LiqPayException e) {
-            logger.error("Failed to auto-release verification hold for order {}: {}",
-                    orderId, e.getMessage(), e);
-            // Don't fail the callback - token is already captured
-            try {
-                dao.updateHppRequestStatus(orderId, tenantId, "RELEASE_FAILED");
-            } catch (SQLException ex) {
-                logger.error("Failed to update HPP request status", ex);
-            }
-        } catch (SQLException e) {
-            logger.error("Database error checking verification status for order {}", orderId, e);
-        }
-    }
-
-    /**
-     * Maps LiqPay action to KillBill transaction type.
-     */
-    private String mapActionToTransactionType(String action) {
-        if (action == null) {
-            return "PURCHASE";
-        }
-        switch (action) {
-            case "hold":
-                return "AUTHORIZE";
-            case "hold_completion":
-                return "CAPTURE";
-            case "refund":
-                return "REFUND";
-            case "unhold":
-                return "VOID";
-            case "pay":
-            case "paytoken":
-            default:
-                return "PURCHASE";
-        }
+    private static final class CallbackSummary {
+        private LiqPayResponse response;
     }
 }
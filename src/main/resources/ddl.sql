@@ -30,6 +30,7 @@ CREATE TABLE liqpay_payment_methods (
     -- LiqPay token data
     liqpay_card_token VARCHAR(255),
     card_mask VARCHAR(20),              -- e.g., "473119******4634"
+    card_last4 CHAR(4),                 -- last 4 digits of card_mask, for search
     card_type VARCHAR(20),              -- visa, mastercard
     card_bank VARCHAR(100),
     card_country VARCHAR(10),           -- ISO 3166-1 numeric
@@ -47,6 +48,8 @@ CREATE TABLE liqpay_payment_methods (
 
 CREATE INDEX idx_liqpay_pm_account ON liqpay_payment_methods(kb_account_id, kb_tenant_id);
 CREATE INDEX idx_liqpay_pm_token ON liqpay_payment_methods(liqpay_card_token);
+CREATE INDEX idx_liqpay_pm_last4 ON liqpay_payment_methods(kb_tenant_id, card_last4);
+CREATE INDEX idx_liqpay_pm_bank ON liqpay_payment_methods(kb_tenant_id, card_bank);
 
 
 -- 2. Store LiqPay API responses for audit/debugging and to support getPaymentInfo() calls
@@ -77,17 +80,47 @@ CREATE TABLE liqpay_responses (
     err_description TEXT,
 
     -- Full response for audit
-    raw_response TEXT,                  -- Full JSON response
+    raw_response TEXT,                  -- Full JSON response (compressed when compressPayloads=true)
 
     -- Timing
     api_call_date TIMESTAMP,
     created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
-CREATE INDEX idx_liqpay_resp_payment ON liqpay_responses(kb_payment_id);
+-- Covers lookups by payment and the capture/void/refund searches for the original hold or charge
+CREATE INDEX idx_liqpay_resp_payment ON liqpay_responses(kb_payment_id, kb_tenant_id, transaction_type, status);
 CREATE INDEX idx_liqpay_resp_transaction ON liqpay_responses(kb_transaction_id);
 CREATE INDEX idx_liqpay_resp_order ON liqpay_responses(liqpay_order_id);
+-- PostgreSQL with a non-C collation can't use the index above for the order ID prefix search
+-- (LIKE 'prefix%'), so add a pattern index there:
+--   CREATE INDEX idx_liqpay_resp_order_prefix ON liqpay_responses(liqpay_order_id varchar_pattern_ops);
+CREATE INDEX idx_liqpay_resp_liqpay_payment ON liqpay_responses(liqpay_payment_id);
 CREATE INDEX idx_liqpay_resp_tenant ON liqpay_responses(kb_tenant_id);
+-- Used by the response archiver to find rows past the retention window
+CREATE INDEX idx_liqpay_resp_created ON liqpay_responses(created_date);
+
+-- Optional: partition liqpay_responses by month of created_date, so each index stays the size of
+-- one month and old partitions can be moved to cheaper storage. The partition key has to be part
+-- of the primary key. Partitions must be created ahead of time (e.g. by a monthly job or pg_partman).
+--
+-- PostgreSQL 11+, instead of the CREATE TABLE above:
+--   CREATE TABLE liqpay_responses (
+--       record_id SERIAL,
+--       ... columns as above ...
+--       created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+--       PRIMARY KEY (record_id, created_date)
+--   ) PARTITION BY RANGE (created_date);
+--   CREATE TABLE liqpay_responses_2025_01 PARTITION OF liqpay_responses
+--       FOR VALUES FROM ('2025-01-01') TO ('2025-02-01');
+--   CREATE TABLE liqpay_responses_default PARTITION OF liqpay_responses DEFAULT;
+--
+-- MySQL 8: every unique key must include created_date, so replace the keys SERIAL creates
+--   ALTER TABLE liqpay_responses DROP INDEX record_id, DROP PRIMARY KEY,
+--       ADD PRIMARY KEY (record_id, created_date);
+--   ALTER TABLE liqpay_responses PARTITION BY RANGE COLUMNS (created_date) (
+--       PARTITION p2025_01 VALUES LESS THAN ('2025-02-01'),
+--       PARTITION pmax VALUES LESS THAN (MAXVALUE)
+--   );
 
 
 -- 3. Track pending transactions awaiting callback (for hosted page flow)
@@ -120,7 +153,8 @@ CREATE TABLE liqpay_pending_transactions (
 
 CREATE INDEX idx_liqpay_pending_tx ON liqpay_pending_transactions(kb_transaction_id, kb_tenant_id);
 CREATE INDEX idx_liqpay_pending_order ON liqpay_pending_transactions(order_id);
-CREATE INDEX idx_liqpay_pending_status ON liqpay_pending_transactions(status);
+CREATE INDEX idx_liqpay_pending_status ON liqpay_pending_transactions(status, kb_tenant_id, created_date);
+CREATE INDEX idx_liqpay_pending_payment ON liqpay_pending_transactions(kb_payment_id);
 
 
 -- 4. Track hosted payment page (HPP) requests for buildFormDescriptor flow
@@ -143,7 +177,7 @@ CREATE TABLE liqpay_hpp_requests (
     amount DECIMAL(15,5),
     currency CHAR(3),
 
-    -- Additional data (JSON) - stores data, signature, urls
+    -- Additional data (JSON) - stores data, signature, urls (compressed when compressPayloads=true)
     additional_data TEXT,
 
     -- Status tracking
@@ -159,4 +193,68 @@ CREATE TABLE liqpay_hpp_requests (
 CREATE INDEX idx_liqpay_hpp_session ON liqpay_hpp_requests(session_id);
 CREATE INDEX idx_liqpay_hpp_order ON liqpay_hpp_requests(order_id);
 CREATE INDEX idx_liqpay_hpp_account ON liqpay_hpp_requests(kb_account_id, kb_tenant_id);
-CREATE INDEX idx_liqpay_hpp_status ON liqpay_hpp_requests(status);
+CREATE INDEX idx_liqpay_hpp_status ON liqpay_hpp_requests(status, kb_tenant_id, created_date);
+
+
+-- 5. Durable inbox for LiqPay callbacks
+-- The callback servlet verifies the signature, stores the raw payload here and acks immediately.
+-- A background worker drains the inbox in order per order_id, with retries.
+CREATE TABLE liqpay_callback_inbox (
+    record_id SERIAL PRIMARY KEY,
+
+    kb_tenant_id CHAR(36) NOT NULL,
+    order_id VARCHAR(255) NOT NULL,
+
+    -- Raw callback payload as sent by LiqPay
+    data TEXT NOT NULL,                 -- Base64-encoded JSON
+    signature VARCHAR(255) NOT NULL,
+
+    -- Processing state
+    status VARCHAR(32) NOT NULL DEFAULT 'NEW', -- NEW, PROCESSING, DONE, FAILED
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error TEXT,
+
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_liqpay_inbox_status ON liqpay_callback_inbox(status, record_id);
+CREATE INDEX idx_liqpay_inbox_order ON liqpay_callback_inbox(order_id);
+
+
+-- 6. Identities of callbacks that have been applied
+-- LiqPay retries callbacks; a delivery whose (order_id, status, payment_id) is already here is skipped.
+CREATE TABLE liqpay_processed_callbacks (
+    record_id SERIAL PRIMARY KEY,
+
+    kb_tenant_id CHAR(36) NOT NULL,
+    order_id VARCHAR(255) NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    payment_id VARCHAR(255) NOT NULL DEFAULT '', -- Empty when LiqPay sent no payment_id
+
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT uq_liqpay_processed_callback UNIQUE (order_id, status, payment_id)
+);
+
+
+-- 7. Leases for background jobs that must run on a single Kill Bill node
+-- A node holds a lock until expires_date and renews it while it keeps running the job.
+CREATE TABLE liqpay_locks (
+    lock_name VARCHAR(64) PRIMARY KEY,
+    owner VARCHAR(255) NOT NULL,
+    expires_date TIMESTAMP NOT NULL
+);
+
+
+-- 8. raw_response of liqpay_responses rows past the retention window, moved by the response archiver
+-- The liqpay_responses row keeps every other column (raw_response is set to NULL).
+-- MySQL has no BYTEA: declare compressed_raw_response as LONGBLOB NOT NULL there.
+CREATE TABLE liqpay_responses_archive (
+    response_record_id BIGINT PRIMARY KEY,  -- liqpay_responses.record_id
+    kb_tenant_id CHAR(36) NOT NULL,
+    kb_payment_id CHAR(36),
+    compressed_raw_response BYTEA NOT NULL, -- raw_response, Deflate-compressed
+    archived_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayAsyncClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayClientRegistry.
+ */
+class LiqPayClientRegistryTest {
+
+    private LiqPayClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new LiqPayClientRegistry(new LiqPayConnectionPool(10, 5, 30000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    void testClientIsReusedForSameConfig() {
+        // Given
+        UUID tenantId = UUID.randomUUID();
+        LiqPayConfig config = createConfig("public_key_1");
+
+        // When
+        LiqPayClient client1 = registry.getClient(tenantId, config);
+        LiqPayClient client2 = registry.getClient(tenantId, config);
+
+        // Then
+        assertSame(client1, client2);
+    }
+
+    @Test
+    void testClientIsRecreatedWhenConfigChanges() {
+        // Given
+        UUID tenantId = UUID.randomUUID();
+        LiqPayClient client1 = registry.getClient(tenantId, createConfig("public_key_1"));
+
+        // When
+        LiqPayClient client2 = registry.getClient(tenantId, createConfig("public_key_2"));
+
+        // Then
+        assertNotSame(client1, client2);
+        assertEquals("public_key_2", client2.getPublicKey());
+    }
+
+    @Test
+    void testInvalidateDropsClient() {
+        // Given
+        UUID tenantId = UUID.randomUUID();
+        LiqPayConfig config = createConfig("public_key_1");
+        LiqPayClient client1 = registry.getClient(tenantId, config);
+
+        // When
+        registry.invalidate(tenantId);
+        LiqPayClient client2 = registry.getClient(tenantId, config);
+
+        // Then
+        assertNotSame(client1, client2);
+    }
+
+    @Test
+    void testClientsAreSeparatedPerTenant() {
+        // Given
+        LiqPayConfig config = createConfig("public_key_1");
+
+        // When
+        LiqPayClient defaultClient = registry.getClient(null, config);
+        LiqPayClient tenantClient = registry.getClient(UUID.randomUUID(), config);
+
+        // Then
+        assertNotSame(defaultClient, tenantClient);
+        assertSame(defaultClient, registry.getClient(null, config));
+    }
+
+    @Test
+    void testAsyncClientSharesCircuitBreakerOfBlockingClient() {
+        // Given
+        UUID tenantId = UUID.randomUUID();
+        LiqPayConfig config = createConfig("public_key_1");
+
+        // When
+        LiqPayAsyncClient asyncClient = registry.getAsyncClient(tenantId, config);
+        LiqPayClient client = registry.getClient(tenantId, config);
+
+        // Then
+        assertNotNull(asyncClient.getCircuitBreaker());
+        assertSame(client.getCircuitBreaker(), asyncClient.getCircuitBreaker());
+        assertNotSame(client.getCircuitBreaker(), registry.getClient(UUID.randomUUID(), config).getCircuitBreaker());
+    }
+
+    private LiqPayConfig createConfig(String publicKey) {
+        Properties properties = new Properties();
+        properties.setProperty("org.killbill.billing.plugin.liqpay.publicKey", publicKey);
+        properties.setProperty("org.killbill.billing.plugin.liqpay.privateKey", "private_key");
+        return new LiqPayConfig(properties);
+    }
+}
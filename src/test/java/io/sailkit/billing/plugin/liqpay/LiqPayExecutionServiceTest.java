@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayExecutionService.
+ */
+class LiqPayExecutionServiceTest {
+
+    @Test
+    void testSubmittedTasksRespectTenantCap() throws Exception {
+        // Given
+        LiqPayExecutionService service = new LiqPayExecutionService(true, 4, 2);
+        UUID tenantId = UUID.randomUUID();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // When
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(service.submit(tenantId, () -> {
+                int current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return current;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertTrue(maxRunning.get() <= 2, "At most 2 tasks should run concurrently");
+        assertEquals(8, service.getCompletedTasks());
+        assertEquals(0, service.getActiveTasks(tenantId));
+        service.close();
+    }
+
+    @Test
+    void testSubmitPropagatesFailure() {
+        // Given
+        LiqPayExecutionService service = new LiqPayExecutionService(false, 1, 1);
+
+        // When
+        CompletableFuture<Object> future = service.submit(null, () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        // Then
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertFalse(service.isVirtualThreads());
+        service.close();
+    }
+
+    @Test
+    void testBusyTenantDoesNotBlockOtherTenants() throws Exception {
+        // Given - three shared platform threads, two tasks per tenant
+        LiqPayExecutionService service = new LiqPayExecutionService(false, 3, 2);
+        UUID busyTenant = UUID.randomUUID();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> blocked = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            blocked.add(service.submit(busyTenant, () -> release.await(10, TimeUnit.SECONDS)));
+        }
+
+        // When
+        CompletableFuture<String> other = service.submit(UUID.randomUUID(), () -> "done");
+
+        // Then - the other tenant's task gets the free thread while the busy tenant waits in its queue
+        assertEquals("done", other.get(5, TimeUnit.SECONDS));
+        assertEquals(2, service.getActiveTasks(busyTenant));
+
+        release.countDown();
+        CompletableFuture.allOf(blocked.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(0, service.getActiveTasks(busyTenant));
+        assertEquals(7, service.getCompletedTasks());
+        service.close();
+    }
+}
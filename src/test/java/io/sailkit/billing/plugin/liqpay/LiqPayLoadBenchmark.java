@@ -0,0 +1,460 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.client.FakeLiqPayServer;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayJson;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayPaymentMethodRecord;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Load test driving {@link LiqPayPaymentPluginApi} at a fixed arrival rate against
+ * {@link FakeLiqPayServer} and an embedded H2 database behind a bounded connection pool.
+ *
+ * Each tick starts one scenario, round-robin: purchase, authorize then capture, purchase then refund,
+ * and buildFormDescriptor. Scenario latency is measured from the tick's scheduled start, so queueing
+ * behind a saturated pool shows up in the percentiles instead of silently lowering the rate.
+ * The report (p50/p99/p999 per call, throughput, DB connection wait, HTTP pool wait) is printed
+ * and written to {@code target/load-report.json}.
+ *
+ * Run with {@code mvn test -Pbenchmark -Dtest=LiqPayLoadBenchmark}. System properties:
+ * <ul>
+ *   <li>{@code load.tps} - scenarios started per second (default 200)</li>
+ *   <li>{@code load.durationSeconds} - measured duration, after a warm-up of a third of it (default 15)</li>
+ *   <li>{@code load.threads} - concurrent callers, i.e. Kill Bill request threads (default 64)</li>
+ *   <li>{@code load.apiLatencyMillis} - median stand-in API latency, log-normal (default 20)</li>
+ *   <li>{@code load.dbConnections} - database pool size (default 20)</li>
+ *   <li>{@code load.httpConnections} - HTTP connections per route (default 50)</li>
+ * </ul>
+ */
+@Tag("benchmark")
+class LiqPayLoadBenchmark {
+
+    private static final String PUBLIC_KEY = "sandbox_load_public";
+    private static final String PRIVATE_KEY = "sandbox_load_private";
+    private static final int PAYMENT_METHODS = 1000;
+
+    private static final String[] SCENARIOS = {"purchase", "authorizeCapture", "purchaseRefund", "buildFormDescriptor"};
+
+    private final int tps = Integer.getInteger("load.tps", 200);
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 15);
+    private final int threads = Integer.getInteger("load.threads", 64);
+    private final int apiLatencyMillis = Integer.getInteger("load.apiLatencyMillis", 20);
+    private final int dbConnections = Integer.getInteger("load.dbConnections", 20);
+    private final int httpConnections = Integer.getInteger("load.httpConnections", 50);
+
+    private final UUID tenantId = UUID.randomUUID();
+    private final List<UUID[]> paymentMethods = new ArrayList<>();
+
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+    private final LongAdder dbConnectionRequests = new LongAdder();
+    private final LongAdder dbWaitNanos = new LongAdder();
+    private final AtomicLong dbMaxWaitNanos = new AtomicLong();
+
+    @Test
+    void runLoad() throws Exception {
+        int warmUpTicks = tps * Math.max(1, durationSeconds / 3);
+        int ticks = tps * durationSeconds;
+        for (String name : new String[] {"purchasePayment", "authorizePayment", "capturePayment", "refundPayment",
+                "buildFormDescriptor", "scenario"}) {
+            recorders.put(name, new Recorder(ticks * 2));
+        }
+
+        JdbcConnectionPool connectionPool = JdbcConnectionPool.create((JdbcDataSource) TestDatabase.create());
+        connectionPool.setMaxConnections(dbConnections);
+        LiqPayDao dao = new LiqPayDao(timed(connectionPool));
+
+        try (FakeLiqPayServer server = FakeLiqPayServer.builder()
+                .merchant(PUBLIC_KEY, PRIVATE_KEY)
+                .latency(FakeLiqPayServer.logNormal(apiLatencyMillis, 0.5, 7L))
+                .threads(Math.max(threads, httpConnections) + 8)
+                .start()) {
+
+            LiqPayConfig config = config(server.getApiUrl());
+            LiqPayConnectionPool httpPool = new LiqPayConnectionPool(httpConnections, httpConnections, 30000);
+            LiqPayClientRegistry registry = new LiqPayClientRegistry(httpPool);
+            LiqPayConfigurationHandler configurationHandler = mock(LiqPayConfigurationHandler.class,
+                    withSettings().stubOnly());
+            when(configurationHandler.getConfigForTenant(any())).thenReturn(config);
+            when(configurationHandler.getClientForTenant(any())).thenAnswer(inv -> registry.getClient(tenantId, config));
+
+            LiqPayPaymentPluginApi api = new LiqPayPaymentPluginApi(killbillApi(), configurationHandler,
+                    clock(), dao);
+            createPaymentMethods(dao);
+
+            ExecutorService callers = Executors.newFixedThreadPool(threads);
+            try {
+                drive(api, callers, warmUpTicks, false);
+                for (Recorder recorder : recorders.values()) {
+                    recorder.reset();
+                }
+                dbConnectionRequests.reset();
+                dbWaitNanos.reset();
+                dbMaxWaitNanos.set(0);
+                long httpLeases = httpPool.getLeases();
+                long httpWaitMillis = httpPool.getLeaseWaitMillis();
+                LiqPayClient client = registry.getClient(tenantId, config);
+                long bulkheadRejections = client.getBulkheadRejections();
+
+                double elapsedSeconds = drive(api, callers, ticks, true);
+
+                report(elapsedSeconds, ticks, httpPool.getLeases() - httpLeases,
+                        httpPool.getLeaseWaitMillis() - httpWaitMillis, httpPool.getLeaseTimeouts(),
+                        client.getBulkheadRejections() - bulkheadRejections, server);
+            } finally {
+                callers.shutdownNow();
+                registry.close();
+            }
+        } finally {
+            connectionPool.dispose();
+        }
+    }
+
+    /**
+     * Starts {@code ticks} scenarios at the target rate and waits for all of them.
+     *
+     * @return seconds from the first scheduled start to the last completion
+     */
+    private double drive(LiqPayPaymentPluginApi api, ExecutorService callers, int ticks, boolean record)
+            throws InterruptedException {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / tps;
+        AtomicInteger remaining = new AtomicInteger(ticks);
+        Object done = new Object();
+        AtomicLong lastCompletion = new AtomicLong();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            long scheduled = start + i * periodNanos;
+            long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            String scenario = SCENARIOS[i % SCENARIOS.length];
+            UUID[] paymentMethod = paymentMethods.get(i % paymentMethods.size());
+            callers.execute(() -> {
+                boolean ok;
+                try {
+                    ok = runScenario(api, scenario, paymentMethod);
+                } catch (Exception | AssertionError e) {
+                    ok = false;
+                }
+                long now = System.nanoTime();
+                if (record) {
+                    recorders.get("scenario").record(now - scheduled, ok);
+                }
+                lastCompletion.accumulateAndGet(now, Math::max);
+                if (remaining.decrementAndGet() == 0) {
+                    synchronized (done) {
+                        done.notifyAll();
+                    }
+                }
+            });
+        }
+        synchronized (done) {
+            while (remaining.get() > 0) {
+                done.wait(1000);
+            }
+        }
+        return (lastCompletion.get() - start) / 1e9;
+    }
+
+    private boolean runScenario(LiqPayPaymentPluginApi api, String scenario, UUID[] paymentMethod) throws Exception {
+        UUID accountId = paymentMethod[0];
+        UUID paymentMethodId = paymentMethod[1];
+        UUID paymentId = UUID.randomUUID();
+        BigDecimal amount = new BigDecimal("100.00");
+        CallContext context = context();
+        List<PluginProperty> none = Collections.emptyList();
+
+        switch (scenario) {
+            case "purchase":
+                return call("purchasePayment", () -> api.purchasePayment(accountId, paymentId, UUID.randomUUID(),
+                        paymentMethodId, amount, Currency.UAH, none, context), PaymentPluginStatus.PROCESSED);
+            case "authorizeCapture":
+                return call("authorizePayment", () -> api.authorizePayment(accountId, paymentId, UUID.randomUUID(),
+                        paymentMethodId, amount, Currency.UAH, none, context), null)
+                        && call("capturePayment", () -> api.capturePayment(accountId, paymentId, UUID.randomUUID(),
+                        paymentMethodId, amount, Currency.UAH, none, context), PaymentPluginStatus.PROCESSED);
+            case "purchaseRefund":
+                return call("purchasePayment", () -> api.purchasePayment(accountId, paymentId, UUID.randomUUID(),
+                        paymentMethodId, amount, Currency.UAH, none, context), PaymentPluginStatus.PROCESSED)
+                        && call("refundPayment", () -> api.refundPayment(accountId, paymentId, UUID.randomUUID(),
+                        paymentMethodId, amount, Currency.UAH, none, context), null);
+            default:
+                long start = System.nanoTime();
+                boolean ok = api.buildFormDescriptor(accountId, Arrays.asList(
+                        new PluginProperty("amount", "100.00", false),
+                        new PluginProperty("kb_payment_method_id", paymentMethodId.toString(), false)),
+                        none, context) != null;
+                recorders.get("buildFormDescriptor").record(System.nanoTime() - start, ok);
+                return ok;
+        }
+    }
+
+    private boolean call(String name, PluginCall call, PaymentPluginStatus expected) throws Exception {
+        long start = System.nanoTime();
+        PaymentTransactionInfoPlugin result = call.call();
+        PaymentPluginStatus status = result.getStatus();
+        boolean ok = expected != null ? status == expected
+                : status != PaymentPluginStatus.CANCELED && status != PaymentPluginStatus.ERROR;
+        recorders.get(name).record(System.nanoTime() - start, ok);
+        return ok;
+    }
+
+    private void report(double elapsedSeconds, int ticks, long httpLeases, long httpWaitMillis, long httpTimeouts,
+                        long bulkheadRejections, FakeLiqPayServer server) throws Exception {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetTps", tps);
+        report.put("achievedTps", Math.round(ticks / elapsedSeconds * 10) / 10.0);
+        report.put("durationSeconds", Math.round(elapsedSeconds * 10) / 10.0);
+        report.put("threads", threads);
+        report.put("apiLatencyMillis", apiLatencyMillis);
+
+        System.out.printf("%-20s %8s %7s %9s %9s %9s %9s%n", "call", "count", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Map<String, Object> calls = new LinkedHashMap<>();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+            long[] sorted = recorder.sorted();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", sorted.length);
+            stats.put("errors", recorder.errors.sum());
+            stats.put("p50Millis", millis(percentile(sorted, 0.50)));
+            stats.put("p99Millis", millis(percentile(sorted, 0.99)));
+            stats.put("p999Millis", millis(percentile(sorted, 0.999)));
+            stats.put("maxMillis", millis(sorted.length > 0 ? sorted[sorted.length - 1] : 0));
+            calls.put(entry.getKey(), stats);
+            System.out.printf("%-20s %8d %7d %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), sorted.length,
+                    recorder.errors.sum(), stats.get("p50Millis"), stats.get("p99Millis"), stats.get("p999Millis"),
+                    stats.get("maxMillis"));
+        }
+        report.put("calls", calls);
+
+        long dbRequests = dbConnectionRequests.sum();
+        Map<String, Object> db = new LinkedHashMap<>();
+        db.put("poolSize", dbConnections);
+        db.put("connections", dbRequests);
+        db.put("totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(dbWaitNanos.sum()));
+        db.put("avgWaitMillis", dbRequests > 0 ? millis(dbWaitNanos.sum() / dbRequests) : 0.0);
+        db.put("maxWaitMillis", millis(dbMaxWaitNanos.get()));
+        report.put("db", db);
+
+        Map<String, Object> http = new LinkedHashMap<>();
+        http.put("poolSize", httpConnections);
+        http.put("leases", httpLeases);
+        http.put("totalWaitMillis", httpWaitMillis);
+        http.put("avgWaitMillis", httpLeases > 0 ? Math.round(httpWaitMillis * 1000.0 / httpLeases) / 1000.0 : 0.0);
+        http.put("leaseTimeouts", httpTimeouts);
+        http.put("bulkheadRejections", bulkheadRejections);
+        http.put("apiRequests", server.getRequests());
+        report.put("http", http);
+
+        System.out.printf("throughput: target=%d/s achieved=%.1f/s over %.1fs%n", tps, ticks / elapsedSeconds, elapsedSeconds);
+        System.out.println("db: " + db);
+        System.out.println("http: " + http);
+
+        File file = new File(System.getProperty("load.report", "target/load-report.json"));
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(file.toPath(), LiqPayJson.toJson(report).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Load report written to " + file.getAbsolutePath());
+    }
+
+    private LiqPayConfig config(String apiUrl) {
+        Properties properties = new Properties();
+        properties.setProperty("org.killbill.billing.plugin.liqpay.publicKey", PUBLIC_KEY);
+        properties.setProperty("org.killbill.billing.plugin.liqpay.privateKey", PRIVATE_KEY);
+        properties.setProperty("org.killbill.billing.plugin.liqpay.apiUrl", apiUrl);
+        properties.setProperty("org.killbill.billing.plugin.liqpay.currencies", "UAH");
+        return new LiqPayConfig(properties);
+    }
+
+    private void createPaymentMethods(LiqPayDao dao) throws Exception {
+        for (int i = 0; i < PAYMENT_METHODS; i++) {
+            UUID accountId = UUID.randomUUID();
+            UUID paymentMethodId = UUID.randomUUID();
+            LiqPayPaymentMethodRecord record = new LiqPayPaymentMethodRecord();
+            record.setKbAccountId(accountId);
+            record.setKbPaymentMethodId(paymentMethodId);
+            record.setKbTenantId(tenantId);
+            record.setIsDefault(true);
+            record.setIsDeleted(false);
+            record.setLiqpayCardToken("token-" + i);
+            dao.insertPaymentMethod(record);
+            paymentMethods.add(new UUID[] {accountId, paymentMethodId});
+        }
+    }
+
+    private CallContext context() {
+        CallContext context = mock(CallContext.class, withSettings().stubOnly());
+        when(context.getTenantId()).thenReturn(tenantId);
+        return context;
+    }
+
+    private static Clock clock() {
+        Clock clock = mock(Clock.class, withSettings().stubOnly());
+        when(clock.getUTCNow()).thenAnswer(inv -> DateTime.now());
+        return clock;
+    }
+
+    /**
+     * Kill Bill APIs used by buildFormDescriptor: account lookup and authorization creation.
+     */
+    private static OSGIKillbillAPI killbillApi() throws Exception {
+        Account account = mock(Account.class, withSettings().stubOnly());
+        AccountUserApi accountUserApi = mock(AccountUserApi.class, withSettings().stubOnly());
+        when(accountUserApi.getAccountById(any(), any())).thenReturn(account);
+
+        PaymentApi paymentApi = mock(PaymentApi.class, withSettings().stubOnly());
+        when(paymentApi.createAuthorization(any(), any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(inv -> {
+                    PaymentTransaction transaction = mock(PaymentTransaction.class, withSettings().stubOnly());
+                    when(transaction.getId()).thenReturn(UUID.randomUUID());
+                    Payment payment = mock(Payment.class, withSettings().stubOnly());
+                    when(payment.getId()).thenReturn(UUID.randomUUID());
+                    when(payment.getTransactions()).thenReturn(Collections.singletonList(transaction));
+                    return payment;
+                });
+
+        OSGIKillbillAPI killbillAPI = mock(OSGIKillbillAPI.class, withSettings().stubOnly());
+        when(killbillAPI.getAccountUserApi()).thenReturn(accountUserApi);
+        when(killbillAPI.getPaymentApi()).thenReturn(paymentApi);
+        return killbillAPI;
+    }
+
+    /**
+     * Wraps the pool so the time spent in getConnection() (waiting for a free connection) is recorded.
+     */
+    private DataSource timed(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    boolean getConnection = "getConnection".equals(method.getName());
+                    long start = System.nanoTime();
+                    try {
+                        return method.invoke(dataSource, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (getConnection) {
+                            long waited = System.nanoTime() - start;
+                            dbConnectionRequests.increment();
+                            dbWaitNanos.add(waited);
+                            dbMaxWaitNanos.accumulateAndGet(waited, Math::max);
+                        }
+                    }
+                });
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    @FunctionalInterface
+    private interface PluginCall {
+        PaymentTransactionInfoPlugin call() throws Exception;
+    }
+
+    /**
+     * Fixed-capacity latency recorder; samples beyond the capacity are dropped.
+     */
+    private static final class Recorder {
+        private final long[] samples;
+        private final AtomicInteger size = new AtomicInteger();
+        private final LongAdder errors = new LongAdder();
+
+        private Recorder(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private void record(long nanos, boolean ok) {
+            int index = size.getAndIncrement();
+            if (index < samples.length) {
+                samples[index] = nanos;
+            }
+            if (!ok) {
+                errors.increment();
+            }
+        }
+
+        private void reset() {
+            size.set(0);
+            errors.reset();
+        }
+
+        private long[] sorted() {
+            long[] copy = Arrays.copyOf(samples, Math.min(size.get(), samples.length));
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.commons.metrics.api.Counter;
+import org.killbill.commons.metrics.api.Gauge;
+import org.killbill.commons.metrics.api.MetricRegistry;
+import org.killbill.commons.metrics.api.Timer;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayConnectionPool;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayRequestListener;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for LiqPayMetrics.
+ */
+class LiqPayMetricsTest {
+
+    private final Map<String, Timer> timers = new HashMap<>();
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final Map<String, Gauge<?>> gauges = new HashMap<>();
+    private MetricRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = mock(MetricRegistry.class);
+        when(registry.timer(anyString())).thenAnswer(inv -> timers.computeIfAbsent(inv.getArgument(0), n -> mock(Timer.class)));
+        when(registry.counter(anyString())).thenAnswer(inv -> counters.computeIfAbsent(inv.getArgument(0), n -> mock(Counter.class)));
+        when(registry.gauge(anyString(), any())).thenAnswer(inv -> {
+            gauges.put(inv.getArgument(0), inv.getArgument(1));
+            return inv.getArgument(1);
+        });
+    }
+
+    @Test
+    void testApiCallsRecordLatencyStatusAndErrorCode() {
+        // Given
+        UUID tenantId = UUID.randomUUID();
+        LiqPayRequestListener listener = new LiqPayMetrics(registry).apiListener(tenantId);
+        LiqPayResponse declined = response("failure", "limit_exceeded");
+
+        // When
+        listener.onRequestCompleted("paytoken", 5_000_000L, response("success", null), null);
+        listener.onRequestCompleted("paytoken", 7_000_000L, declined, new LiqPayException(declined));
+        listener.onRequestCompleted("status", 9_000_000L, null, new LiqPayException("timeout", new IOException()));
+
+        // Then
+        verify(timers.get("liqpay.api.paytoken")).update(5_000_000L, TimeUnit.NANOSECONDS);
+        verify(timers.get("liqpay.api.paytoken")).update(7_000_000L, TimeUnit.NANOSECONDS);
+        verify(timers.get("liqpay.api.paytoken.tenant." + tenantId)).update(7_000_000L, TimeUnit.NANOSECONDS);
+        verify(counters.get("liqpay.api.paytoken.status.success")).inc(1);
+        verify(counters.get("liqpay.api.paytoken.status.failure")).inc(1);
+        verify(counters.get("liqpay.api.paytoken.err_code.limit_exceeded")).inc(1);
+        verify(counters.get("liqpay.api.status.status.transport_error")).inc(1);
+        assertEquals(4, counters.size());
+    }
+
+    @Test
+    void testConnectionPoolGaugesAreRemovedOnClose() {
+        // Given
+        LiqPayMetrics metrics = new LiqPayMetrics(registry);
+        LiqPayConnectionPool pool = new LiqPayConnectionPool(10, 5, 1000);
+
+        try {
+            // When
+            metrics.registerConnectionPool(pool);
+
+            // Then
+            assertEquals(10, gauges.get("liqpay.http.pool.max").getValue());
+            assertEquals(0, gauges.get("liqpay.http.pool.leased").getValue());
+            assertEquals(0L, gauges.get("liqpay.http.pool.lease_timeouts").getValue());
+
+            metrics.close();
+            for (String name : gauges.keySet()) {
+                verify(registry).remove(eq(name));
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testCallbackTimersAndDisabledMetrics() {
+        // Given
+        LiqPayMetrics metrics = new LiqPayMetrics(registry);
+        LiqPayMetrics disabled = new LiqPayMetrics(null);
+
+        // When
+        metrics.recordCallback(200, 1_000_000L);
+        metrics.recordCallback(401, 2_000_000L);
+        disabled.recordCallback(200, 1_000_000L);
+
+        // Then
+        verify(timers.get("liqpay.callback")).update(2_000_000L, TimeUnit.NANOSECONDS);
+        verify(timers.get("liqpay.callback.http_status.401")).update(2_000_000L, TimeUnit.NANOSECONDS);
+        assertFalse(disabled.isEnabled());
+        assertSame(LiqPayRequestListener.NONE, disabled.apiListener(null));
+    }
+
+    @Test
+    void testNamePartKeepsMetricNamesSafe() {
+        assertEquals("err_payment", LiqPayMetrics.namePart("err_payment"));
+        assertEquals("a_b_c", LiqPayMetrics.namePart("a.b/c"));
+        assertEquals("none", LiqPayMetrics.namePart(null));
+        assertEquals(64, LiqPayMetrics.namePart("x".repeat(100)).length());
+    }
+
+    private static LiqPayResponse response(String status, String errCode) {
+        LiqPayResponse response = new LiqPayResponse();
+        response.setStatus(status);
+        response.setErrCode(errCode);
+        return response;
+    }
+}
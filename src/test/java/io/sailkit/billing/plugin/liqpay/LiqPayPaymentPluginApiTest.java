@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.PaymentMethodPlugin;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
+import org.killbill.clock.DefaultClock;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayPaymentMethodRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the LiqPayPaymentPluginApi searches.
+ */
+class LiqPayPaymentPluginApiTest {
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    private LiqPayDao dao;
+    private LiqPayPaymentPluginApi api;
+    private TenantContext context;
+
+    @BeforeEach
+    void setUp() {
+        dao = new LiqPayDao(TestDatabase.create());
+        api = new LiqPayPaymentPluginApi(mock(OSGIKillbillAPI.class), mock(LiqPayConfigurationHandler.class),
+                new DefaultClock(), dao);
+        context = mock(TenantContext.class);
+        when(context.getTenantId()).thenReturn(tenantId);
+    }
+
+    @Test
+    void testSearchPaymentsPagesThroughAllMatches() throws Exception {
+        // Given - two responses found by order ID prefix, one by LiqPay payment ID
+        List<UUID> payments = new ArrayList<>();
+        for (String orderId : new String[]{"1234-a", "other", "1234-b", "1234-c"}) {
+            UUID paymentId = UUID.randomUUID();
+            LiqPayResponse response = new LiqPayResponse();
+            response.setOrderId(orderId);
+            response.setStatus("success");
+            response.setPaymentId("other".equals(orderId) ? 1234L : null);
+            dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, "PURCHASE", response, "{}");
+            payments.add(paymentId);
+        }
+
+        // When
+        List<UUID> found = pageThrough(offset -> api.searchPayments("1234", offset, 3L, List.of(), context),
+                PaymentTransactionInfoPlugin::getKbPaymentId);
+
+        // Then
+        assertEquals(payments, found);
+    }
+
+    @Test
+    void testSearchPaymentMethodsPagesThroughAllMatches() throws Exception {
+        // Given
+        List<UUID> paymentMethods = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            LiqPayPaymentMethodRecord record = new LiqPayPaymentMethodRecord();
+            record.setKbAccountId(UUID.randomUUID());
+            record.setKbPaymentMethodId(UUID.randomUUID());
+            record.setKbTenantId(tenantId);
+            record.setCardMask("473119******4634");
+            record.setCardType("visa");
+            record.setCardBank("PrivatBank");
+            dao.insertPaymentMethod(record);
+            paymentMethods.add(record.getKbPaymentMethodId());
+        }
+
+        // When
+        List<UUID> found = pageThrough(offset -> api.searchPaymentMethods("4634", offset, 2L, List.of(), context),
+                PaymentMethodPlugin::getKbPaymentMethodId);
+
+        // Then
+        assertEquals(paymentMethods, found);
+    }
+
+    /**
+     * Follows next offsets from the first page until there is none, checking each page's total.
+     */
+    private static <T> List<UUID> pageThrough(Search<T> search, Function<T, UUID> id) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        Long offset = 0L;
+        while (offset != null) {
+            try (Pagination<T> page = search.page(offset)) {
+                assertEquals(offset, page.getCurrentOffset());
+                page.forEach(item -> ids.add(id.apply(item)));
+                offset = page.getNextOffset();
+                assertTrue(page.getTotalNbRecords() > 0);
+            }
+        }
+        return ids;
+    }
+
+    @FunctionalInterface
+    private interface Search<T> {
+        Pagination<T> page(Long offset) throws Exception;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.api;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayTransactionInfoPlugin.
+ */
+class LiqPayTransactionInfoPluginTest {
+
+    @Test
+    void testFromRecordMapsStoredColumns() {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        LiqPayResponseRecord record = record("failure", "pay");
+        record.setErrCode("err_limit");
+        record.setErrDescription("Limit exceeded");
+
+        // When
+        LiqPayTransactionInfoPlugin info = LiqPayTransactionInfoPlugin.fromRecord(paymentId, record, null);
+
+        // Then
+        assertEquals(paymentId, info.getKbPaymentId());
+        assertEquals(record.getKbTransactionId(), info.getKbTransactionPaymentId());
+        assertEquals(TransactionType.PURCHASE, info.getTransactionType());
+        assertEquals(Currency.UAH, info.getCurrency());
+        assertEquals(PaymentPluginStatus.ERROR, info.getStatus());
+        assertEquals("err_limit", info.getGatewayErrorCode());
+        assertEquals("order-1", info.getFirstPaymentReferenceId());
+        assertEquals("123", info.getSecondPaymentReferenceId());
+        assertEquals(record.getApiCallDate().getTime(), info.getCreatedDate().getMillis());
+        assertEquals(1, info.getProperties().size());
+        assertEquals("liqpay_status", info.getProperties().get(0).getKey());
+    }
+
+    @Test
+    void testFromRecordExposesRawResponseWhenLoaded() {
+        // When
+        LiqPayTransactionInfoPlugin info = LiqPayTransactionInfoPlugin.fromRecord(UUID.randomUUID(),
+                record("success", "pay"), "{\"status\":\"success\"}");
+
+        // Then
+        assertEquals(PaymentPluginStatus.PROCESSED, info.getStatus());
+        assertNull(info.getGatewayErrorCode());
+        assertTrue(info.getProperties().stream()
+                .anyMatch(p -> "raw_response".equals(p.getKey()) && "{\"status\":\"success\"}".equals(p.getValue())));
+    }
+
+    private static LiqPayResponseRecord record(String status, String action) {
+        LiqPayResponseRecord record = new LiqPayResponseRecord();
+        record.setRecordId(1L);
+        record.setKbTransactionId(UUID.randomUUID());
+        record.setLiqpayOrderId("order-1");
+        record.setLiqpayPaymentId("123");
+        record.setTransactionType("PURCHASE");
+        record.setAction(action);
+        record.setStatus(status);
+        record.setAmount(new BigDecimal("100.00"));
+        record.setCurrency("UAH");
+        record.setApiCallDate(new Timestamp(1700000000000L));
+        record.setCreatedDate(new Timestamp(1700000000000L));
+        return record;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.callback;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayCallbackDeduplicator.
+ */
+class LiqPayCallbackDeduplicatorTest {
+
+    private LiqPayDao dao;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dao = mock(LiqPayDao.class);
+    }
+
+    @Test
+    void testDuplicateDetectedFromCacheWithoutDatabase() throws Exception {
+        // Given
+        LiqPayCallbackDeduplicator deduplicator = new LiqPayCallbackDeduplicator(dao, 10);
+        deduplicator.remember(response("order-1", "success", 100L));
+
+        // When
+        boolean duplicate = deduplicator.isDuplicate(response("order-1", "success", 100L));
+
+        // Then
+        assertTrue(duplicate);
+        verifyNoInteractions(dao);
+        assertEquals(1, deduplicator.getCacheHits());
+    }
+
+    @Test
+    void testDifferentStatusIsNotDuplicate() throws Exception {
+        // Given
+        LiqPayCallbackDeduplicator deduplicator = new LiqPayCallbackDeduplicator(dao, 10);
+        deduplicator.remember(response("order-1", "hold_wait", 100L));
+
+        // When
+        boolean duplicate = deduplicator.isDuplicate(response("order-1", "success", 100L));
+
+        // Then
+        assertFalse(duplicate);
+        verify(dao).isCallbackProcessed("order-1", "success", "100");
+    }
+
+    @Test
+    void testDuplicateDetectedFromDatabaseAfterEviction() throws Exception {
+        // Given
+        LiqPayCallbackDeduplicator deduplicator = new LiqPayCallbackDeduplicator(dao, 1);
+        deduplicator.remember(response("order-1", "success", 1L));
+        deduplicator.remember(response("order-2", "success", 2L));
+        when(dao.isCallbackProcessed("order-1", "success", "1")).thenReturn(true);
+
+        // When
+        boolean duplicate = deduplicator.isDuplicate(response("order-1", "success", 1L));
+
+        // Then
+        assertTrue(duplicate);
+        assertEquals(0, deduplicator.getCacheHits());
+        assertEquals(1, deduplicator.getDatabaseHits());
+    }
+
+    @Test
+    void testMissingPaymentIdStoredAsEmpty() throws Exception {
+        // Given
+        LiqPayCallbackDeduplicator deduplicator = new LiqPayCallbackDeduplicator(dao, 10);
+
+        // When
+        deduplicator.isDuplicate(response("order-1", "error", null));
+
+        // Then
+        verify(dao).isCallbackProcessed("order-1", "error", "");
+    }
+
+    @Test
+    void testFailedClaimCountsAsDatabaseHitAndIsNotCached() throws Exception {
+        // Given
+        LiqPayCallbackDeduplicator deduplicator = new LiqPayCallbackDeduplicator(dao, 10);
+        LiqPayDao.UnitOfWork uow = mock(LiqPayDao.UnitOfWork.class);
+        when(dao.insertProcessedCallback(uow, tenantId, "order-1", "success", "100")).thenReturn(false);
+
+        // When
+        boolean claimed = deduplicator.claim(uow, tenantId, response("order-1", "success", 100L));
+
+        // Then
+        assertFalse(claimed);
+        assertEquals(1, deduplicator.getDatabaseHits());
+        assertFalse(deduplicator.isCached(response("order-1", "success", 100L)));
+    }
+
+    private static LiqPayResponse response(String orderId, String status, Long paymentId) {
+        LiqPayResponse response = new LiqPayResponse();
+        response.setOrderId(orderId);
+        response.setStatus(status);
+        response.setPaymentId(paymentId);
+        return response;
+    }
+}
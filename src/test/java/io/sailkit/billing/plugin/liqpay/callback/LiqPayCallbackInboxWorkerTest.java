@@ -0,0 +1,234 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.callback;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.DefaultClock;
+import org.mockito.InOrder;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayExecutionService;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.CallbackInboxRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayCallbackInboxWorker.
+ */
+class LiqPayCallbackInboxWorkerTest {
+
+    private LiqPayDao dao;
+    private LiqPayCallbackProcessor processor;
+    private LiqPayExecutionService executionService;
+    private LiqPayCallbackInboxWorker worker;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dao = mock(LiqPayDao.class);
+        processor = mock(LiqPayCallbackProcessor.class);
+        executionService = new LiqPayExecutionService(false, 2, 2);
+        worker = new LiqPayCallbackInboxWorker(dao, processor, executionService, new DefaultClock(),
+                true, 1000, 100, 3);
+        when(dao.claimCallbackInboxEntry(anyLong(), any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executionService.close();
+    }
+
+    @Test
+    void testDrainOrderProcessesEntriesInOrder() throws Exception {
+        // Given
+        CallbackInboxRecord first = entry(1L, "order-1", 0);
+        CallbackInboxRecord second = entry(2L, "order-1", 0);
+
+        when(dao.getNextCallbackInboxEntry(eq("order-1"), any())).thenReturn(second, (CallbackInboxRecord) null);
+
+        // When
+        worker.drainOrder(first);
+
+        // Then
+        InOrder inOrder = inOrder(processor, dao);
+        inOrder.verify(processor).process(first);
+        inOrder.verify(dao).completeCallbackInboxEntry(eq(1L), any());
+        inOrder.verify(processor).process(second);
+        inOrder.verify(dao).completeCallbackInboxEntry(eq(2L), any());
+        assertEquals(2, worker.getProcessedEntries());
+    }
+
+    @Test
+    void testFailedEntryBlocksLaterEntriesAndIsRetried() throws Exception {
+        // Given
+        CallbackInboxRecord first = entry(1L, "order-1", 0);
+        doThrow(new SQLException("db down")).when(processor).process(first);
+
+        // When
+        worker.drainOrder(first);
+
+        // Then
+        verify(dao).failCallbackInboxEntry(eq(1L), eq(1), any(), anyString(), eq(false), any());
+        verify(dao, never()).getNextCallbackInboxEntry(anyString(), any());
+        assertEquals(1, worker.getRetriedEntries());
+    }
+
+    @Test
+    void testEntryMarkedFailedAfterMaxAttempts() throws Exception {
+        // Given
+        CallbackInboxRecord entry = entry(1L, "order-1", 2);
+        doThrow(new SQLException("db down")).when(processor).process(entry);
+
+        // When
+        worker.drainOrder(entry);
+
+        // Then
+        verify(dao).failCallbackInboxEntry(eq(1L), eq(3), any(), anyString(), eq(true), any());
+        assertEquals(1, worker.getFailedEntries());
+    }
+
+    @Test
+    void testRetryingEntriesDoNotStarveNewCallbacks() throws Exception {
+        // Given - more entries waiting for a retry than one poll fetches
+        LiqPayDao database = new LiqPayDao(TestDatabase.create());
+        LiqPayCallbackInboxWorker worker = worker(database, 5);
+        UUID tenantId = UUID.randomUUID();
+        Timestamp now = new Timestamp(new DefaultClock().getUTCNow().getMillis());
+        for (int i = 0; i < 10; i++) {
+            database.insertCallbackInbox("order-retry-" + i, tenantId, "data", "signature", now);
+        }
+        Timestamp retryAt = new Timestamp(now.getTime() + 600000L);
+        for (CallbackInboxRecord entry : database.getPendingCallbackInboxEntries(now, 100)) {
+            database.failCallbackInboxEntry(entry.getRecordId(), 1, retryAt, "db down", false, now);
+        }
+        database.insertCallbackInbox("order-new", tenantId, "data", "signature", now);
+
+        // When
+        worker.poll();
+
+        // Then
+        verify(processor, timeout(5000)).process(argThat(entry -> "order-new".equals(entry.getOrderId())));
+        verify(processor, never()).process(argThat(entry -> entry.getOrderId().startsWith("order-retry-")));
+    }
+
+    @Test
+    void testStaleClaimCountsAsAttempt() throws Exception {
+        // Given - two entries left in PROCESSING by a node that died, one already retried twice
+        LiqPayDao database = new LiqPayDao(TestDatabase.create());
+        LiqPayCallbackInboxWorker worker = worker(database, 100);
+        UUID tenantId = UUID.randomUUID();
+        Timestamp now = new Timestamp(new DefaultClock().getUTCNow().getMillis());
+        Timestamp claimedAt = new Timestamp(now.getTime() - LiqPayCallbackInboxWorker.STALE_CLAIM_MILLIS - 60000L);
+        database.insertCallbackInbox("order-crashing", tenantId, "data", "signature", now);
+        database.insertCallbackInbox("order-orphaned", tenantId, "data", "signature", now);
+        for (CallbackInboxRecord entry : database.getPendingCallbackInboxEntries(now, 100)) {
+            if ("order-crashing".equals(entry.getOrderId())) {
+                database.failCallbackInboxEntry(entry.getRecordId(), 2, now, "node died", false, now);
+            }
+            assertTrue(database.claimCallbackInboxEntry(entry.getRecordId(), claimedAt));
+        }
+
+        // When
+        worker.poll();
+
+        // Then
+        verify(processor, timeout(5000)).process(argThat(entry ->
+                "order-orphaned".equals(entry.getOrderId()) && entry.getAttempts() == 1));
+        verify(processor, never()).process(argThat(entry -> "order-crashing".equals(entry.getOrderId())));
+        assertEquals(1, worker.getFailedEntries());
+        assertEquals(1, worker.getRetriedEntries());
+    }
+
+    @Test
+    void testOrderIsDrainedInOrderAcrossWorkers() throws Exception {
+        // Given - two nodes polling one inbox, the first entry of the order is slow
+        LiqPayDao database = new LiqPayDao(TestDatabase.create());
+        LiqPayCallbackInboxWorker nodeA = worker(database, 100);
+        LiqPayCallbackInboxWorker nodeB = worker(database, 100);
+        UUID tenantId = UUID.randomUUID();
+        Timestamp now = new Timestamp(new DefaultClock().getUTCNow().getMillis());
+        for (int i = 0; i < 3; i++) {
+            database.insertCallbackInbox("order-1", tenantId, "data-" + i, "signature", now);
+        }
+
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            CallbackInboxRecord entry = invocation.getArgument(0);
+            processed.add(entry.getData());
+            if ("data-0".equals(entry.getData())) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(processor).process(any());
+
+        // When - node A claims the first entry, node B polls while it is being processed
+        nodeA.poll();
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        nodeB.poll();
+        assertEquals(Arrays.asList("data-0"), processed);
+
+        releaseFirst.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed.size() < 3 && System.nanoTime() < deadline) {
+            nodeB.poll();
+            Thread.sleep(10);
+        }
+
+        // Then
+        assertEquals(Arrays.asList("data-0", "data-1", "data-2"), processed);
+    }
+
+    @Test
+    void testRetryDelayIsCapped() {
+        assertEquals(LiqPayCallbackInboxWorker.BASE_RETRY_DELAY_MILLIS, LiqPayCallbackInboxWorker.retryDelayMillis(1));
+        assertEquals(LiqPayCallbackInboxWorker.BASE_RETRY_DELAY_MILLIS * 2, LiqPayCallbackInboxWorker.retryDelayMillis(2));
+        assertEquals(LiqPayCallbackInboxWorker.MAX_RETRY_DELAY_MILLIS, LiqPayCallbackInboxWorker.retryDelayMillis(50));
+    }
+
+    private LiqPayCallbackInboxWorker worker(LiqPayDao database, int batchSize) {
+        return new LiqPayCallbackInboxWorker(database, processor, executionService, new DefaultClock(),
+                true, 1000, batchSize, 3);
+    }
+
+    private static CallbackInboxRecord entry(long recordId, String orderId, int attempts) {
+        CallbackInboxRecord record = new CallbackInboxRecord();
+        record.setRecordId(recordId);
+        record.setOrderId(orderId);
+        record.setKbTenantId(UUID.randomUUID());
+        record.setStatus("NEW");
+        record.setAttempts(attempts);
+        record.setNextAttemptDate(new Timestamp(0L));
+        return record;
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embeddable stand-in for the LiqPay API, for end-to-end, load and latency tests.
+ *
+ * Serves {@code POST /api/request} on a local port. Requests are checked with {@link LiqPaySignature}
+ * against the private key registered for their {@code public_key}. The server keeps order state in
+ * memory and simulates {@code pay}, {@code paytoken}, {@code hold}, {@code hold_completion},
+ * {@code refund} and {@code status}. Response latency and error rates are configurable and seeded,
+ * so runs are reproducible. When a request carries {@code server_url} (or a callback URL is set),
+ * a signed callback is POSTed there like LiqPay does, i.e. to the plugin's {@code /callback} route.
+ *
+ * Point a tenant at it with {@code org.killbill.billing.plugin.liqpay.apiUrl=}{@link #getApiUrl()}.
+ */
+public final class FakeLiqPayServer implements AutoCloseable {
+
+    public static final String ERROR_INVALID_SIGNATURE = "invalid_signature";
+    public static final String ERROR_PAYMENT_NOT_FOUND = "payment_not_found";
+    public static final String ERROR_INVALID_ACTION = "invalid_action";
+    public static final String ERROR_SIMULATED = "simulated_error";
+
+    private final Map<String, String> privateKeys;
+    private final LongSupplier latency;
+    private final double errorRate;
+    private final double httpErrorRate;
+    private final String callbackUrl;
+    private final long callbackDelayMillis;
+    private final Random random;
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService callbacks;
+    private final HttpClient callbackClient;
+
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final AtomicLong paymentIds = new AtomicLong(1_000_000L);
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejectedSignatures = new LongAdder();
+    private final LongAdder simulatedErrors = new LongAdder();
+    private final LongAdder callbacksSent = new LongAdder();
+    private final LongAdder callbacksFailed = new LongAdder();
+
+    private FakeLiqPayServer(Builder builder) throws IOException {
+        this.privateKeys = new HashMap<>(builder.privateKeys);
+        this.latency = builder.latency;
+        this.errorRate = builder.errorRate;
+        this.httpErrorRate = builder.httpErrorRate;
+        this.callbackUrl = builder.callbackUrl;
+        this.callbackDelayMillis = builder.callbackDelayMillis;
+        this.random = new Random(builder.seed);
+
+        this.workers = Executors.newFixedThreadPool(builder.threads, daemon("fake-liqpay-"));
+        this.callbacks = Executors.newSingleThreadScheduledExecutor(daemon("fake-liqpay-callback-"));
+        this.callbackClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 0);
+        this.server.createContext("/api/request", this::handle);
+        this.server.setExecutor(workers);
+        this.server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * URL to configure as the tenant's {@code apiUrl}.
+     */
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/request";
+    }
+
+    /**
+     * Current status of an order, or null if the server has not seen it.
+     */
+    public String getOrderStatus(String orderId) {
+        Order order = orders.get(orderId);
+        return order != null ? order.status : null;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRejectedSignatures() {
+        return rejectedSignatures.sum();
+    }
+
+    public long getSimulatedErrors() {
+        return simulatedErrors.sum();
+    }
+
+    public long getCallbacksSent() {
+        return callbacksSent.sum();
+    }
+
+    public long getCallbacksFailed() {
+        return callbacksFailed.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        callbacks.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405, "");
+                return;
+            }
+            Map<String, String> form = parseForm(exchange.getRequestBody());
+
+            long delay = latency.getAsLong();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (chance(httpErrorRate)) {
+                simulatedErrors.increment();
+                reply(exchange, 503, "Service Unavailable");
+                return;
+            }
+
+            reply(exchange, 200, LiqPayJson.toJson(process(form.get("data"), form.get("signature"))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply(exchange, 503, "");
+        } catch (RuntimeException e) {
+            reply(exchange, 400, LiqPayJson.toJson(error("invalid_request", String.valueOf(e.getMessage()))));
+        }
+    }
+
+    private Map<String, Object> process(String data, String signature) {
+        if (data == null || signature == null) {
+            return error("invalid_request", "Missing data or signature");
+        }
+        Map<String, Object> params = LiqPaySignature.decodeData(data);
+        String publicKey = (String) params.get("public_key");
+        String privateKey = publicKey != null ? privateKeys.get(publicKey) : null;
+        if (privateKey == null || !LiqPaySignature.verifySignature(privateKey, data, signature)) {
+            rejectedSignatures.increment();
+            return error(ERROR_INVALID_SIGNATURE, "Invalid signature");
+        }
+        if (chance(errorRate)) {
+            simulatedErrors.increment();
+            return error(ERROR_SIMULATED, "Simulated LiqPay error");
+        }
+
+        String action = String.valueOf(params.get("action"));
+        String orderId = (String) params.get("order_id");
+        Map<String, Object> response;
+        switch (action) {
+            case "pay":
+            case "paytoken":
+                response = create(params, orderId, action, "success");
+                break;
+            case "hold":
+                response = create(params, orderId, action, "hold_wait");
+                break;
+            case "hold_completion":
+                response = transition(orderId, action, "hold_wait", "success");
+                break;
+            case "refund":
+                response = transition(orderId, action, null, "reversed");
+                break;
+            case "status":
+                Order order = orders.get(orderId);
+                return order != null ? order.toResponse(publicKey, order.action)
+                        : error(ERROR_PAYMENT_NOT_FOUND, "Payment not found");
+            default:
+                return error(ERROR_INVALID_ACTION, "Unsupported action " + action);
+        }
+
+        Object serverUrl = callbackUrl != null ? callbackUrl : params.get("server_url");
+        if (serverUrl != null && "ok".equals(response.get("result"))) {
+            sendCallback(serverUrl.toString(), privateKey, response);
+        }
+        return response;
+    }
+
+    private Map<String, Object> create(Map<String, Object> params, String orderId, String action, String status) {
+        Order order = new Order(orderId, paymentIds.incrementAndGet(), action, status,
+                String.valueOf(params.get("amount")), String.valueOf(params.get("currency")));
+        orders.put(orderId, order);
+        return order.toResponse((String) params.get("public_key"), action);
+    }
+
+    private Map<String, Object> transition(String orderId, String action, String expectedStatus, String newStatus) {
+        Order order = orders.get(orderId);
+        if (order == null) {
+            return error(ERROR_PAYMENT_NOT_FOUND, "Payment not found");
+        }
+        synchronized (order) {
+            if (expectedStatus != null && !expectedStatus.equals(order.status)) {
+                return error("invalid_status", "Order is " + order.status);
+            }
+            order.status = newStatus;
+        }
+        return order.toResponse(null, action);
+    }
+
+    private void sendCallback(String url, String privateKey, Map<String, Object> response) {
+        String data = LiqPaySignature.encodeData(response);
+        String body = "data=" + URLEncoder.encode(data, StandardCharsets.UTF_8)
+                + "&signature=" + URLEncoder.encode(LiqPaySignature.createSignature(privateKey, data), StandardCharsets.UTF_8);
+        callbacks.schedule(() -> {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            callbackClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((result, error) -> {
+                        if (error == null && result.statusCode() < 300) {
+                            callbacksSent.increment();
+                        } else {
+                            callbacksFailed.increment();
+                        }
+                    });
+        }, callbackDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private static Map<String, Object> error(String errCode, String description) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("result", "error");
+        response.put("status", "error");
+        response.put("err_code", errCode);
+        response.put("err_description", description);
+        return response;
+    }
+
+    private static Map<String, String> parseForm(InputStream body) throws IOException {
+        String form = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        Map<String, String> values = new HashMap<>();
+        for (String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Order {
+        private final String orderId;
+        private final long paymentId;
+        private final String action;
+        private final String amount;
+        private final String currency;
+        private volatile String status;
+
+        private Order(String orderId, long paymentId, String action, String status, String amount, String currency) {
+            this.orderId = orderId;
+            this.paymentId = paymentId;
+            this.action = action;
+            this.status = status;
+            this.amount = amount;
+            this.currency = currency;
+        }
+
+        private Map<String, Object> toResponse(String publicKey, String responseAction) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("result", "ok");
+            response.put("payment_id", paymentId);
+            response.put("action", responseAction);
+            response.put("status", status);
+            response.put("version", 3);
+            if (publicKey != null) {
+                response.put("public_key", publicKey);
+            }
+            response.put("order_id", orderId);
+            response.put("liqpay_order_id", "FAKE" + paymentId);
+            response.put("amount", Double.valueOf(amount));
+            response.put("currency", currency);
+            response.put("transaction_id", paymentId);
+            response.put("end_date", System.currentTimeMillis());
+            return response;
+        }
+    }
+
+    /**
+     * Builder for {@link FakeLiqPayServer}.
+     */
+    public static final class Builder {
+        private final Map<String, String> privateKeys = new HashMap<>();
+        private LongSupplier latency = () -> 0L;
+        private double errorRate;
+        private double httpErrorRate;
+        private String callbackUrl;
+        private long callbackDelayMillis;
+        private long seed = 42L;
+        private int port;
+        private int threads = 32;
+
+        private Builder() {
+        }
+
+        /**
+         * Accepts requests signed with this key pair. Can be called once per simulated merchant.
+         */
+        public Builder merchant(String publicKey, String privateKey) {
+            privateKeys.put(publicKey, privateKey);
+            return this;
+        }
+
+        /**
+         * Response latency in milliseconds, sampled per request. See {@link #uniform} and {@link #logNormal}.
+         */
+        public Builder latency(LongSupplier latencyMillis) {
+            this.latency = latencyMillis;
+            return this;
+        }
+
+        /**
+         * Fraction of signed requests answered with a LiqPay {@code status=error} response.
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Fraction of requests answered with HTTP 503.
+         */
+        public Builder httpErrorRate(double httpErrorRate) {
+            this.httpErrorRate = httpErrorRate;
+            return this;
+        }
+
+        /**
+         * Sends callbacks here instead of the request's {@code server_url}.
+         */
+        public Builder callbackUrl(String callbackUrl) {
+            this.callbackUrl = callbackUrl;
+            return this;
+        }
+
+        public Builder callbackDelayMillis(long callbackDelayMillis) {
+            this.callbackDelayMillis = callbackDelayMillis;
+            return this;
+        }
+
+        /**
+         * Seed for error sampling (latency suppliers take their own).
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Port to listen on; 0 (default) picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Request handling threads, i.e. the maximum number of concurrently delayed requests.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public FakeLiqPayServer start() throws IOException {
+            return new FakeLiqPayServer(this);
+        }
+    }
+
+    /**
+     * Latency uniformly distributed between min and max milliseconds.
+     */
+    public static LongSupplier uniform(long minMillis, long maxMillis, long seed) {
+        Random random = new Random(seed);
+        return () -> {
+            synchronized (random) {
+                return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+            }
+        };
+    }
+
+    /**
+     * Long-tailed latency: log-normal with the given median, {@code sigma} controls the tail (0.5 is typical).
+     */
+    public static LongSupplier logNormal(long medianMillis, double sigma, long seed) {
+        Random random = new Random(seed);
+        return () -> {
+            synchronized (random) {
+                return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayAsyncClient.
+ */
+class LiqPayAsyncClientTest {
+
+    @Test
+    void testRequestRejectedWhenInFlightLimitReached() {
+        // Given
+        LiqPayAsyncClient client = new LiqPayAsyncClient("public_key", "private_key", true,
+                null, "en", 1000, 0, LiqPayAsyncClient.createHttpClient(1000));
+
+        // When
+        CompletableFuture<LiqPayResponse> future = client.refund("order-1", new BigDecimal("1.00"));
+
+        // Then
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException error = assertThrows(ExecutionException.class, future::get);
+        LiqPayException e = LiqPayAsyncClient.unwrap(error.getCause());
+        assertEquals(LiqPayAsyncClient.ERROR_TOO_MANY_REQUESTS, e.getErrorCode());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void testCircuitBreakerFailsFastWhenLiqPayIsDown() throws Exception {
+        // Given - every request gets an HTTP 503 without a JSON body
+        try (FakeLiqPayServer server = FakeLiqPayServer.builder().merchant("public_key", "private_key")
+                .httpErrorRate(1.0).start()) {
+            LiqPayAsyncClient client = new LiqPayAsyncClient("public_key", "private_key", true,
+                    null, "en", 5000, 10, LiqPayAsyncClient.createHttpClient(5000), server.getApiUrl());
+            client.setCircuitBreaker(new LiqPayCircuitBreaker(50, 100, 10000, 10, 3, 60000, 1));
+
+            // When
+            for (int i = 0; i < 3; i++) {
+                CompletableFuture<LiqPayResponse> failed = client.status("order-7");
+                assertThrows(ExecutionException.class, failed::get);
+            }
+            CompletableFuture<LiqPayResponse> rejected = client.status("order-7");
+
+            // Then - the fourth call never reached the server
+            ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+            LiqPayException e = LiqPayAsyncClient.unwrap(error.getCause());
+            assertEquals(LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN, e.getErrorCode());
+            assertTrue(LiqPayClient.isRejected(e));
+            assertEquals(LiqPayCircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+            assertEquals(3, server.getRequests());
+            assertEquals(0, client.getInFlight());
+        }
+    }
+
+    @Test
+    void testUnwrapCompletionException() {
+        // Given
+        LiqPayException cause = new LiqPayException("err_code", "message");
+
+        // When
+        LiqPayException unwrapped = LiqPayAsyncClient.unwrap(new CompletionException(cause));
+
+        // Then
+        assertSame(cause, unwrapped);
+    }
+
+    @Test
+    void testUnwrapOtherException() {
+        // When
+        LiqPayException unwrapped = LiqPayAsyncClient.unwrap(new IllegalStateException("boom"));
+
+        // Then
+        assertEquals("boom", unwrapped.getMessage());
+        assertTrue(unwrapped.getCause() instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayCircuitBreaker.State;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayCircuitBreaker.
+ */
+class LiqPayCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testOpensOnFailureRateAndRejectsCalls() {
+        // Given - 50% failures over a window of 10, evaluated from 4 calls
+        LiqPayCircuitBreaker breaker = breaker();
+
+        // When
+        call(breaker, FAST, false);
+        call(breaker, FAST, true);
+        call(breaker, FAST, false);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(breaker, FAST, true);
+
+        // Then
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(50, breaker.getFailureRate());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCalls());
+        assertEquals(1, breaker.getOpenings());
+    }
+
+    @Test
+    void testOpensOnSlowCallRate() {
+        // Given
+        LiqPayCircuitBreaker breaker = breaker();
+
+        // When - slow calls without failures
+        for (int i = 0; i < 4; i++) {
+            call(breaker, SLOW, false);
+        }
+
+        // Then
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(100, breaker.getSlowCallRate());
+    }
+
+    @Test
+    void testOldOutcomesLeaveTheWindow() {
+        // Given
+        LiqPayCircuitBreaker breaker = breaker();
+        call(breaker, FAST, true);
+        for (int i = 0; i < 8; i++) {
+            call(breaker, FAST, false);
+        }
+        assertEquals(11, breaker.getFailureRate());
+
+        // When - two more successes push the failure out of the window
+        call(breaker, FAST, false);
+        call(breaker, FAST, false);
+
+        // Then
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    void testHalfOpenTrialCalls() {
+        // Given - an open breaker
+        LiqPayCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, FAST, true);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+
+        // When - the open duration elapses and a trial call fails
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        call(breaker, FAST, true);
+
+        // Then - open again
+        assertEquals(State.OPEN, breaker.getState());
+
+        // When - two successful trial calls after the next open period
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire(), "only two trial calls are allowed");
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, false);
+
+        // Then - closed with a fresh window
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(2, breaker.getOpenings());
+    }
+
+    private LiqPayCircuitBreaker breaker() {
+        return new LiqPayCircuitBreaker(50, 80, 1000, 10, 4, 30000, 2, now::get);
+    }
+
+    private static void call(LiqPayCircuitBreaker breaker, long durationNanos, boolean failed) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(durationNanos, failed);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayClient, run against {@link FakeLiqPayServer}.
+ */
+class LiqPayClientTest {
+
+    private static final String PUBLIC_KEY = "sandbox_public";
+    private static final String PRIVATE_KEY = "sandbox_private";
+
+    private FakeLiqPayServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeLiqPayServer.builder().merchant(PUBLIC_KEY, PRIVATE_KEY).start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void testPayAndStatus() throws Exception {
+        // Given
+        LiqPayClient client = client(PRIVATE_KEY, null);
+
+        // When
+        LiqPayResponse payment = client.payToken("order-1", "token-1", new BigDecimal("10.00"), "UAH", "Test");
+        LiqPayResponse status = client.status("order-1");
+
+        // Then
+        assertTrue(payment.isSuccess());
+        assertEquals("order-1", payment.getOrderId());
+        assertEquals(payment.getPaymentId(), status.getPaymentId());
+        assertEquals("success", status.getStatus());
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    void testHoldAndCompletion() throws Exception {
+        // Given
+        LiqPayClient client = client(PRIVATE_KEY, null);
+
+        // When
+        LiqPayResponse hold = client.hold("order-2", new BigDecimal("5.00"), "UAH", "Test");
+        LiqPayResponse completion = client.holdCompletion("order-2", new BigDecimal("5.00"));
+
+        // Then
+        assertTrue(hold.isHoldWait());
+        assertTrue(completion.isSuccess());
+        assertEquals("success", server.getOrderStatus("order-2"));
+    }
+
+    @Test
+    void testErrorResponses() {
+        // Given
+        LiqPayClient client = client(PRIVATE_KEY, null);
+        LiqPayClient wrongKey = client("other_private", null);
+
+        // When / Then
+        LiqPayException notFound = assertThrows(LiqPayException.class, () -> client.status("missing"));
+        assertEquals(FakeLiqPayServer.ERROR_PAYMENT_NOT_FOUND, notFound.getErrorCode());
+
+        LiqPayException badSignature = assertThrows(LiqPayException.class,
+                () -> wrongKey.pay("order-3", new BigDecimal("1.00"), "UAH", "Test"));
+        assertEquals(FakeLiqPayServer.ERROR_INVALID_SIGNATURE, badSignature.getErrorCode());
+        assertEquals(1, server.getRejectedSignatures());
+    }
+
+    @Test
+    void testSimulatedErrorRate() throws Exception {
+        // Given
+        server.close();
+        server = FakeLiqPayServer.builder().merchant(PUBLIC_KEY, PRIVATE_KEY).errorRate(1.0).start();
+        LiqPayClient client = client(PRIVATE_KEY, null);
+
+        // When
+        LiqPayException error = assertThrows(LiqPayException.class,
+                () -> client.pay("order-4", new BigDecimal("1.00"), "UAH", "Test"));
+
+        // Then
+        assertEquals(FakeLiqPayServer.ERROR_SIMULATED, error.getErrorCode());
+        assertEquals(1, server.getSimulatedErrors());
+    }
+
+    @Test
+    void testRequestListenerSeesActionsAndErrors() throws Exception {
+        // Given
+        LiqPayClient client = client(PRIVATE_KEY, null);
+        List<String> completed = new ArrayList<>();
+        client.setRequestListener((action, durationNanos, response, error) -> {
+            assertTrue(durationNanos > 0);
+            completed.add(action + ":" + (response != null ? response.getStatus() : null) + ":" + (error != null));
+        });
+
+        // When
+        client.pay("order-6", new BigDecimal("1.00"), "UAH", "Test");
+        assertThrows(LiqPayException.class, () -> client.status("missing"));
+
+        // Then
+        assertEquals(List.of("pay:success:false", "status:error:true"), completed);
+    }
+
+    @Test
+    void testIdleConnectionsAreEvicted() throws Exception {
+        // Given - a pool with a short keep-alive
+        LiqPayConnectionPool pool = new LiqPayConnectionPool(10, 5, 1000);
+        try {
+            LiqPayClient client = new LiqPayClient(PUBLIC_KEY, PRIVATE_KEY, true, null, "en", 5000, 5000,
+                    pool.createHttpClient(5000, 5000), server.getApiUrl());
+
+            // When
+            client.pay("order-9", new BigDecimal("1.00"), "UAH", "Test");
+            assertEquals(1, pool.getTotalStats().getAvailable());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.getTotalStats().getAvailable() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+
+            // Then - the monitor closed the idle connection
+            assertEquals(0, pool.getTotalStats().getAvailable());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testCircuitBreakerFailsFastWhenLiqPayIsDown() throws Exception {
+        // Given - every request gets an HTTP 503 without a JSON body
+        server.close();
+        server = FakeLiqPayServer.builder().merchant(PUBLIC_KEY, PRIVATE_KEY).httpErrorRate(1.0).start();
+        LiqPayClient client = client(PRIVATE_KEY, null);
+        client.setCircuitBreaker(new LiqPayCircuitBreaker(50, 100, 10000, 10, 3, 60000, 1));
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> client.status("order-7"));
+        }
+        LiqPayException rejected = assertThrows(LiqPayException.class, () -> client.status("order-7"));
+
+        // Then - the fourth call never reached the server
+        assertEquals(LiqPayCircuitBreaker.ERROR_CIRCUIT_OPEN, rejected.getErrorCode());
+        assertTrue(LiqPayClient.isRejected(rejected));
+        assertEquals(LiqPayCircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test
+    void testBulkheadRejectsCallsOverTheLimit() throws Exception {
+        // Given - slow responses and room for one call in flight
+        server.close();
+        server = FakeLiqPayServer.builder().merchant(PUBLIC_KEY, PRIVATE_KEY).latency(() -> 500L).start();
+        LiqPayClient client = client(PRIVATE_KEY, null);
+        client.setBulkhead(1, 0);
+
+        // When
+        CompletableFuture<LiqPayResponse> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.pay("order-8", new BigDecimal("1.00"), "UAH", "Test");
+            } catch (LiqPayException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.getInFlight() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        LiqPayException rejected = assertThrows(LiqPayException.class, () -> client.status("order-8"));
+
+        // Then
+        assertEquals(LiqPayClient.ERROR_TOO_MANY_REQUESTS, rejected.getErrorCode());
+        assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+        assertEquals(0, client.getInFlight());
+        assertEquals(1, client.getBulkheadRejections());
+    }
+
+    @Test
+    void testSignedCallbackIsSentToServerUrl() throws Exception {
+        // Given - a stand-in for the plugin's /callback route
+        CompletableFuture<Map<String, String>> received = new CompletableFuture<>();
+        HttpServer receiver = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        receiver.createContext("/callback", exchange -> {
+            received.complete(parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        receiver.start();
+        String callbackUrl = "http://127.0.0.1:" + receiver.getAddress().getPort() + "/callback";
+        LiqPayClient client = client(PRIVATE_KEY, callbackUrl);
+
+        try {
+            // When
+            client.pay("order-5", new BigDecimal("7.50"), "UAH", "Test");
+            Map<String, String> form = received.get(10, TimeUnit.SECONDS);
+
+            // Then
+            assertTrue(client.verifyCallbackSignature(form.get("data"), form.get("signature")));
+            LiqPayResponse callback = client.parseCallback(form.get("data"));
+            assertEquals("order-5", callback.getOrderId());
+            assertEquals("success", callback.getStatus());
+            assertEquals(PUBLIC_KEY, callback.getPublicKey());
+        } finally {
+            receiver.stop(0);
+        }
+    }
+
+    private LiqPayClient client(String privateKey, String serverUrl) {
+        return new LiqPayClient(PUBLIC_KEY, privateKey, true, serverUrl, "en", 5000, 5000,
+                HttpClients.createDefault(), server.getApiUrl());
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> values = new HashMap<>();
+        for (String pair : form.split("&")) {
+            String[] parts = pair.split("=", 2);
+            values.put(parts[0], URLDecoder.decode(parts[1], StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayJson.
+ */
+class LiqPayJsonTest {
+
+    @Test
+    void testAfterburnerIsRegistered() {
+        // Then
+        assertTrue(LiqPayJson.registeredModuleIds().contains("com.fasterxml.jackson.module.afterburner.AfterburnerModule"));
+    }
+
+    @Test
+    void testResponseReaderIgnoresUnknownFields() throws Exception {
+        // When
+        LiqPayResponse response = LiqPayJson.responseReader()
+                .readValue("{\"status\":\"success\",\"payment_id\":42,\"new_field\":{\"a\":1}}");
+
+        // Then
+        assertEquals("success", response.getStatus());
+        assertEquals(Long.valueOf(42L), response.getPaymentId());
+    }
+
+    @Test
+    void testToJsonEscapesValues() throws Exception {
+        // Given
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("description", "Order \"42\"\nline");
+        params.put("amount", 10);
+
+        // When
+        String json = LiqPayJson.toJson(params);
+
+        // Then
+        assertEquals("{\"description\":\"Order \\\"42\\\"\\nline\",\"amount\":10}", json);
+        assertEquals(params, LiqPayJson.mapReader().readValue(json));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayPayloadLog.
+ */
+class LiqPayPayloadLogTest {
+
+    @AfterEach
+    void tearDown() {
+        LiqPayPayloadLog.configure(0.0, true);
+    }
+
+    @Test
+    void testPayloadsAreMasked() {
+        // Given
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("action", "paytoken");
+        params.put("order_id", "order-1");
+        params.put("card_token", "B9F1A1C2D3E4F5A6");
+        params.put("phone", "380501234567");
+        String data = LiqPaySignature.encodeData(params);
+
+        // When
+        String paramsLog = LiqPayPayloadLog.params(params).toString();
+        String dataLog = LiqPayPayloadLog.data(data).toString();
+        String jsonLog = LiqPayPayloadLog.json("{\"status\":\"success\",\"sender_card_mask2\":\"424242*42\"}").toString();
+
+        // Then
+        assertTrue(paramsLog.contains("order_id=order-1"));
+        assertTrue(paramsLog.contains("card_token=****F5A6"));
+        assertFalse(paramsLog.contains("B9F1A1C2"));
+        assertTrue(paramsLog.contains("phone=****4567"));
+        assertEquals(paramsLog, dataLog);
+        assertTrue(jsonLog.contains("sender_card_mask2=****"));
+        assertFalse(jsonLog.contains("424242"));
+        assertEquals("not json", LiqPayPayloadLog.json("not json").toString());
+    }
+
+    @Test
+    void testPayloadIsOnlyRenderedWhenFormatted() {
+        // Given
+        AtomicInteger reads = new AtomicInteger();
+        Map<String, Object> params = new HashMap<String, Object>() {
+            @Override
+            public Set<Map.Entry<String, Object>> entrySet() {
+                reads.incrementAndGet();
+                return super.entrySet();
+            }
+        };
+        params.put("action", "pay");
+
+        // When
+        Object view = LiqPayPayloadLog.params(params);
+
+        // Then
+        assertEquals(0, reads.get());
+        assertEquals("{action=pay}", view.toString());
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    void testSampling() {
+        // When / Then
+        LiqPayPayloadLog.configure(0.0, false);
+        assertFalse(LiqPayPayloadLog.sample());
+        assertFalse(LiqPayPayloadLog.onError());
+
+        LiqPayPayloadLog.configure(5.0, true);
+        assertTrue(LiqPayPayloadLog.sample());
+        assertTrue(LiqPayPayloadLog.onError());
+
+        LiqPayPayloadLog.configure(0.5, true);
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (LiqPayPayloadLog.sample()) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 4000 && sampled < 6000, "sampled " + sampled);
+    }
+}
@@ -371,4 +371,68 @@ class LiqPayResponseTest {
         assertTrue(str.contains("pay"));
         assertTrue(str.contains("test-123"));
     }
+
+    @Test
+    void testFromDataMatchesFromMap() {
+        // Given
+        Map<String, Object> data = new HashMap<>();
+        data.put("status", "success");
+        data.put("action", "pay");
+        data.put("order_id", "test-order-123");
+        data.put("payment_id", 12345678L);
+        data.put("amount", 100.50);
+        data.put("currency", "UAH");
+        data.put("public_key", "sandbox_i000");
+        data.put("unmapped_field", "value");
+        String encoded = LiqPaySignature.encodeData(data);
+
+        // When
+        LiqPayResponse streamed = LiqPayResponse.fromData(encoded);
+        LiqPayResponse mapped = LiqPayResponse.fromMap(LiqPaySignature.decodeData(encoded));
+
+        // Then
+        assertEquals(mapped.getStatus(), streamed.getStatus());
+        assertEquals(mapped.getAction(), streamed.getAction());
+        assertEquals(mapped.getOrderId(), streamed.getOrderId());
+        assertEquals(mapped.getPaymentId(), streamed.getPaymentId());
+        assertEquals(mapped.getAmount(), streamed.getAmount());
+        assertEquals(mapped.getCurrency(), streamed.getCurrency());
+        assertEquals("sandbox_i000", streamed.getPublicKey());
+    }
+
+    @Test
+    void testFromDataBuildsRawResponseOnDemand() {
+        // Given
+        Map<String, Object> data = new HashMap<>();
+        data.put("status", "success");
+        data.put("unmapped_field", "value");
+
+        // When
+        LiqPayResponse response = LiqPayResponse.fromData(LiqPaySignature.encodeData(data));
+
+        // Then
+        assertEquals("value", response.getRawResponse().get("unmapped_field"));
+        assertSame(response.getRawResponse(), response.getRawResponse());
+    }
+
+    @Test
+    void testFromDataKeepsDecodedJson() {
+        // Given
+        String json = "{\"status\":\"success\",\"order_id\":\"order-1\",\"description\":\"Оплата\"}";
+
+        // When
+        LiqPayResponse response = LiqPayResponse.fromData(LiqPaySignature.encodeJson(json));
+
+        // Then
+        assertEquals(json, response.getRawJson());
+        assertEquals("order-1", response.getRawResponse().get("order_id"));
+        assertNull(LiqPayResponse.fromJson(json).getRawJson());
+    }
+
+    @Test
+    void testFromDataInvalid() {
+        // When / Then
+        assertThrows(RuntimeException.class, () -> LiqPayResponse.fromData("not base64 !"));
+        assertThrows(RuntimeException.class, () -> LiqPayResponse.fromData("bm90IGpzb24="));
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPaySigner.
+ */
+class LiqPaySignerTest {
+
+    private static final String PRIVATE_KEY = "sandbox_private_key_1234567890";
+
+    @Test
+    void testSignMatchesReferenceAlgorithm() throws Exception {
+        // Given - short data, data spanning several buffer chunks, and non-ASCII data
+        LiqPaySigner signer = new LiqPaySigner(PRIVATE_KEY);
+        StringBuilder longData = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longData.append("eyJhY3Rpb24iOiJwYXkifQ");
+        }
+
+        // When / Then
+        for (String data : new String[] {"eyJhY3Rpb24iOiJwYXkifQ==", longData.toString(), "данні"}) {
+            assertEquals(reference(PRIVATE_KEY, data), signer.sign(data));
+        }
+    }
+
+    @Test
+    void testVerify() {
+        // Given
+        LiqPaySigner signer = new LiqPaySigner(PRIVATE_KEY);
+        String data = "eyJhY3Rpb24iOiJwYXkifQ==";
+        String signature = signer.sign(data);
+
+        // When / Then
+        assertTrue(signer.verify(data, signature));
+        assertFalse(signer.verify(data + "x", signature));
+        assertFalse(new LiqPaySigner("other_key").verify(data, signature));
+        assertFalse(signer.verify(data, "not base64!"));
+        assertFalse(signer.verify(data, signature.substring(0, 8)));
+        assertFalse(signer.verify(data, null));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> new LiqPaySigner(null));
+        assertThrows(IllegalArgumentException.class, () -> new LiqPaySigner(""));
+        assertThrows(IllegalArgumentException.class, () -> new LiqPaySigner(PRIVATE_KEY).sign(""));
+    }
+
+    private static String reference(String privateKey, String data) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-1")
+                .digest((privateKey + data + privateKey).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayPaymentMethodRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayCardTokenCache.
+ */
+class LiqPayCardTokenCacheTest {
+
+    private LiqPayDao dao;
+    private LiqPayCardTokenCache cache;
+    private Clock clock;
+    private DateTime now;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID paymentMethodId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        now = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+        clock = mock(Clock.class);
+        when(clock.getUTCNow()).thenAnswer(invocation -> now);
+
+        dao = new LiqPayDao(TestDatabase.create());
+        cache = new LiqPayCardTokenCache(10, 60000L, clock);
+        dao.setCardTokenCache(cache);
+        dao.insertPaymentMethod(paymentMethod(paymentMethodId, tenantId, "token-1"));
+    }
+
+    @Test
+    void testSecondLookupIsServedFromCache() throws Exception {
+        // When
+        String first = dao.getCardToken(paymentMethodId, tenantId);
+        String second = dao.getCardToken(paymentMethodId, tenantId);
+
+        // Then
+        assertEquals("token-1", first);
+        assertEquals("token-1", second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void testTokenUpdateInvalidatesEntry() throws Exception {
+        // Given
+        dao.getCardToken(paymentMethodId, tenantId);
+
+        // When
+        dao.updatePaymentMethodToken(paymentMethodId, tenantId, "token-2", null, null, null, null);
+
+        // Then
+        assertEquals("token-2", dao.getCardToken(paymentMethodId, tenantId));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testDeleteInvalidatesEntry() throws Exception {
+        // Given
+        dao.getCardToken(paymentMethodId, tenantId);
+
+        // When
+        dao.deletePaymentMethod(paymentMethodId, tenantId);
+
+        // Then
+        assertNull(dao.getCardToken(paymentMethodId, tenantId));
+    }
+
+    @Test
+    void testMissingTokenIsNotCached() throws Exception {
+        // Given
+        UUID otherPaymentMethodId = UUID.randomUUID();
+        assertNull(dao.getCardToken(otherPaymentMethodId, tenantId));
+        assertNull(dao.getCardToken(otherPaymentMethodId, tenantId));
+        assertEquals(0, cache.getHits());
+
+        // When
+        dao.insertPaymentMethod(paymentMethod(otherPaymentMethodId, tenantId, "token-3"));
+
+        // Then
+        assertEquals("token-3", dao.getCardToken(otherPaymentMethodId, tenantId));
+    }
+
+    @Test
+    void testTokenLoadedBeforeInvalidationIsNotCached() {
+        // Given - a lookup read the old token, then the token was updated
+        long generation = cache.generation();
+        cache.invalidate(paymentMethodId, tenantId);
+
+        // When
+        cache.put(paymentMethodId, tenantId, "token-1", generation);
+
+        // Then
+        assertNull(cache.get(paymentMethodId, tenantId));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testCachedLookupDoesNotOpenConnection() throws Exception {
+        // Given
+        DataSource dataSource = mock(DataSource.class);
+        LiqPayDao cachedDao = new LiqPayDao(dataSource);
+        cachedDao.setCardTokenCache(cache);
+        cache.put(paymentMethodId, tenantId, "token-1", cache.generation());
+
+        // When
+        String token = cachedDao.getCachedCardToken(paymentMethodId, tenantId);
+        String missing = cachedDao.getCachedCardToken(UUID.randomUUID(), tenantId);
+
+        // Then
+        assertEquals("token-1", token);
+        assertNull(missing);
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void testEntryExpiresAfterTtl() throws Exception {
+        // Given
+        dao.getCardToken(paymentMethodId, tenantId);
+
+        // When
+        now = now.plusMinutes(2);
+        dao.getCardToken(paymentMethodId, tenantId);
+
+        // Then
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testEntriesAreScopedByTenant() throws Exception {
+        // Given
+        dao.getCardToken(paymentMethodId, tenantId);
+
+        // When
+        String otherTenantToken = dao.getCardToken(paymentMethodId, UUID.randomUUID());
+
+        // Then
+        assertNull(otherTenantToken);
+        assertEquals(0, cache.getHits());
+    }
+
+    private static LiqPayPaymentMethodRecord paymentMethod(UUID paymentMethodId, UUID tenantId, String token) {
+        LiqPayPaymentMethodRecord record = new LiqPayPaymentMethodRecord();
+        record.setKbAccountId(UUID.randomUUID());
+        record.setKbPaymentMethodId(paymentMethodId);
+        record.setKbTenantId(tenantId);
+        record.setLiqpayCardToken(token);
+        return record;
+    }
+}
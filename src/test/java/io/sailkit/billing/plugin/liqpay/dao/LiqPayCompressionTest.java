@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LiqPayCompression.
+ */
+class LiqPayCompressionTest {
+
+    @Test
+    void testRoundTrip() throws Exception {
+        // Given
+        String json = "{\"status\":\"success\",\"description\":\"Оплата підписки\",\"amount\":100.0}";
+
+        // When
+        String compressed = LiqPayCompression.compress(json);
+
+        // Then
+        assertTrue(LiqPayCompression.isCompressed(compressed));
+        assertEquals(json, LiqPayCompression.decompress(compressed));
+        assertEquals(compressed, LiqPayCompression.compress(compressed));
+    }
+
+    @Test
+    void testPlainValuesPassThrough() throws Exception {
+        // When / Then
+        assertEquals("{}", LiqPayCompression.decompress("{}"));
+        assertNull(LiqPayCompression.decompress(null));
+        assertNull(LiqPayCompression.compress(null));
+    }
+
+    @Test
+    void testUnknownFormatVersionIsRejected() {
+        // Given - version byte 0x7f
+        String value = LiqPayCompression.PREFIX + "fwAA";
+
+        // When / Then
+        assertThrows(IOException.class, () -> LiqPayCompression.decompress(value));
+        assertThrows(IOException.class, () -> LiqPayCompression.decompressBytes(new byte[]{0x7f, 0, 0}));
+    }
+
+    @Test
+    void testBinaryRoundTripMatchesTextEncoding() throws Exception {
+        // Given
+        String json = "{\"status\":\"success\",\"description\":\"Оплата підписки\",\"amount\":100.0}";
+        String compressed = LiqPayCompression.compress(json);
+
+        // When
+        byte[] bytes = LiqPayCompression.compressToBytes(json);
+
+        // Then - an already compressed text value converts to the same bytes
+        assertEquals(json, LiqPayCompression.decompressBytes(bytes));
+        assertArrayEquals(bytes, LiqPayCompression.compressToBytes(compressed));
+        assertNull(LiqPayCompression.compressToBytes(null));
+        assertNull(LiqPayCompression.decompressBytes(null));
+    }
+}
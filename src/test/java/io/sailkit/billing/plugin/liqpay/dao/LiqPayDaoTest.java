@@ -0,0 +1,386 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayPaymentMethodRecord;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the LiqPayDao unit of work.
+ */
+class LiqPayDaoTest {
+
+    private DataSource dataSource;
+    private LiqPayDao dao;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = TestDatabase.create();
+        dao = new LiqPayDao(dataSource);
+    }
+
+    @Test
+    void testUnitOfWorkCommitsAllWrites() throws Exception {
+        // When
+        dao.inTransaction(uow -> {
+            createPending(uow, "order-1");
+            createPending(uow, "order-2");
+            return null;
+        });
+
+        // Then
+        assertNotNull(dao.getPendingTransaction("order-1"));
+        assertNotNull(dao.getPendingTransaction("order-2"));
+    }
+
+    @Test
+    void testUnitOfWorkReusesPreparedStatements() throws Exception {
+        // When / Then
+        dao.inTransaction(uow -> {
+            assertSame(uow.prepare("SELECT 1"), uow.prepare("SELECT 1"));
+            return null;
+        });
+    }
+
+    @Test
+    void testUnitOfWorkRollsBackOnException() throws Exception {
+        // When
+        assertThrows(SQLException.class, () -> dao.inTransaction(uow -> {
+            createPending(uow, "order-1");
+            throw new SQLException("boom");
+        }));
+
+        // Then
+        assertNull(dao.getPendingTransaction("order-1"));
+    }
+
+    @Test
+    void testDuplicateProcessedCallbackMarksUnitOfWorkRollbackOnly() throws Exception {
+        // Given
+        assertTrue(dao.insertProcessedCallback(tenantId, "order-1", "success", "100"));
+
+        // When
+        boolean claimed = dao.inTransaction(uow -> {
+            createPending(uow, "order-1");
+            boolean result = dao.insertProcessedCallback(uow, tenantId, "order-1", "success", "100");
+            assertTrue(uow.isRollbackOnly());
+            return result;
+        });
+
+        // Then
+        assertFalse(claimed);
+        assertNull(dao.getPendingTransaction("order-1"));
+    }
+
+    @Test
+    void testGetOriginalHoldReturnsFirstHold() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        saveResponse(paymentId, "AUTHORIZE", "error", "order-0");
+        saveResponse(paymentId, "AUTHORIZE", "hold_wait", "order-1");
+        saveResponse(paymentId, "CAPTURE", "success", "order-1");
+
+        // When
+        LiqPayResponseRecord hold = dao.getOriginalHold(paymentId, tenantId);
+
+        // Then
+        assertEquals("order-1", hold.getLiqpayOrderId());
+        assertEquals(0, new BigDecimal("100.00").compareTo(hold.getAmount()));
+        assertEquals("UAH", hold.getCurrency());
+        assertNull(hold.getRawResponse());
+        assertNull(dao.getOriginalHold(paymentId, UUID.randomUUID()));
+    }
+
+    @Test
+    void testGetRefundableChargeMatchesPurchaseOrCapture() throws Exception {
+        // Given
+        UUID purchaseId = UUID.randomUUID();
+        saveResponse(purchaseId, "PURCHASE", "failure", "order-0");
+        saveResponse(purchaseId, "PURCHASE", "success", "order-1");
+        UUID captureId = UUID.randomUUID();
+        saveResponse(captureId, "AUTHORIZE", "hold_wait", "order-2");
+        saveResponse(captureId, "CAPTURE", "success", "order-2");
+
+        // When / Then
+        assertEquals("order-1", dao.getRefundableCharge(purchaseId, tenantId).getLiqpayOrderId());
+        assertEquals("CAPTURE", dao.getRefundableCharge(captureId, tenantId).getTransactionType());
+        assertNull(dao.getRefundableCharge(UUID.randomUUID(), tenantId));
+    }
+
+    @Test
+    void testResponseSummariesSkipRawResponse() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        saveResponse(paymentId, "AUTHORIZE", "hold_wait", "order-1");
+        saveResponse(paymentId, "CAPTURE", "success", "order-1");
+
+        // When
+        List<LiqPayResponseRecord> summaries = dao.getResponseSummariesForPayment(paymentId, tenantId);
+        Map<Long, String> rawResponses = dao.getRawResponsesForPayment(paymentId, tenantId);
+
+        // Then
+        assertEquals(2, summaries.size());
+        assertEquals("AUTHORIZE", summaries.get(0).getTransactionType());
+        assertEquals("CAPTURE", summaries.get(1).getTransactionType());
+        assertNotNull(summaries.get(0).getKbTransactionId());
+        assertNull(summaries.get(0).getRawResponse());
+        assertEquals("{}", rawResponses.get(summaries.get(1).getRecordId()));
+    }
+
+    @Test
+    void testSearchResponsesPagesWithKeyset() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        saveResponse(paymentId, "PURCHASE", "success", "order-a1");
+        saveResponse(paymentId, "PURCHASE", "success", "order-a2");
+        saveResponse(paymentId, "PURCHASE", "success", "order-a3");
+        saveResponse(paymentId, "PURCHASE", "success", "order-b1");
+
+        // When
+        List<String> firstPage = new ArrayList<>();
+        Long nextOffset;
+        try (LiqPayResultSetPagination<LiqPayResponseRecord> page = dao.searchResponses(tenantId, "order-a", 0L, 2)) {
+            nextOffset = page.getNextOffset();
+            assertEquals(3L, page.getTotalNbRecords());
+            page.forEach(record -> firstPage.add(record.getLiqpayOrderId()));
+        }
+        List<String> secondPage = new ArrayList<>();
+        try (LiqPayResultSetPagination<LiqPayResponseRecord> page = dao.searchResponses(tenantId, "order-a", nextOffset, 2)) {
+            page.forEach(record -> secondPage.add(record.getLiqpayOrderId()));
+            assertNull(page.getNextOffset());
+        }
+
+        // Then
+        assertEquals(List.of("order-a1", "order-a2"), firstPage);
+        assertEquals(List.of("order-a3"), secondPage);
+    }
+
+    @Test
+    void testSearchResponsesByPaymentIds() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        LiqPayResponse response = LiqPayResponseWriterTest.response("order-1", "success");
+        response.setPaymentId(987654L);
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, "PURCHASE", response, "{}");
+
+        // When / Then
+        assertEquals("order-1", first(dao.searchResponses(tenantId, "987654", 0L, 10)).getLiqpayOrderId());
+        assertEquals(paymentId, first(dao.searchResponses(tenantId, paymentId.toString(), 0L, 10)).getKbPaymentId());
+        assertNull(first(dao.searchResponses(UUID.randomUUID(), "987654", 0L, 10)));
+    }
+
+    @Test
+    void testSearchResponsesMergesMatchesOfEachKeyKind() throws Exception {
+        // Given
+        saveResponse(UUID.randomUUID(), "PURCHASE", "success", "555");
+        LiqPayResponse response = LiqPayResponseWriterTest.response("555", "success");
+        response.setPaymentId(555L);
+        dao.saveResponse(null, UUID.randomUUID(), UUID.randomUUID(), null, tenantId, "PURCHASE", response, "{}");
+        response = LiqPayResponseWriterTest.response("order-2", "success");
+        response.setPaymentId(555L);
+        dao.saveResponse(null, UUID.randomUUID(), UUID.randomUUID(), null, tenantId, "PURCHASE", response, "{}");
+
+        // When
+        List<String> firstPage = new ArrayList<>();
+        Long nextOffset;
+        try (LiqPayResultSetPagination<LiqPayResponseRecord> page = dao.searchResponses(tenantId, "555", 0L, 2)) {
+            nextOffset = page.getNextOffset();
+            assertEquals(3L, page.getTotalNbRecords());
+            page.forEach(record -> firstPage.add(record.getLiqpayOrderId()));
+        }
+        List<String> secondPage = new ArrayList<>();
+        try (LiqPayResultSetPagination<LiqPayResponseRecord> page = dao.searchResponses(tenantId, "555", nextOffset, 2)) {
+            page.forEach(record -> secondPage.add(record.getLiqpayOrderId()));
+            assertNull(page.getNextOffset());
+        }
+
+        // Then
+        assertEquals(List.of("555", "555"), firstPage);
+        assertEquals(List.of("order-2"), secondPage);
+    }
+
+    @Test
+    void testSearchQueriesDoNotLimitInsideInSubqueries() throws Exception {
+        // Given - MySQL rejects LIMIT in an IN (...) subquery, which H2 accepts
+        List<String> statements = new ArrayList<>();
+        DataSource recording = mock(DataSource.class);
+        when(recording.getConnection()).thenAnswer(invocation -> {
+            Connection conn = spy(dataSource.getConnection());
+            doAnswer(prepare -> {
+                statements.add(prepare.getArgument(0));
+                return prepare.callRealMethod();
+            }).when(conn).prepareStatement(anyString());
+            return conn;
+        });
+        LiqPayDao recordingDao = new LiqPayDao(recording);
+        saveResponse(UUID.randomUUID(), "PURCHASE", "success", "555");
+
+        // When
+        try (LiqPayResultSetPagination<LiqPayResponseRecord> page = recordingDao.searchResponses(tenantId, "555", 0L, 10)) {
+            page.getNextOffset();
+            page.getTotalNbRecords();
+            assertTrue(page.iterator().hasNext());
+        }
+        try (LiqPayResultSetPagination<LiqPayPaymentMethodRecord> page = recordingDao.searchPaymentMethods(tenantId, "visa", 0L, 10)) {
+            page.getNextOffset();
+            page.getTotalNbRecords();
+        }
+
+        // Then
+        assertEquals(6, statements.size());
+        for (String sql : statements) {
+            assertFalse(sql.matches("(?is).*\\bIN\\s*\\(+\\s*SELECT.*"), sql);
+        }
+    }
+
+    @Test
+    void testSearchResponsesEscapesLikeWildcards() throws Exception {
+        // Given
+        saveResponse(UUID.randomUUID(), "PURCHASE", "success", "order-1");
+        saveResponse(UUID.randomUUID(), "PURCHASE", "success", "promo!_1\\x");
+
+        // When / Then
+        assertNull(first(dao.searchResponses(tenantId, "order%", 0L, 10)));
+        assertNull(first(dao.searchResponses(tenantId, "order_1", 0L, 10)));
+        assertEquals("promo!_1\\x", first(dao.searchResponses(tenantId, "promo!_1\\", 0L, 10)).getLiqpayOrderId());
+    }
+
+    @Test
+    void testSearchPaymentMethodsByCardSuffixBankAndAccount() throws Exception {
+        // Given
+        UUID accountId = UUID.randomUUID();
+        UUID visaId = insertPaymentMethod(accountId, "473119******4634", "visa", "PrivatBank");
+        UUID mastercardId = insertPaymentMethod(accountId, "535177******1234", "mc", "Monobank");
+        UUID deletedId = insertPaymentMethod(UUID.randomUUID(), "473119******4634", "visa", "PrivatBank");
+        dao.deletePaymentMethod(deletedId, tenantId);
+
+        // When / Then
+        assertEquals(List.of(visaId), searchPaymentMethods("4634"));
+        assertEquals(List.of(visaId), searchPaymentMethods("634"));
+        assertEquals(List.of(mastercardId), searchPaymentMethods("Monobank"));
+        assertEquals(List.of(visaId), searchPaymentMethods("visa"));
+        assertEquals(List.of(visaId, mastercardId), searchPaymentMethods(accountId.toString()));
+        assertEquals(List.of(), searchPaymentMethods("9999"));
+    }
+
+    @Test
+    void testTokenUpdateRefreshesCardSuffix() throws Exception {
+        // Given
+        UUID paymentMethodId = insertPaymentMethod(UUID.randomUUID(), null, null, null);
+
+        // When
+        dao.updatePaymentMethodToken(paymentMethodId, tenantId, "token", "424242******4242", "visa", null, null);
+
+        // Then
+        assertEquals(List.of(paymentMethodId), searchPaymentMethods("4242"));
+    }
+
+    @Test
+    void testCompressedPayloadsAreDecodedOnRead() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        String rawJson = "{\"status\":\"success\",\"description\":\"" + "Subscription renewal ".repeat(20) + "\"}";
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, "PURCHASE",
+                LiqPayResponseWriterTest.response("order-1", "success"), "{}");
+        dao.setCompressPayloads(true);
+
+        // When
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, "PURCHASE",
+                LiqPayResponseWriterTest.response("order-2", "success"), rawJson);
+        dao.addHppRequest(UUID.randomUUID(), null, tenantId, "session-1", "order-2", "redirect", false,
+                new BigDecimal("100.00"), "UAH", rawJson);
+
+        // Then - stored compressed, returned as written, mixed with uncompressed rows
+        assertTrue(storedRawResponse("order-2").startsWith(LiqPayCompression.PREFIX));
+        assertTrue(storedRawResponse("order-2").length() < rawJson.length());
+        assertEquals("{}", dao.getResponseByOrderId("order-1", tenantId).getRawResponse());
+        assertEquals(rawJson, dao.getResponseByOrderId("order-2", tenantId).getRawResponse());
+        assertTrue(dao.getRawResponsesForPayment(paymentId, tenantId).containsValue(rawJson));
+        assertEquals(rawJson, dao.getHppRequestByOrderId("order-2", tenantId).getAdditionalData());
+    }
+
+    private String storedRawResponse(String orderId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT raw_response FROM liqpay_responses WHERE liqpay_order_id = ?")) {
+            stmt.setString(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private UUID insertPaymentMethod(UUID accountId, String cardMask, String cardType, String cardBank) throws SQLException {
+        LiqPayPaymentMethodRecord record = new LiqPayPaymentMethodRecord();
+        record.setKbAccountId(accountId);
+        record.setKbPaymentMethodId(UUID.randomUUID());
+        record.setKbTenantId(tenantId);
+        record.setCardMask(cardMask);
+        record.setCardType(cardType);
+        record.setCardBank(cardBank);
+        dao.insertPaymentMethod(record);
+        return record.getKbPaymentMethodId();
+    }
+
+    private List<UUID> searchPaymentMethods(String searchKey) throws SQLException {
+        List<UUID> ids = new ArrayList<>();
+        try (LiqPayResultSetPagination<LiqPayPaymentMethodRecord> page = dao.searchPaymentMethods(tenantId, searchKey, 0L, 10)) {
+            page.forEach(record -> ids.add(record.getKbPaymentMethodId()));
+        }
+        return ids;
+    }
+
+    private static LiqPayResponseRecord first(LiqPayResultSetPagination<LiqPayResponseRecord> pagination) {
+        try (pagination) {
+            Iterator<LiqPayResponseRecord> iterator = pagination.iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private void saveResponse(UUID paymentId, String transactionType, String status, String orderId) throws SQLException {
+        dao.saveResponse(UUID.randomUUID(), paymentId, UUID.randomUUID(), null, tenantId, transactionType,
+                LiqPayResponseWriterTest.response(orderId, status), "{}");
+    }
+
+    private void createPending(LiqPayDao.UnitOfWork uow, String orderId) throws SQLException {
+        dao.createPendingTransaction(uow, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null,
+                tenantId, orderId, "PURCHASE", new BigDecimal("100.00"), "UAH");
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.model.LiqPayResponseRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayResponseWriter.
+ */
+class LiqPayResponseWriterTest {
+
+    private DataSource dataSource;
+    private LiqPayDao dao;
+    private LiqPayResponseWriter writer;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = TestDatabase.create();
+        dao = new LiqPayDao(dataSource);
+        writer = new LiqPayResponseWriter(dataSource, 10, 50);
+        dao.setResponseWriter(writer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    void testSaveResponseIsVisibleWhenCallReturns() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+
+        // When
+        dao.saveResponse(UUID.randomUUID(), paymentId, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response("order-1", "success"), "{}");
+
+        // Then
+        List<LiqPayResponseRecord> records = dao.getResponsesForPayment(paymentId, tenantId);
+        assertEquals(1, records.size());
+        assertEquals("order-1", records.get(0).getLiqpayOrderId());
+        assertEquals(1, writer.getRowsWritten());
+    }
+
+    @Test
+    void testConcurrentRowsShareBatches() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 25; i++) {
+            futures.add(writer.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response("order-" + i, "success"), null, now()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(25, dao.getResponsesForPayment(paymentId, tenantId).size());
+        assertEquals(25, writer.getRowsWritten());
+        assertTrue(writer.getBatchesWritten() < 25, "Rows should be grouped into batches");
+    }
+
+    @Test
+    void testBadRowOnlyFailsItsOwnCaller() throws Exception {
+        // Given - status is NOT NULL
+        UUID paymentId = UUID.randomUUID();
+        CompletableFuture<Void> good = writer.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response("order-good", "success"), null, now());
+        CompletableFuture<Void> bad = writer.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response("order-bad", null), null, now());
+
+        // When / Then
+        good.get(10, TimeUnit.SECONDS);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof SQLException);
+        assertEquals(1, dao.getResponsesForPayment(paymentId, tenantId).size());
+    }
+
+    @Test
+    void testRuntimeFailureDoesNotStopWriter() throws Exception {
+        // Given - a row without a response fails in bindResponse with a NullPointerException
+        UUID paymentId = UUID.randomUUID();
+        CompletableFuture<Void> bad = writer.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", null, null, now());
+
+        // When
+        ExecutionException error = assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS));
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response("order-after", "success"), null);
+
+        // Then - the flusher is still alive
+        assertTrue(error.getCause() instanceof NullPointerException);
+        assertEquals(1, dao.getResponsesForPayment(paymentId, tenantId).size());
+    }
+
+    @Test
+    void testFullQueuePushesBackOnCallers() throws Exception {
+        // Given - the database is stuck on the first batch and the queue holds one row
+        CountDownLatch databaseStuck = new CountDownLatch(1);
+        LiqPayResponseWriter slowWriter = new LiqPayResponseWriter(blockingDataSource(databaseStuck), 1, 0, 1, 200);
+        UUID paymentId = UUID.randomUUID();
+        try {
+            CompletableFuture<Void> inFlight = slowWriter.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response("order-1", "success"), null, now());
+            awaitEmptyQueue(slowWriter);
+            CompletableFuture<Void> queued = slowWriter.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response("order-2", "success"), null, now());
+
+            // When
+            CompletableFuture<Void> rejected = slowWriter.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response("order-3", "success"), null, now());
+
+            // Then
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> rejected.get(10, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof SQLException);
+            assertEquals(1, slowWriter.getQueueSize());
+
+            databaseStuck.countDown();
+            inFlight.get(10, TimeUnit.SECONDS);
+            queued.get(10, TimeUnit.SECONDS);
+            assertEquals(2, dao.getResponsesForPayment(paymentId, tenantId).size());
+        } finally {
+            databaseStuck.countDown();
+            slowWriter.close();
+        }
+    }
+
+    @Test
+    void testWriteGivesUpAfterMaxWait() throws Exception {
+        // Given - the database is stuck on the first batch
+        CountDownLatch databaseStuck = new CountDownLatch(1);
+        LiqPayResponseWriter slowWriter = new LiqPayResponseWriter(blockingDataSource(databaseStuck), 1, 0, 10, 200);
+        UUID paymentId = UUID.randomUUID();
+        try {
+            CompletableFuture<Void> inFlight = slowWriter.submit(null, paymentId, UUID.randomUUID(), null, tenantId,
+                    "PURCHASE", response("order-1", "success"), null, now());
+            awaitEmptyQueue(slowWriter);
+
+            // When
+            assertThrows(SQLException.class, () -> slowWriter.write(null, paymentId, UUID.randomUUID(), null,
+                    tenantId, "PURCHASE", response("order-2", "success"), null, now()));
+
+            // Then - the timed out row was dropped, not written later
+            databaseStuck.countDown();
+            inFlight.get(10, TimeUnit.SECONDS);
+            assertEquals(0, slowWriter.getQueueSize());
+            assertEquals(1, dao.getResponsesForPayment(paymentId, tenantId).size());
+        } finally {
+            databaseStuck.countDown();
+            slowWriter.close();
+        }
+    }
+
+    @Test
+    void testWriteAfterCloseFails() {
+        // Given
+        writer.close();
+
+        // When / Then
+        assertThrows(SQLException.class, () -> writer.write(null, null, UUID.randomUUID(), null, tenantId,
+                "PURCHASE", response("order-1", "success"), null, now()));
+    }
+
+    private DataSource blockingDataSource(CountDownLatch stuck) throws SQLException {
+        DataSource blocking = mock(DataSource.class);
+        when(blocking.getConnection()).thenAnswer(invocation -> {
+            stuck.await(10, TimeUnit.SECONDS);
+            return dataSource.getConnection();
+        });
+        return blocking;
+    }
+
+    private static void awaitEmptyQueue(LiqPayResponseWriter writer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.getQueueSize() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    static LiqPayResponse response(String orderId, String status) {
+        LiqPayResponse response = new LiqPayResponse();
+        response.setOrderId(orderId);
+        response.setStatus(status);
+        response.setAction("pay");
+        response.setAmount(new BigDecimal("100.00"));
+        response.setCurrency("UAH");
+        return response;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.dao;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * H2 database (PostgreSQL mode) initialised from ddl.sql, for DAO tests and benchmarks.
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Creates a fresh, empty database with the plugin schema.
+     */
+    public static DataSource create() {
+        return create("mem:liqpay-" + UUID.randomUUID());
+    }
+
+    /**
+     * Creates a file-backed database with the plugin schema, so commits pay for disk writes.
+     */
+    public static DataSource createOnDisk(Path directory) {
+        return create("file:" + directory.resolve("liqpay").toAbsolutePath());
+    }
+
+    private static DataSource create(String location) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + location + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("RUNSCRIPT FROM 'classpath:ddl.sql'");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to create test database", e);
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayConfig;
+import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayExpirySweeper.
+ */
+class LiqPayExpirySweeperTest {
+
+    private LiqPayDao dao;
+    private LiqPayConfigurationHandler configurationHandler;
+    private Clock clock;
+    private DateTime now;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dao = new LiqPayDao(TestDatabase.create());
+        configurationHandler = mock(LiqPayConfigurationHandler.class);
+        when(configurationHandler.getConfigForTenant(any())).thenReturn(new LiqPayConfig(new Properties()));
+
+        // Two days ahead of the rows' created_date, past the default 24h expiry age
+        now = new DateTime(DateTimeZone.UTC).plusDays(2);
+        clock = mock(Clock.class);
+        when(clock.getUTCNow()).thenAnswer(invocation -> now);
+    }
+
+    @Test
+    void testSweepExpiresStaleRowsInBatches() throws Exception {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            createPending("order-" + i);
+        }
+        dao.updatePendingTransactionStatus("order-0", tenantId, "COMPLETED");
+        dao.addHppRequest(UUID.randomUUID(), null, tenantId, "session-1", "hpp-1", "redirect", false,
+                new BigDecimal("100.00"), "UAH", null);
+        LiqPayExpirySweeper sweeper = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 2);
+
+        // When
+        sweeper.runOnce();
+
+        // Then
+        assertEquals("COMPLETED", dao.getPendingTransaction("order-0").getStatus());
+        for (int i = 1; i < 5; i++) {
+            assertEquals("EXPIRED", dao.getPendingTransaction("order-" + i).getStatus());
+        }
+        assertEquals("EXPIRED", dao.getHppRequestByOrderId("hpp-1", tenantId).getStatus());
+        assertEquals(4, sweeper.getExpiredTransactions());
+        assertEquals(1, sweeper.getExpiredHppRequests());
+    }
+
+    @Test
+    void testRecentRowsAreKept() throws Exception {
+        // Given
+        now = new DateTime(DateTimeZone.UTC);
+        createPending("order-1");
+        LiqPayExpirySweeper sweeper = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+
+        // When
+        sweeper.runOnce();
+
+        // Then
+        assertEquals("PENDING", dao.getPendingTransaction("order-1").getStatus());
+    }
+
+    @Test
+    void testCutoffUsesTheClockRowsWereCreatedWith() throws Exception {
+        // Given - rows created on a plugin clock well behind the database's own time
+        dao = new LiqPayDao(TestDatabase.create(), clock);
+        now = new DateTime(DateTimeZone.UTC).minusDays(3);
+        createPending("order-1");
+        now = now.plusHours(25);
+        LiqPayExpirySweeper sweeper = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+
+        // When
+        sweeper.runOnce();
+
+        // Then
+        assertEquals("EXPIRED", dao.getPendingTransaction("order-1").getStatus());
+    }
+
+    @Test
+    void testOnlyLeaseHolderSweeps() throws Exception {
+        // Given
+        createPending("order-1");
+        LiqPayExpirySweeper first = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+        LiqPayExpirySweeper second = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+        first.runOnce();
+
+        // When
+        createPending("order-2");
+        second.runOnce();
+
+        // Then
+        assertTrue(first.isLeader());
+        assertFalse(second.isLeader());
+        assertEquals("PENDING", dao.getPendingTransaction("order-2").getStatus());
+    }
+
+    @Test
+    void testLeaseMovesOnWhenHolderStopsRenewing() throws Exception {
+        // Given
+        LiqPayExpirySweeper first = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+        LiqPayExpirySweeper second = new LiqPayExpirySweeper(dao, configurationHandler, clock, true, 1000, 10);
+        first.runOnce();
+
+        // When
+        now = now.plusSeconds(3);
+        second.runOnce();
+
+        // Then
+        assertTrue(second.isLeader());
+    }
+
+    private void createPending(String orderId) throws Exception {
+        dao.createPendingTransaction(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null,
+                tenantId, orderId, "PURCHASE", new BigDecimal("100.00"), "UAH");
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayLeaderJob.
+ */
+class LiqPayLeaderJobTest {
+
+    private static final int INTERVAL = 1000;
+
+    private LiqPayDao dao;
+    private Clock clock;
+    private DateTime now;
+
+    @BeforeEach
+    void setUp() {
+        dao = new LiqPayDao(TestDatabase.create());
+        now = new DateTime(DateTimeZone.UTC);
+        clock = mock(Clock.class);
+        when(clock.getUTCNow()).thenAnswer(invocation -> now);
+    }
+
+    @Test
+    void testLongRunKeepsItsLease() throws Exception {
+        // Given - a run that outlasts its two interval lease, renewing as it goes
+        TestJob second = new TestJob();
+        TestJob first = new TestJob() {
+            @Override
+            protected void runAsLeader(long start) throws SQLException {
+                for (int i = 0; i < 3; i++) {
+                    now = now.plusMillis(INTERVAL);
+                    assertTrue(renewLease());
+                }
+                second.runOnce();
+            }
+        };
+
+        // When
+        first.runOnce();
+
+        // Then
+        assertTrue(first.isLeader());
+        assertFalse(second.isLeader());
+        assertEquals(0, second.runs);
+    }
+
+    @Test
+    void testRenewalFailsOnceAnotherNodeTookOver() throws Exception {
+        // Given
+        TestJob first = new TestJob();
+        TestJob second = new TestJob();
+        first.runOnce();
+        now = now.plusMillis(3 * INTERVAL);
+        second.runOnce();
+
+        // When / Then
+        assertFalse(first.renewLease());
+        assertFalse(first.isLeader());
+        assertTrue(second.isLeader());
+    }
+
+    @Test
+    void testStopHandsTheLeaseOver() throws Exception {
+        // Given
+        TestJob first = new TestJob();
+        TestJob second = new TestJob();
+        first.start();
+        first.runOnce();
+
+        // When
+        first.stop();
+        second.runOnce();
+
+        // Then
+        assertTrue(second.isLeader());
+        assertEquals(1, second.runs);
+    }
+
+    @Test
+    void testStopWaitsForTheRunningRunBeforeHandingTheLeaseOver() throws Exception {
+        // Given - a run stuck in a call that ignores interruption, like a blocking JDBC statement
+        CountDownLatch running = new CountDownLatch(1);
+        TestJob second = new TestJob();
+        TestJob first = new TestJob() {
+            @Override
+            protected void runAsLeader(long start) throws SQLException {
+                running.countDown();
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                super.runAsLeader(start);
+            }
+        };
+        first.start();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        // When
+        first.stop();
+        second.runOnce();
+
+        // Then - the run finished before the next node could take over
+        assertEquals(1, first.runs);
+        assertTrue(second.isLeader());
+    }
+
+    private class TestJob extends LiqPayLeaderJob {
+        private int runs;
+
+        private TestJob() {
+            super(LiqPayLeaderJobTest.this.dao, LiqPayLeaderJobTest.this.clock, "test-job", "Test job", true, INTERVAL);
+        }
+
+        @Override
+        protected void runAsLeader(long start) throws SQLException {
+            runs++;
+        }
+    }
+}
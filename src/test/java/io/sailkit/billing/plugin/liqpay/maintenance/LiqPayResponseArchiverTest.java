@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+import io.sailkit.billing.plugin.liqpay.dao.model.CallbackInboxRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayResponseArchiver.
+ */
+class LiqPayResponseArchiverTest {
+
+    private static final long ARCHIVE_AGE = 86400000L;
+
+    private LiqPayDao dao;
+    private Clock clock;
+    private DateTime now;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dao = new LiqPayDao(TestDatabase.create());
+
+        // Two days ahead of the rows' created_date, past the one day archive age
+        now = new DateTime(DateTimeZone.UTC).plusDays(2);
+        clock = mock(Clock.class);
+        when(clock.getUTCNow()).thenAnswer(invocation -> now);
+    }
+
+    @Test
+    void testArchivedRawResponsesAreStillReadable() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        for (int i = 0; i < 5; i++) {
+            saveResponse(paymentId, "order-" + i, "{\"order_id\":\"order-" + i + "\",\"status\":\"success\"}");
+        }
+        LiqPayResponseArchiver archiver = new LiqPayResponseArchiver(dao, clock, true, ARCHIVE_AGE, 0L, 1000, 2);
+
+        // When
+        archiver.runOnce();
+
+        // Then
+        assertEquals(5, archiver.getArchivedResponses());
+        Map<Long, String> rawResponses = dao.getRawResponsesForPayment(paymentId, tenantId);
+        assertEquals(5, rawResponses.size());
+        assertTrue(rawResponses.containsValue("{\"order_id\":\"order-3\",\"status\":\"success\"}"));
+        assertEquals("{\"order_id\":\"order-0\",\"status\":\"success\"}",
+                dao.getResponseByOrderId("order-0", tenantId).getRawResponse());
+
+        // When - nothing is left to archive
+        archiver.runOnce();
+
+        // Then
+        assertEquals(5, archiver.getArchivedResponses());
+    }
+
+    @Test
+    void testCompressedRawResponsesAreArchivedReadable() throws Exception {
+        // Given - a raw_response already stored compressed
+        dao.setCompressPayloads(true);
+        UUID paymentId = UUID.randomUUID();
+        String rawJson = "{\"order_id\":\"order-1\",\"description\":\"" + "x".repeat(300) + "\"}";
+        saveResponse(paymentId, "order-1", rawJson);
+        LiqPayResponseArchiver archiver = new LiqPayResponseArchiver(dao, clock, true, ARCHIVE_AGE, 0L, 1000, 10);
+
+        // When
+        archiver.runOnce();
+
+        // Then
+        assertEquals(1, archiver.getArchivedResponses());
+        assertEquals(rawJson, dao.getResponseByOrderId("order-1", tenantId).getRawResponse());
+    }
+
+    @Test
+    void testResponsesOfPendingPaymentsAreKept() throws Exception {
+        // Given
+        UUID paymentId = UUID.randomUUID();
+        saveResponse(paymentId, "order-1", "{}");
+        dao.createPendingTransaction(UUID.randomUUID(), paymentId, UUID.randomUUID(), null,
+                tenantId, "order-2", "PURCHASE", new BigDecimal("100.00"), "UAH");
+        LiqPayResponseArchiver archiver = new LiqPayResponseArchiver(dao, clock, true, ARCHIVE_AGE, 0L, 1000, 10);
+
+        // When
+        archiver.runOnce();
+
+        // Then
+        assertEquals(0, archiver.getArchivedResponses());
+
+        // When - the pending transaction completes
+        dao.updatePendingTransactionStatus("order-2", tenantId, "COMPLETED");
+        archiver.runOnce();
+
+        // Then
+        assertEquals(1, archiver.getArchivedResponses());
+    }
+
+    @Test
+    void testRecentResponsesAreKept() throws Exception {
+        // Given
+        now = new DateTime(DateTimeZone.UTC);
+        saveResponse(UUID.randomUUID(), "order-1", "{}");
+        LiqPayResponseArchiver archiver = new LiqPayResponseArchiver(dao, clock, true, ARCHIVE_AGE, 0L, 1000, 10);
+
+        // When
+        archiver.runOnce();
+
+        // Then
+        assertEquals(0, archiver.getArchivedResponses());
+    }
+
+    @Test
+    void testProcessedInboxEntriesArePurgedAfterRetention() throws Exception {
+        // Given - entries done, failed and still pending a day ago, and one done just now
+        Timestamp dayAgo = new Timestamp(now.minusDays(1).minusMinutes(1).getMillis());
+        for (String orderId : new String[]{"order-done", "order-failed", "order-new", "order-recent"}) {
+            dao.insertCallbackInbox(orderId, tenantId, "data", "signature", dayAgo);
+        }
+        for (CallbackInboxRecord entry : dao.getPendingCallbackInboxEntries(dayAgo, 10)) {
+            if ("order-done".equals(entry.getOrderId())) {
+                dao.completeCallbackInboxEntry(entry.getRecordId(), dayAgo);
+            } else if ("order-failed".equals(entry.getOrderId())) {
+                dao.failCallbackInboxEntry(entry.getRecordId(), 10, dayAgo, "db down", true, dayAgo);
+            } else if ("order-recent".equals(entry.getOrderId())) {
+                dao.completeCallbackInboxEntry(entry.getRecordId(), new Timestamp(now.getMillis()));
+            }
+        }
+        LiqPayResponseArchiver archiver = new LiqPayResponseArchiver(dao, clock, true, ARCHIVE_AGE, ARCHIVE_AGE, 1000, 1);
+
+        // When
+        archiver.runOnce();
+
+        // Then
+        assertEquals(2, archiver.getPurgedInboxEntries());
+        assertEquals(0, dao.purgeCallbackInbox(new Timestamp(now.getMillis()), 10));
+        assertEquals("order-new", dao.getPendingCallbackInboxEntries(new Timestamp(now.getMillis()), 10).get(0).getOrderId());
+    }
+
+    private void saveResponse(UUID paymentId, String orderId, String rawJson) throws Exception {
+        LiqPayResponse response = new LiqPayResponse();
+        response.setOrderId(orderId);
+        response.setStatus("success");
+        response.setAction("pay");
+        response.setAmount(new BigDecimal("100.00"));
+        response.setCurrency("UAH");
+        dao.saveResponse(null, paymentId, UUID.randomUUID(), null, tenantId, "PURCHASE", response, rawJson);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 Sailkit.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.sailkit.billing.plugin.liqpay.maintenance;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.killbill.clock.Clock;
+
+import io.sailkit.billing.plugin.liqpay.LiqPayConfig;
+import io.sailkit.billing.plugin.liqpay.LiqPayConfigurationHandler;
+import io.sailkit.billing.plugin.liqpay.LiqPayExecutionService;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackDeduplicator;
+import io.sailkit.billing.plugin.liqpay.callback.LiqPayCallbackProcessor;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayClient;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayException;
+import io.sailkit.billing.plugin.liqpay.client.LiqPayResponse;
+import io.sailkit.billing.plugin.liqpay.dao.LiqPayDao;
+import io.sailkit.billing.plugin.liqpay.dao.TestDatabase;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LiqPayStatusReconciler.
+ */
+class LiqPayStatusReconcilerTest {
+
+    private static final int INTERVAL = 1000;
+
+    private LiqPayDao dao;
+    private LiqPayConfigurationHandler configurationHandler;
+    private LiqPayClient client;
+    private LiqPayExecutionService executionService;
+    private LiqPayCallbackProcessor callbackProcessor;
+    private Clock clock;
+    private DateTime now;
+    private final UUID tenantId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dao = new LiqPayDao(TestDatabase.create());
+        client = mock(LiqPayClient.class);
+        configurationHandler = mock(LiqPayConfigurationHandler.class);
+        when(configurationHandler.getConfigForTenant(any())).thenReturn(new LiqPayConfig(new Properties()));
+        when(configurationHandler.getClientForTenant(any())).thenReturn(client);
+        executionService = new LiqPayExecutionService(false, 4, 4);
+        callbackProcessor = new LiqPayCallbackProcessor(configurationHandler, dao,
+                new LiqPayCallbackDeduplicator(dao, 100));
+
+        // An hour ahead of the rows' created_date, past the default 15 minute reconcile age
+        now = new DateTime(DateTimeZone.UTC).plusHours(1);
+        clock = mock(Clock.class);
+        when(clock.getUTCNow()).thenAnswer(invocation -> now);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executionService.close();
+    }
+
+    @Test
+    void testFinalStatusIsAppliedLikeACallback() throws Exception {
+        // Given
+        UUID paymentId = createPending("order-1");
+        when(client.status("order-1")).thenReturn(status("order-1", "success", null));
+        LiqPayStatusReconciler reconciler = reconciler();
+
+        // When
+        reconciler.runOnce();
+
+        // Then
+        assertEquals("COMPLETED", dao.getPendingTransaction("order-1").getStatus());
+        assertEquals(1, dao.getResponsesForPayment(paymentId, tenantId).size());
+        assertEquals(1, reconciler.getCheckedOrders());
+        assertEquals(1, reconciler.getFixedOrders());
+        assertEquals(0, reconciler.getBackoffSize());
+    }
+
+    @Test
+    void testUnresolvedOrdersBackOff() throws Exception {
+        // Given
+        createPending("order-1");
+        createPending("order-2");
+        when(client.status("order-1")).thenReturn(status("order-1", "processing", null));
+        when(client.status("order-2")).thenThrow(new LiqPayException(status("order-2", "error", "payment_not_found")));
+        LiqPayStatusReconciler reconciler = reconciler();
+        reconciler.runOnce();
+
+        // When - the next run is before the first backoff (2 intervals) elapsed
+        now = now.plusMillis(INTERVAL);
+        reconciler.runOnce();
+
+        // Then
+        verify(client, times(1)).status("order-1");
+        verify(client, times(1)).status("order-2");
+        assertEquals("PENDING", dao.getPendingTransaction("order-1").getStatus());
+        assertEquals("PENDING", dao.getPendingTransaction("order-2").getStatus());
+        assertEquals(2, reconciler.getUnchangedOrders());
+        assertEquals(0, reconciler.getFixedOrders());
+
+        // When - the backoff elapsed
+        now = now.plusMillis(INTERVAL);
+        reconciler.runOnce();
+
+        // Then
+        verify(client, times(2)).status("order-1");
+        verify(client, times(2)).status("order-2");
+    }
+
+    @Test
+    void testRecentOrdersAreNotChecked() throws Exception {
+        // Given
+        now = new DateTime(DateTimeZone.UTC);
+        createPending("order-1");
+
+        // When
+        reconciler().runOnce();
+
+        // Then
+        verify(client, never()).status(anyString());
+    }
+
+    @Test
+    void testStatusRequestsAreRateLimitedPerTenant() throws Exception {
+        // Given - 20 requests per second
+        Properties properties = new Properties();
+        properties.setProperty("org.killbill.billing.plugin.liqpay.statusReconcileRateLimit", "20");
+        when(configurationHandler.getConfigForTenant(any())).thenReturn(new LiqPayConfig(properties));
+        for (int i = 0; i < 4; i++) {
+            createPending("order-" + i);
+            when(client.status("order-" + i)).thenReturn(status("order-" + i, "success", null));
+        }
+        LiqPayStatusReconciler reconciler = reconciler();
+
+        // When
+        long start = System.nanoTime();
+        reconciler.runOnce();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then - 4 requests spaced 50ms apart
+        assertTrue(elapsedMillis >= 150, "Requests should be paced, took " + elapsedMillis + "ms");
+        assertEquals(4, reconciler.getFixedOrders());
+    }
+
+    private LiqPayStatusReconciler reconciler() {
+        return new LiqPayStatusReconciler(dao, configurationHandler, executionService, callbackProcessor, clock,
+                true, INTERVAL, 10);
+    }
+
+    private UUID createPending(String orderId) throws Exception {
+        UUID paymentId = UUID.randomUUID();
+        dao.createPendingTransaction(UUID.randomUUID(), paymentId, UUID.randomUUID(), null,
+                tenantId, orderId, "PURCHASE", new BigDecimal("100.00"), "UAH");
+        return paymentId;
+    }
+
+    private static LiqPayResponse status(String orderId, String status, String errCode) {
+        LiqPayResponse response = new LiqPayResponse();
+        response.setOrderId(orderId);
+        response.setStatus(status);
+        response.setAction("pay");
+        response.setErrCode(errCode);
+        response.setAmount(new BigDecimal("100.00"));
+        response.setCurrency("UAH");
+        return response;
+    }
+}